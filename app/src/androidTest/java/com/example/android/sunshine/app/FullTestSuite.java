@@ -16,17 +16,35 @@
 package com.example.android.sunshine.app;
 
 import android.test.suitebuilder.TestSuiteBuilder;
+import android.test.suitebuilder.annotation.LargeTest;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
 public class FullTestSuite extends TestSuite {
     public static Test suite() {
-        return new TestSuiteBuilder(FullTestSuite.class)
-                .includeAllPackagesUnderHere().build();
+        return withoutLargeTests(new TestSuiteBuilder(FullTestSuite.class)
+                .includeAllPackagesUnderHere().build());
     }
 
     public FullTestSuite() {
         super();
     }
+
+    /*
+        The suite without the classes marked @LargeTest: the benchmarks, which are run on their
+        own with "-e size large".
+     */
+    private static TestSuite withoutLargeTests(TestSuite suite) {
+        TestSuite kept = new TestSuite(suite.getName());
+        for (int i = 0; i < suite.testCount(); i++) {
+            Test test = suite.testAt(i);
+            if (test instanceof TestSuite) {
+                kept.addTest(withoutLargeTests((TestSuite) test));
+            } else if (!test.getClass().isAnnotationPresent(LargeTest.class)) {
+                kept.addTest(test);
+            }
+        }
+        return kept;
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.support.v4.app.Fragment;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.ForecastFixture;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Clicks through the forecast list in the two-pane layout and times each click until the
+    detail pane shows the day, first with detail models read ahead from the list and then
+    without, when the pane waits for its own loader.  Averages are written to logcat under the
+    LOG_TAG.  On a phone-sized screen there's no detail pane and nothing is measured.
+
+    Runs against a forecast of DAYS days written for a fixed location.
+ */
+@LargeTest
+public class TestDetailPaneBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+    public static final String LOG_TAG = TestDetailPaneBenchmark.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int CLICKS = 5;
+    private static final long TIMEOUT = 10000;
+
+    private ForecastFixture mForecast;
+
+    public TestDetailPaneBenchmark() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mForecast = new ForecastFixture(getInstrumentation().getTargetContext());
+        mForecast.seed(DAYS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        mForecast.restore();
+    }
+
+    public void testDetailPaneLatency() throws Throwable {
+        final MainActivity activity = getActivity();
+        final DetailPreloader preloader = activity.getDetailPreloader();
+        if (null == preloader) {
+            Log.i(LOG_TAG, "Single-pane layout: no detail pane to measure");
+            return;
+        }
+        final ForecastFragment forecastFragment = (ForecastFragment) activity
+                .getSupportFragmentManager().findFragmentById(R.id.fragment_forecast);
+        final RecyclerView list =
+                (RecyclerView) activity.findViewById(R.id.recyclerview_forecast);
+        new PollingCheck(TIMEOUT) {
+            @Override
+            protected boolean check() {
+                ForecastAdapter adapter = (ForecastAdapter) list.getAdapter();
+                return adapter.getCursor() != null && list.getChildCount() > 1;
+            }
+        }.run();
+        int rows = Math.min(CLICKS, list.getChildCount());
+
+        // The first pass selects each row once, so every neighbour has been read ahead.
+        long preloaded = clickThrough(activity, list, rows);
+
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                forecastFragment.setDetailPreloader(null);
+                preloader.clear();
+            }
+        });
+        long loaded = clickThrough(activity, list, rows);
+
+        Log.i(LOG_TAG, String.format("click to detail: %d ms read ahead, %d ms loaded, " +
+                "on average over %d clicks", preloaded / rows, loaded / rows, rows));
+    }
+
+    /*
+        Clicks the first rows in turn, each time waiting for a new detail fragment to show the
+        clicked day, and returns the total time from click to content.  Fails if the pane shows
+        any other day.
+     */
+    private long clickThrough(final MainActivity activity, final RecyclerView list, int rows)
+            throws Throwable {
+        long total = 0;
+        for (int i = 0; i < rows; i++) {
+            final int position = i;
+            final long[] clicked = new long[1];
+            final long[] date = new long[1];
+            final Fragment previous = getDetailFragment(activity);
+            runTestOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    RecyclerView.ViewHolder vh = list.findViewHolderForAdapterPosition(position);
+                    date[0] = list.getAdapter().getItemId(position);
+                    clicked[0] = SystemClock.uptimeMillis();
+                    vh.itemView.performClick();
+                }
+            });
+            new PollingCheck(TIMEOUT) {
+                @Override
+                protected boolean check() {
+                    Fragment current = getDetailFragment(activity);
+                    return current != previous && current instanceof DetailFragment &&
+                            ((DetailFragment) current).getFirstShownMillis() != -1;
+                }
+            }.run();
+            DetailFragment shown = (DetailFragment) getDetailFragment(activity);
+            assertEquals("Error: the detail pane didn't show the day clicked",
+                    date[0], shown.getShownDate());
+            total += shown.getFirstShownMillis() - clicked[0];
+        }
+        return total;
+    }
+
+    private static Fragment getDetailFragment(MainActivity activity) {
+        return activity.getSupportFragmentManager()
+                .findFragmentById(R.id.weather_detail_container);
+    }
+}
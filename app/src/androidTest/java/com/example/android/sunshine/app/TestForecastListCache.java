@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.database.MatrixCursor;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/*
+    Stores a forecast list and reads it back the way a launch does.  The time a read takes, the
+    whole of what stands between a launch and rows on screen, is written to logcat under the
+    LOG_TAG.
+ */
+public class TestForecastListCache extends AndroidTestCase {
+    public static final String LOG_TAG = TestForecastListCache.class.getSimpleName();
+
+    private static final String LOCATION = "94043";
+    private static final int DAYS = 30;
+    private static final int ITERATIONS = 20;
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private long mToday;
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteFile(ForecastListCache.FILE_NAME);
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = mPrefs.getString(mUnitsKey, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteFile(ForecastListCache.FILE_NAME);
+        if (mSavedUnits == null) {
+            mPrefs.edit().remove(mUnitsKey).commit();
+        } else {
+            mPrefs.edit().putString(mUnitsKey, mSavedUnits).commit();
+        }
+        super.tearDown();
+    }
+
+    public void testRoundTrip() {
+        assertNull(ForecastListCache.read(mContext, LOCATION, true));
+
+        saveAndWait();
+
+        ForecastListCache.Rows rows = ForecastListCache.read(mContext, LOCATION, true);
+        assertEquals(ForecastListCache.MAX_ROWS, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(mToday + i * DAY_IN_MILLIS, rows.getDate(i));
+            assertEquals(800 + i % 4, rows.getWeatherId(i));
+            assertEquals(Utility.getFriendlyDayString(mContext, rows.getDate(i), i == 0),
+                    rows.getDay(i));
+            assertEquals(Utility.getStringForWeatherCondition(mContext, rows.getWeatherId(i)),
+                    rows.getDescription(i));
+            assertEquals(Utility.formatTemperature(mContext, 20.0 + i), rows.getHigh(i));
+            assertEquals(Utility.formatTemperature(mContext, 10.0), rows.getLow(i));
+        }
+
+        assertNull("Error: another location's list was shown",
+                ForecastListCache.read(mContext, "99705", true));
+        assertNull("Error: a list formatted for the other layout was shown",
+                ForecastListCache.read(mContext, LOCATION, false));
+
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertNotNull(ForecastListCache.read(mContext, LOCATION, true));
+        }
+        Log.i(LOG_TAG, String.format("read %d stored rows in %d ms", rows.size(),
+                (SystemClock.elapsedRealtime() - start) / ITERATIONS));
+    }
+
+    public void testOtherUnitsRefused() {
+        saveAndWait();
+        String units = Utility.isMetric(mContext)
+                ? mContext.getString(R.string.pref_units_imperial)
+                : mContext.getString(R.string.pref_units_metric);
+        mPrefs.edit().putString(mUnitsKey, units).commit();
+        assertNull("Error: a list formatted for the other units was shown",
+                ForecastListCache.read(mContext, LOCATION, true));
+    }
+
+    public void testOtherDayRefused() throws IOException {
+        saveAndWait();
+        // The stored day follows the version and the location setting.
+        RandomAccessFile file = new RandomAccessFile(
+                new File(mContext.getFilesDir(), ForecastListCache.FILE_NAME), "rw");
+        try {
+            file.seek(4 + 2 + LOCATION.length());
+            assertEquals(mToday, file.readLong());
+            file.seek(4 + 2 + LOCATION.length());
+            file.writeLong(mToday - DAY_IN_MILLIS);
+        } finally {
+            file.close();
+        }
+        assertNull("Error: a list stored yesterday was shown",
+                ForecastListCache.read(mContext, LOCATION, true));
+    }
+
+    private void saveAndWait() {
+        ForecastListCache.save(mContext, createCursor(), true);
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return ForecastListCache.read(mContext, LOCATION, true) != null;
+            }
+        }.run();
+    }
+
+    private MatrixCursor createCursor() {
+        MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS);
+        for (int i = 0; i < DAYS; i++) {
+            cursor.addRow(new Object[]{
+                    i, mToday + i * DAY_IN_MILLIS, "Clear", 20.0 + i, 10.0, LOCATION,
+                    800 + i % 4, 37.4, -122.1, 80.0, 1013.0, 3.5, 270.0
+            });
+        }
+        return cursor;
+    }
+}
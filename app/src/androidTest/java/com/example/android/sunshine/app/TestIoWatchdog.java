@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.utils.IoBudget;
+import com.example.android.sunshine.app.wearable.WearableProvider;
+
+import junit.framework.AssertionFailedError;
+
+import java.util.List;
+
+public class TestIoWatchdog extends InstrumentationTestCase {
+    private static final long BLOCK_MILLIS = 5;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        IoBudget.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IoWatchdog.resetBudgets();
+        IoWatchdog.reset();
+        super.tearDown();
+    }
+
+    public void testCallsAddUpBySite() {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 3; i++) {
+                    block(IoWatchdog.DISK_READ);
+                }
+                block(IoWatchdog.DISK_WRITE);
+            }
+        });
+
+        List<IoWatchdog.Site> sites = IoWatchdog.getSites();
+        assertEquals("Error: calls weren't grouped by kind and site", 2, sites.size());
+        IoWatchdog.Site reads = sites.get(0);
+        assertEquals(IoWatchdog.DISK_READ, reads.kind);
+        assertEquals(3, reads.getCount());
+        assertTrue(reads.getMaxNanos() >= BLOCK_MILLIS * 1000000);
+        assertTrue(reads.getTotalNanos() >= 3 * BLOCK_MILLIS * 1000000);
+        assertTrue("Error: the site wasn't the caller: " + reads.site,
+                reads.site.contains(TestIoWatchdog.class.getName()));
+        assertTrue(reads.stack.contains(TestIoWatchdog.class.getName()));
+        assertEquals(IoWatchdog.DISK_WRITE, sites.get(1).kind);
+    }
+
+    public void testOtherThreadsAreNotWatched() {
+        block(IoWatchdog.DISK_WRITE);
+        assertTrue(IoWatchdog.getSites().isEmpty());
+    }
+
+    public void testBudget() {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                block(IoWatchdog.DISK_WRITE);
+            }
+        });
+        IoWatchdog.setBudget(IoWatchdog.DISK_WRITE, new IoWatchdog.Budget(100, 100));
+        assertTrue(IoWatchdog.getSitesOverBudget().isEmpty());
+
+        IoWatchdog.setBudget(IoWatchdog.DISK_WRITE, new IoWatchdog.Budget(1, 100));
+        List<IoWatchdog.Site> over = IoWatchdog.getSitesOverBudget();
+        assertEquals(1, over.size());
+        assertEquals(IoWatchdog.DISK_WRITE, over.get(0).kind);
+
+        try {
+            IoBudget.assertWithinBudget();
+        } catch (AssertionFailedError e) {
+            assertTrue(e.getMessage().contains(over.get(0).site));
+            return;
+        }
+        fail("Error: a call over budget didn't fail the test");
+    }
+
+    /*
+        The paths that run on the main thread when the list is shown and the watch is updated:
+        preference reads while binding, the stored forecast list, and the broadcast a sync sends.
+     */
+    public void testMainThreadPathsWithinBudget() {
+        final Context context = getInstrumentation().getTargetContext();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                String location = Utility.getPreferredLocation(context);
+                Utility.isMetric(context);
+                Utility.usingLocalGraphics(context);
+                Utility.getArtUrlForWeatherCondition(context, 800);
+                ForecastListCache.read(context, location, true);
+                new WearableProvider().onReceive(context,
+                        new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED));
+            }
+        });
+        IoBudget.assertWithinBudget();
+    }
+
+    private static void block(String kind) {
+        long start = IoWatchdog.begin();
+        SystemClock.sleep(BLOCK_MILLIS);
+        IoWatchdog.end(kind, start);
+    }
+}
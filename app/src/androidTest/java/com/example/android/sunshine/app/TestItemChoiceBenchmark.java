@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+import android.view.ViewGroup;
+
+import java.util.Random;
+
+/*
+    Moves a selected item around a list of 10,000 and checks that the selection follows it,
+    however far it goes.  The time a data change takes to reconcile is written to logcat under
+    the LOG_TAG.
+ */
+@LargeTest
+public class TestItemChoiceBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestItemChoiceBenchmark.class.getSimpleName();
+
+    private static final int ROWS = 10000;
+    private static final int CHANGES = 100;
+
+    private static class IdAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        long[] mIds;
+        int mIdLookups;
+
+        IdAdapter(long[] ids) {
+            mIds = ids;
+            setHasStableIds(true);
+        }
+
+        void setIds(long[] ids) {
+            mIds = ids;
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            mIdLookups++;
+            return mIds[position];
+        }
+
+        @Override
+        public int getItemCount() {
+            return mIds.length;
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+    }
+
+    public void testFarMove() {
+        IdAdapter adapter = new IdAdapter(createIds(0));
+        ItemChoiceManager icm = select(adapter, 9000);
+
+        // Reversed, the selected item ends up 8,001 rows from where it was.
+        long[] reversed = new long[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            reversed[i] = ROWS - 1 - i;
+        }
+        adapter.setIds(reversed);
+        assertEquals("Error: the selection didn't follow its item",
+                999, icm.getSelectedItemPosition());
+        assertTrue(icm.isItemChecked(999));
+        assertFalse(icm.isItemChecked(9000));
+    }
+
+    public void testRemovedItemIsUnselected() {
+        IdAdapter adapter = new IdAdapter(createIds(0));
+        ItemChoiceManager icm = select(adapter, 5000);
+
+        adapter.setIds(createIds(ROWS));
+        assertEquals(RecyclerView.NO_POSITION, icm.getSelectedItemPosition());
+        assertEquals(0, icm.mCheckedIdStates.size());
+    }
+
+    public void testReconcileBenchmark() {
+        IdAdapter adapter = new IdAdapter(createIds(0));
+        ItemChoiceManager icm = select(adapter, 0);
+        Random random = new Random(42);
+
+        long elapsed = 0;
+        for (int i = 0; i < CHANGES; i++) {
+            // Rotate the list, moving the selection anywhere in it.
+            int shift = random.nextInt(ROWS);
+            long[] ids = new long[ROWS];
+            for (int p = 0; p < ROWS; p++) {
+                ids[(p + shift) % ROWS] = adapter.mIds[p];
+            }
+            int expected = (icm.getSelectedItemPosition() + shift) % ROWS;
+
+            adapter.mIdLookups = 0;
+            long start = SystemClock.elapsedRealtime();
+            adapter.setIds(ids);
+            elapsed += SystemClock.elapsedRealtime() - start;
+
+            assertEquals(expected, icm.getSelectedItemPosition());
+            assertTrue("Error: ids were looked up more than once per row",
+                    adapter.mIdLookups <= ROWS + 1);
+        }
+        Log.i(LOG_TAG, String.format("%d-row list: %.2f ms per data change", ROWS,
+                (double) elapsed / CHANGES));
+    }
+
+    private static long[] createIds(long first) {
+        long[] ids = new long[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            ids[i] = first + i;
+        }
+        return ids;
+    }
+
+    private static ItemChoiceManager select(IdAdapter adapter, int position) {
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.mCheckStates.put(position, true);
+        icm.mCheckedIdStates.put(adapter.mIds[position], position);
+        return icm;
+    }
+}
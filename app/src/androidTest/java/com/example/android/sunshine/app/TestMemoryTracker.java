@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.test.InstrumentationTestCase;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.data.ForecastRepository;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestMemoryTracker extends InstrumentationTestCase {
+    private static final int[] ICONS = {
+            R.drawable.ic_clear, R.drawable.ic_cloudy, R.drawable.ic_rain, R.drawable.ic_snow
+    };
+    private static final int[] ART = {
+            R.drawable.art_clear, R.drawable.art_clouds, R.drawable.art_rain, R.drawable.art_snow
+    };
+    private static final long TIMEOUT = 10000;
+
+    // What the fake caches were asked to trim, in order, as name:level.
+    private final List<String> mTrims = new ArrayList<String>();
+    // Held so the tracked bitmaps aren't collected mid-test.
+    private final List<Bitmap> mBitmaps = new ArrayList<Bitmap>();
+
+    /*
+        Holds a set number of bytes, and gives them all back at or above a level.
+     */
+    private class FakeCache implements MemoryTracker.Cache {
+        private final String mName;
+        private final int mFreeLevel;
+        private long mBytes;
+
+        FakeCache(String name, long bytes, int freeLevel) {
+            mName = name;
+            mBytes = bytes;
+            mFreeLevel = freeLevel;
+        }
+
+        @Override
+        public long getSizeBytes() {
+            return mBytes;
+        }
+
+        @Override
+        public void trimMemory(int level) {
+            mTrims.add(mName + ":" + level);
+            if (level >= mFreeLevel) {
+                mBytes = 0;
+            }
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Bitmap bitmap : mBitmaps) {
+            bitmap.recycle();
+        }
+        mBitmaps.clear();
+        super.tearDown();
+    }
+
+    public void testShrinkOrder() {
+        MemoryTracker tracker = new MemoryTracker();
+        // Registered out of order, with one the tracker doesn't know of in the middle.
+        String[] names = {MemoryTracker.FORECAST, "other", MemoryTracker.ART_CACHE,
+                MemoryTracker.ALERT_ICONS, MemoryTracker.ART_POOL};
+        for (String name : names) {
+            tracker.register(name, 1024, new FakeCache(name, 512,
+                    ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+        }
+
+        List<String> order = Arrays.asList(MemoryTracker.ALERT_ICONS, MemoryTracker.ART_CACHE,
+                MemoryTracker.ART_POOL, MemoryTracker.FORECAST, "other");
+        assertEquals(order, tracker.getShrinkOrder());
+
+        tracker.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        List<String> expected = new ArrayList<String>();
+        for (String name : order) {
+            expected.add(name + ":" + ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        }
+        assertEquals("Error: caches weren't trimmed in order", expected, mTrims);
+        for (MemoryTracker.Usage usage : tracker.getUsage()) {
+            if (!usage.name.endsWith("_bitmaps")) {
+                assertEquals("Error: " + usage.name + " freed too much at a low level",
+                        512, usage.bytes);
+            }
+        }
+
+        tracker.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        for (MemoryTracker.Usage usage : tracker.getUsage()) {
+            assertEquals("Error: " + usage.name + " wasn't freed", 0, usage.bytes);
+        }
+        assertTrue(tracker.dump().contains(
+                "last trim level " + ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+    }
+
+    public void testTrackedBitmaps() {
+        MemoryTracker tracker = new MemoryTracker();
+        Bitmap bitmap = Bitmap.createBitmap(32, 16, Bitmap.Config.ARGB_8888);
+        mBitmaps.add(bitmap);
+        tracker.track(MemoryTracker.WIDGET_BITMAPS, bitmap);
+        tracker.track(MemoryTracker.WIDGET_BITMAPS, bitmap);
+        tracker.track(MemoryTracker.WIDGET_BITMAPS, null);
+        assertEquals("Error: a bitmap tracked twice was counted twice", 32 * 16 * 4,
+                tracker.getUsage(MemoryTracker.WIDGET_BITMAPS).bytes);
+        assertEquals(0, tracker.getUsage(MemoryTracker.NOTIFICATION_BITMAPS).bytes);
+
+        bitmap.recycle();
+        assertEquals("Error: a recycled bitmap was still counted", 0,
+                tracker.getUsage(MemoryTracker.WIDGET_BITMAPS).bytes);
+
+        try {
+            tracker.track("unknown", bitmap);
+            fail("Error: a bitmap was tracked against a subsystem that wasn't registered");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testOverBudget() {
+        MemoryTracker tracker = new MemoryTracker();
+        tracker.register(MemoryTracker.FORECAST, 1024, new FakeCache(MemoryTracker.FORECAST,
+                4096, ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+        MemoryTracker.Usage usage = tracker.getUsage(MemoryTracker.FORECAST);
+        assertTrue(usage.isOverBudget());
+        assertTrue(tracker.dump().contains(usage + " (over budget)"));
+        assertNull(tracker.getUsage("unknown"));
+    }
+
+    /*
+        Fills the app's own caches, as the list, widgets and notification would, then has the
+        system ask for everything back, on the main thread as the system would.  Every cache has
+        to come down, the art Glide evicts included, and nothing may be left over its budget.
+     */
+    public void testMemoryPressure() {
+        Context context = getInstrumentation().getTargetContext();
+        final MemoryTracker tracker = MemoryTracker.getInstance(context);
+
+        // Glide's module registers the art caches.  The art is loaded as the list loads it and
+        // released to the memory cache; a few more bitmaps go straight into the pool to reuse.
+        loadArt(context);
+        BitmapPool pool = Glide.get(context).getBitmapPool();
+        for (int i = 0; i < ICONS.length; i++) {
+            pool.put(Bitmap.createBitmap(64, 64 + i, Bitmap.Config.ARGB_8888));
+        }
+        ForecastRepository repository = ForecastRepository.getInstance(context);
+        repository.get();
+        for (int icon : ICONS) {
+            Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), icon);
+            mBitmaps.add(bitmap);
+            tracker.track(MemoryTracker.WIDGET_BITMAPS, bitmap);
+        }
+
+        Map<String, Long> before = new HashMap<String, Long>();
+        for (MemoryTracker.Usage usage : tracker.getUsage()) {
+            before.put(usage.name, usage.bytes);
+        }
+        for (String name : Arrays.asList(MemoryTracker.ART_CACHE, MemoryTracker.ART_POOL,
+                MemoryTracker.FORECAST)) {
+            assertTrue("Error: " + name + " wasn't registered", before.containsKey(name));
+        }
+        assertTrue("Error: the art in memory wasn't counted",
+                before.get(MemoryTracker.ART_CACHE) > 0);
+        assertTrue("Error: the pool's bitmaps weren't counted",
+                before.get(MemoryTracker.ART_POOL) > 0);
+        assertTrue("Error: the decoded icons weren't counted",
+                before.get(MemoryTracker.WIDGET_BITMAPS) > 0);
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                tracker.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+        });
+        tracker.dump();
+
+        for (MemoryTracker.Usage usage : tracker.getUsage()) {
+            assertTrue("Error: " + usage.name + " grew under pressure",
+                    usage.bytes <= before.get(usage.name));
+            assertFalse("Error: over budget after trimming: " + usage, usage.isOverBudget());
+        }
+        for (String name : tracker.getShrinkOrder()) {
+            assertEquals("Error: " + name + " kept memory at TRIM_MEMORY_COMPLETE", 0,
+                    tracker.getUsage(name).bytes);
+        }
+        assertEquals("Error: evicted art was left in the pool", 0,
+                tracker.getUsage(MemoryTracker.ART_POOL).bytes);
+        assertEquals(0, tracker.getUsage(MemoryTracker.ART_CACHE).bytes);
+        assertNull("Error: the forecast was kept", repository.peek());
+    }
+
+    /*
+        Loads each piece of art at the list icon size, the way ArtLoader prefetches it, and waits
+        for every one to be released to Glide's memory cache.
+     */
+    private void loadArt(final Context context) {
+        final int size = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        final AtomicInteger released = new AtomicInteger();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int art : ART) {
+                    Glide.with(context)
+                            .load(art)
+                            .fitCenter()
+                            .into(new SimpleTarget<GlideDrawable>(size, size) {
+                                @Override
+                                public void onResourceReady(GlideDrawable resource,
+                                        GlideAnimation<? super GlideDrawable> animation) {
+                                    // Loads can't be cleared from their own callbacks.
+                                    final Target<?> target = this;
+                                    mainHandler.post(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            Glide.clear(target);
+                                            released.incrementAndGet();
+                                        }
+                                    });
+                                }
+                            });
+                }
+            }
+        });
+        new PollingCheck(TIMEOUT) {
+            @Override
+            protected boolean check() {
+                return released.get() == ART.length;
+            }
+        }.run();
+    }
+}
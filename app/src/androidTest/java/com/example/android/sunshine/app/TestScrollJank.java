@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Build;
+import android.support.v4.app.Fragment;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.BenchmarkReport;
+import com.example.android.sunshine.app.utils.ForecastFixture;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Map;
+
+/*
+    Scrolls the forecast list to the end and back a few times, then in the two-pane layout
+    opens a few days in the detail pane, and exports what FrameStats timed: frame times and
+    dropped frames while scrolling, bind times for each type of row and click to detail.
+    Results go through a BenchmarkReport and FrameStats' own dump is written to logcat.
+
+    Runs against a forecast of DAYS days written for a fixed location, a few screens' worth.
+ */
+@LargeTest
+public class TestScrollJank extends ActivityInstrumentationTestCase2<MainActivity> {
+    public static final String LOG_TAG = TestScrollJank.class.getSimpleName();
+
+    private static final int DAYS = 60;
+    private static final int PASSES = 3;
+    private static final int CLICKS = 5;
+    private static final long TIMEOUT = 10000;
+
+    private ForecastFixture mForecast;
+
+    public TestScrollJank() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mForecast = new ForecastFixture(getInstrumentation().getTargetContext());
+        mForecast.seed(DAYS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // The activity is finished first, so its loaders don't see the forecast go.
+        super.tearDown();
+        mForecast.restore();
+    }
+
+    public void testScrollAndOpen() throws Throwable {
+        final MainActivity activity = getActivity();
+        final RecyclerView list =
+                (RecyclerView) activity.findViewById(R.id.recyclerview_forecast);
+        new PollingCheck(TIMEOUT) {
+            @Override
+            protected boolean check() {
+                ForecastAdapter adapter = (ForecastAdapter) list.getAdapter();
+                return adapter.getCursor() != null && list.getChildCount() > 1;
+            }
+        }.run();
+        assertTrue("Error: the forecast didn't fill more than a screen",
+                list.getAdapter().getItemCount() > list.getChildCount());
+        FrameStats.reset();
+
+        for (int i = 0; i < PASSES; i++) {
+            scrollTo(list, true);
+            scrollTo(list, false);
+        }
+
+        if (null != activity.getDetailPreloader()) {
+            int rows = Math.min(CLICKS, list.getChildCount());
+            for (int i = 0; i < rows; i++) {
+                open(activity, list, i);
+            }
+        } else {
+            Log.i(LOG_TAG, "Single-pane layout: detail opening not measured");
+        }
+
+        FrameStats.dump();
+        int rows = list.getAdapter().getItemCount();
+        BenchmarkReport report = new BenchmarkReport(LOG_TAG, getName());
+        for (Map.Entry<String, FrameStats.Timings> timings :
+                FrameStats.getAllTimings().entrySet()) {
+            BenchmarkReport.Samples samples = new BenchmarkReport.Samples();
+            for (long nanos : timings.getValue().getSamples()) {
+                samples.add(nanos);
+            }
+            report.addLatency(timings.getKey(), rows, samples);
+        }
+        FrameStats.Timings frames = FrameStats.getTimings(FrameStats.FRAMES_FORECAST_LIST);
+        if (frames != null) {
+            report.addCount(FrameStats.FRAMES_FORECAST_LIST + "/dropped", rows, "frames",
+                    frames.getDroppedFrames());
+            report.addCount(FrameStats.FRAMES_FORECAST_LIST + "/janky", rows, "frames",
+                    frames.getJankyFrames());
+        }
+        report.write(getInstrumentation().getTargetContext());
+
+        assertNotNull("Error: no rows were bound", FrameStats.getTimings(FrameStats.BIND_FUTURE_DAY));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            assertNotNull("Error: no frames were timed while scrolling", frames);
+        }
+    }
+
+    /*
+        Smooth-scrolls to the last row loaded, or back to the first, and waits for the list to
+        come to rest.  Further pages load as the end nears, so the end moves.
+     */
+    private void scrollTo(final RecyclerView list, final boolean end) throws Throwable {
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                list.smoothScrollToPosition(end ? list.getAdapter().getItemCount() - 1 : 0);
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+        new PollingCheck(TIMEOUT) {
+            @Override
+            protected boolean check() {
+                return list.getScrollState() == RecyclerView.SCROLL_STATE_IDLE;
+            }
+        }.run();
+    }
+
+    private void open(final MainActivity activity, final RecyclerView list, final int position)
+            throws Throwable {
+        final Fragment previous = getDetailFragment(activity);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                list.findViewHolderForAdapterPosition(position).itemView.performClick();
+            }
+        });
+        new PollingCheck(TIMEOUT) {
+            @Override
+            protected boolean check() {
+                Fragment current = getDetailFragment(activity);
+                return current != previous && current instanceof DetailFragment &&
+                        ((DetailFragment) current).getFirstShownMillis() != -1;
+            }
+        }.run();
+    }
+
+    private static Fragment getDetailFragment(MainActivity activity) {
+        return activity.getSupportFragmentManager()
+                .findFragmentById(R.id.weather_detail_container);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.ActivityInstrumentationTestCase2;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.utils.IoBudget;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    Changes the location with the settings screen showing, which rewrites the location
+    preferences from its listener on the main thread, and checks nothing it does there blocks
+    for longer than the IoWatchdog's budgets allow.
+
+    The change clears the location's coordinates, resets its status and asks for a sync, so the
+    test waits for the location to be resolved, finishes the activity so its listener is gone,
+    cancels the sync and puts every preference it touched back as it was.
+ */
+public class TestSettingsIoBudget extends ActivityInstrumentationTestCase2<SettingsActivity> {
+    private static final String LOCATION = "94043";
+    // No status the app sets, so the resolve is seen to finish whatever it sets.
+    private static final int STATUS_PENDING = -1;
+    private static final long TIMEOUT = 10000;
+
+    private SharedPreferences mPrefs;
+    private String mLocationKey;
+    private String mStatusKey;
+    private String[] mKeys;
+    private final Map<String, Object> mSaved = new HashMap<String, Object>();
+
+    public TestSettingsIoBudget() {
+        super(SettingsActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getTargetContext();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mLocationKey = context.getString(R.string.pref_location_key);
+        mStatusKey = context.getString(R.string.pref_location_status_key);
+        mKeys = new String[]{
+                mLocationKey,
+                context.getString(R.string.pref_location_latitude),
+                context.getString(R.string.pref_location_longitude),
+                mStatusKey
+        };
+        Map<String, ?> all = mPrefs.getAll();
+        for (String key : mKeys) {
+            if (all.containsKey(key)) {
+                mSaved.put(key, all.get(key));
+            }
+        }
+        mPrefs.edit().putInt(mStatusKey, STATUS_PENDING).commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Gone before the restore, so restoring doesn't resolve and sync all over again.
+        getActivity().finish();
+        getInstrumentation().waitForIdleSync();
+        Context context = getInstrumentation().getTargetContext();
+        ContentResolver.cancelSync(SunshineSyncAdapter.getSyncAccount(context),
+                context.getString(R.string.content_authority));
+
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (String key : mKeys) {
+            Object value = mSaved.get(key);
+            if (value instanceof String) {
+                editor.putString(key, (String) value);
+            } else if (value instanceof Float) {
+                editor.putFloat(key, (Float) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(key, (Integer) value);
+            } else {
+                editor.remove(key);
+            }
+        }
+        editor.commit();
+        IoWatchdog.reset();
+        super.tearDown();
+    }
+
+    public void testLocationChangeWithinBudget() throws Throwable {
+        getActivity();
+        IoBudget.start();
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                String location = LOCATION.equals(mSaved.get(mLocationKey)) ? "99705" : LOCATION;
+                mPrefs.edit().putString(mLocationKey, location).apply();
+            }
+        });
+        new PollingCheck(TIMEOUT) {
+            @Override
+            protected boolean check() {
+                return mPrefs.getInt(mStatusKey, STATUS_PENDING) != STATUS_PENDING;
+            }
+        }.run();
+        getInstrumentation().waitForIdleSync();
+        IoBudget.assertWithinBudget();
+    }
+}
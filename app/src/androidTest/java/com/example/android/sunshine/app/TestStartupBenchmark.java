@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.ActivityInstrumentationTestCase2;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+    Launches MainActivity a number of times and averages the startup orchestrator's phases, the
+    first draw above all.  The test runs in the app's process, so each launch is a cold start of
+    the activity rather than of the process: the first launch is the one that opens the
+    database.  Results are written to logcat under the LOG_TAG, and a systrace taken meanwhile
+    shows the same phases as startup:<phase> sections.
+ */
+@LargeTest
+public class TestStartupBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+    public static final String LOG_TAG = TestStartupBenchmark.class.getSimpleName();
+
+    private static final int LAUNCHES = 10;
+    private static final long STARTUP_TIMEOUT = 10000;
+
+    public TestStartupBenchmark() {
+        super(MainActivity.class);
+    }
+
+    public void testColdStart() {
+        Map<String, Long> totals = new LinkedHashMap<String, Long>();
+        Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < LAUNCHES; i++) {
+            final StartupOrchestrator startup = getActivity().getStartupOrchestrator();
+            new PollingCheck(STARTUP_TIMEOUT) {
+                @Override
+                protected boolean check() {
+                    return startup.isComplete();
+                }
+            }.run();
+
+            StartupOrchestrator.Phase firstDraw =
+                    startup.getPhase(StartupOrchestrator.PHASE_FIRST_DRAW);
+            StartupOrchestrator.Phase syncSetup =
+                    startup.getPhase(StartupOrchestrator.PHASE_SYNC_SETUP);
+            assertNotNull("Error: the first draw wasn't traced", firstDraw);
+            assertNotNull("Error: the sync account wasn't set up", syncSetup);
+            assertTrue("Error: the sync account was set up before the first frame",
+                    syncSetup.startMillis >= firstDraw.endMillis);
+
+            for (StartupOrchestrator.Phase phase : startup.getPhases()) {
+                Long total = totals.get(phase.name);
+                totals.put(phase.name, (total == null ? 0 : total) +
+                        phase.endMillis - phase.startMillis);
+                Integer count = counts.get(phase.name);
+                counts.put(phase.name, count == null ? 1 : count + 1);
+            }
+
+            getActivity().finish();
+            setActivity(null);
+        }
+
+        for (Map.Entry<String, Long> total : totals.entrySet()) {
+            Log.i(LOG_TAG, String.format("%s: %d ms on average over %d launches",
+                    total.getKey(), total.getValue() / counts.get(total.getKey()),
+                    counts.get(total.getKey())));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestForecastRepository extends AndroidTestCase {
+    private static final int DAYS = 3;
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private long mToday;
+    private long mLocationRowId;
+    private long mOtherRowId;
+    private String mSavedLocation;
+    private ForecastRepository mRepository;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String key = mContext.getString(R.string.pref_location_key);
+        mSavedLocation = prefs.getString(key, null);
+        prefs.edit().putString(key, TestUtilities.TEST_LOCATION).commit();
+
+        mLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        ContentValues other = TestUtilities.createNorthPoleLocationValues();
+        other.put(LocationEntry.COLUMN_LOCATION_SETTING, "99706");
+        mOtherRowId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, other));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createWeatherValues(mLocationRowId, 75.0));
+
+        mRepository = ForecastRepository.getInstance(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String key = mContext.getString(R.string.pref_location_key);
+        if (mSavedLocation == null) {
+            prefs.edit().remove(key).commit();
+        } else {
+            prefs.edit().putString(key, mSavedLocation).commit();
+        }
+        super.tearDown();
+    }
+
+    public void testGet() {
+        ForecastSnapshot forecast = mRepository.get();
+        assertEquals(TestUtilities.TEST_LOCATION, forecast.getLocationSetting());
+        assertEquals(DAYS, forecast.size());
+        for (int i = 0; i < DAYS; i++) {
+            assertEquals(mToday + i * DAY_IN_MILLIS, forecast.getDate(i));
+            assertEquals(321, forecast.getWeatherId(i));
+            assertEquals("Asteroids", forecast.getDescription(i));
+            assertEquals(75.0f + i, forecast.getHigh(i));
+            assertEquals(65.0f, forecast.getLow(i));
+            assertEquals(5.5f, forecast.getWindSpeed(i));
+        }
+        assertEquals(1, forecast.indexOfDate(mToday + DAY_IN_MILLIS));
+        assertTrue(forecast.indexOfDate(mToday - DAY_IN_MILLIS) < 0);
+
+        assertSame("Error: an unchanged forecast was read again", forecast, mRepository.get());
+        assertSame(forecast, mRepository.peek());
+    }
+
+    public void testWritesInvalidate() {
+        ForecastSnapshot forecast = mRepository.get();
+
+        // Another location's weather leaves the forecast alone.
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createWeatherValues(mOtherRowId, 75.0));
+        assertSame("Error: another location's weather dropped the forecast",
+                forecast, mRepository.get());
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createWeatherValues(mLocationRowId, 80.0));
+        assertNull("Error: a write left the old forecast in place", mRepository.peek());
+        ForecastSnapshot changed = mRepository.get();
+        assertEquals(80.0f, changed.getHigh(0));
+    }
+
+    public void testListeners() {
+        final ForecastSnapshot[] heard = new ForecastSnapshot[1];
+        ForecastRepository.Listener listener = new ForecastRepository.Listener() {
+            @Override
+            public void onForecastChanged(ForecastSnapshot snapshot) {
+                heard[0] = snapshot;
+            }
+        };
+        mRepository.get();
+        mRepository.addListener(listener);
+        try {
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                    createWeatherValues(mLocationRowId, 90.0));
+            new PollingCheck() {
+                @Override
+                protected boolean check() {
+                    ForecastSnapshot snapshot = heard[0];
+                    return snapshot != null && snapshot.getHigh(0) == 90.0f;
+                }
+            }.run();
+            assertSame("Error: listeners were handed a snapshot nobody else shares",
+                    heard[0], mRepository.get());
+        } finally {
+            mRepository.removeListener(listener);
+        }
+    }
+
+    private ContentValues[] createWeatherValues(long locationRowId, double high) {
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, mToday + i * DAY_IN_MILLIS);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, high + i);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Range queries over a week of hourly data for ten locations, through the provider's packed
+    daily blocks, compared with the same samples stored one row per hour.  Results are written
+    to logcat under the LOG_TAG.
+ */
+@LargeTest
+public class TestHourlyBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestHourlyBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 10;
+    private static final int DAYS = 7;
+    private static final int SAMPLES = DAYS * 24;
+    private static final int ITERATIONS = 20;
+    private static final long HOUR_IN_MILLIS = 60 * 60 * 1000L;
+    private static final long START = WeatherContract.normalizeDate(1419033600000L);
+    private static final String ROWS_DATABASE = "hourly_rows_benchmark.db";
+    private static final String PACKED_DATABASE = "hourly_packed_benchmark.db";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        mContext.deleteDatabase(ROWS_DATABASE);
+        mContext.deleteDatabase(PACKED_DATABASE);
+        super.tearDown();
+    }
+
+    public void testHourlyRoundTrip() {
+        insertLocation(0);
+        mContext.getContentResolver().bulkInsert(
+                HourlyEntry.buildHourlyLocation(locationSetting(0)), createSamples(0));
+
+        // Three hours in the middle of the second day.
+        long start = START + 30 * HOUR_IN_MILLIS;
+        Cursor cursor = mContext.getContentResolver().query(
+                HourlyEntry.buildHourlyLocationWithRange(locationSetting(0), start,
+                        start + 3 * HOUR_IN_MILLIS),
+                null, null, null, null);
+        assertEquals(3, cursor.getCount());
+        cursor.moveToFirst();
+        ContentValues expected = createSamples(0)[30];
+        TestUtilities.validateCurrentRecord("testHourlyRoundTrip.", cursor, expected);
+        cursor.close();
+
+        // Newer samples replace older ones for the same time, and leave the rest of the day.
+        ContentValues update = createSamples(0)[30];
+        update.put(HourlyEntry.COLUMN_TEMP, 40.5);
+        mContext.getContentResolver().bulkInsert(
+                HourlyEntry.buildHourlyLocation(locationSetting(0)), new ContentValues[]{update});
+        cursor = mContext.getContentResolver().query(
+                HourlyEntry.buildHourlyLocation(locationSetting(0)), null, null, null, null);
+        assertEquals(SAMPLES, cursor.getCount());
+        cursor.moveToPosition(30);
+        TestUtilities.validateCurrentRecord("testHourlyRoundTrip. Error merging samples.",
+                cursor, update);
+        cursor.close();
+    }
+
+    public void testRangeQueries() {
+        for (int location = 0; location < LOCATIONS; location++) {
+            insertLocation(location);
+            mContext.getContentResolver().bulkInsert(
+                    HourlyEntry.buildHourlyLocation(locationSetting(location)),
+                    createSamples(location));
+        }
+        SQLiteDatabase rows = createRowsDatabase();
+        long packedBytes = createPackedDatabaseSize();
+
+        long packedMillis = 0;
+        long rowsMillis = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int location = 0; location < LOCATIONS; location++) {
+                long start = SystemClock.elapsedRealtime();
+                Cursor cursor = mContext.getContentResolver().query(
+                        HourlyEntry.buildHourlyLocationWithRange(locationSetting(location),
+                                START, START + SAMPLES * HOUR_IN_MILLIS),
+                        null, null, null, null);
+                assertEquals(SAMPLES, readAll(cursor));
+                packedMillis += SystemClock.elapsedRealtime() - start;
+
+                start = SystemClock.elapsedRealtime();
+                cursor = rows.query(HourlyEntry.TABLE_NAME, null,
+                        HourlyEntry.COLUMN_LOC_KEY + " = ? AND " + HourlyEntry.COLUMN_TIME +
+                                " >= ? AND " + HourlyEntry.COLUMN_TIME + " < ?",
+                        new String[]{Integer.toString(location), Long.toString(START),
+                                Long.toString(START + SAMPLES * HOUR_IN_MILLIS)},
+                        null, null, HourlyEntry.COLUMN_TIME + " ASC");
+                assertEquals(SAMPLES, readAll(cursor));
+                rowsMillis += SystemClock.elapsedRealtime() - start;
+            }
+        }
+        rows.close();
+        long rowsBytes = mContext.getDatabasePath(ROWS_DATABASE).length();
+
+        int queries = ITERATIONS * LOCATIONS;
+        Log.i(LOG_TAG, String.format("packed blocks: %d queries, %d ms, %d bytes on disk",
+                queries, packedMillis, packedBytes));
+        Log.i(LOG_TAG, String.format("row per hour: %d queries, %d ms, %d bytes on disk",
+                queries, rowsMillis, rowsBytes));
+        assertTrue("Error: packed blocks didn't save space", packedBytes < rowsBytes);
+    }
+
+    private static int readAll(Cursor cursor) {
+        int count = 0;
+        while (cursor.moveToNext()) {
+            for (int c = 0; c < cursor.getColumnCount(); c++) {
+                cursor.getDouble(c);
+            }
+            count++;
+        }
+        cursor.close();
+        return count;
+    }
+
+    /*
+        The same samples stored the obvious way, one indexed row per hour.
+     */
+    private SQLiteDatabase createRowsDatabase() {
+        mContext.deleteDatabase(ROWS_DATABASE);
+        SQLiteDatabase db = mContext.openOrCreateDatabase(ROWS_DATABASE, Context.MODE_PRIVATE, null);
+        db.execSQL("CREATE TABLE " + HourlyEntry.TABLE_NAME + " (" +
+                HourlyEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                HourlyEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_TIME + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_TEMP + " REAL NOT NULL, " +
+                HourlyEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                HourlyEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                HourlyEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                HourlyEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                " UNIQUE (" + HourlyEntry.COLUMN_LOC_KEY + ", " +
+                HourlyEntry.COLUMN_TIME + ") ON CONFLICT REPLACE);");
+        db.beginTransaction();
+        try {
+            for (int location = 0; location < LOCATIONS; location++) {
+                for (ContentValues values : createSamples(location)) {
+                    values.put(HourlyEntry.COLUMN_LOC_KEY, location);
+                    db.insert(HourlyEntry.TABLE_NAME, null, values);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return db;
+    }
+
+    /*
+        The packed layout in a database of its own, so its size can be compared.
+     */
+    private long createPackedDatabaseSize() {
+        mContext.deleteDatabase(PACKED_DATABASE);
+        SQLiteDatabase db = mContext.openOrCreateDatabase(PACKED_DATABASE, Context.MODE_PRIVATE, null);
+        db.execSQL("CREATE TABLE " + HourlyEntry.TABLE_NAME + " (" +
+                HourlyEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                HourlyEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_BLOCK + " BLOB NOT NULL, " +
+                " UNIQUE (" + HourlyEntry.COLUMN_LOC_KEY + ", " +
+                HourlyEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);");
+        db.beginTransaction();
+        try {
+            for (int location = 0; location < LOCATIONS; location++) {
+                ContentValues[] samples = createSamples(location);
+                for (int day = 0; day < DAYS; day++) {
+                    HourlyBlock block = new HourlyBlock(START + day * 24 * HOUR_IN_MILLIS);
+                    for (int hour = 0; hour < 24; hour++) {
+                        ContentValues sample = samples[day * 24 + hour];
+                        block.put(sample.getAsLong(HourlyEntry.COLUMN_TIME),
+                                sample.getAsFloat(HourlyEntry.COLUMN_TEMP),
+                                sample.getAsInteger(HourlyEntry.COLUMN_WEATHER_ID),
+                                sample.getAsFloat(HourlyEntry.COLUMN_HUMIDITY),
+                                sample.getAsFloat(HourlyEntry.COLUMN_PRESSURE),
+                                sample.getAsFloat(HourlyEntry.COLUMN_WIND_SPEED),
+                                sample.getAsFloat(HourlyEntry.COLUMN_DEGREES));
+                    }
+                    ContentValues row = new ContentValues();
+                    row.put(HourlyEntry.COLUMN_LOC_KEY, location);
+                    row.put(HourlyEntry.COLUMN_DATE, block.getDayStart());
+                    row.put(HourlyEntry.COLUMN_BLOCK, block.pack());
+                    db.insert(HourlyEntry.TABLE_NAME, null, row);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+        return mContext.getDatabasePath(PACKED_DATABASE).length();
+    }
+
+    private void insertLocation(int location) {
+        ContentValues values = TestUtilities.createNorthPoleLocationValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting(location));
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+    }
+
+    private static String locationSetting(int location) {
+        return Integer.toString(94040 + location);
+    }
+
+    /*
+        Values are chosen to survive the round trip through a float exactly.
+     */
+    private static ContentValues[] createSamples(int location) {
+        ContentValues[] samples = new ContentValues[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            ContentValues values = new ContentValues();
+            values.put(HourlyEntry.COLUMN_TIME, START + i * HOUR_IN_MILLIS);
+            values.put(HourlyEntry.COLUMN_TEMP, 10.5 + (i % 24) * 0.25 + location);
+            values.put(HourlyEntry.COLUMN_WEATHER_ID, 800 + i % 4);
+            values.put(HourlyEntry.COLUMN_HUMIDITY, 60.0 + i % 30);
+            values.put(HourlyEntry.COLUMN_PRESSURE, 1012.5);
+            values.put(HourlyEntry.COLUMN_WIND_SPEED, 1.5 + (i % 8) * 0.5);
+            values.put(HourlyEntry.COLUMN_DEGREES, (i * 15) % 360 * 1.0);
+            samples[i] = values;
+        }
+        return samples;
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(HourlyEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
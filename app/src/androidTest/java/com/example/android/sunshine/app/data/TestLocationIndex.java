@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+/*
+    Resolves typed and picked locations to stored ones through the provider, the way the
+    settings screen does.
+ */
+public class TestLocationIndex extends AndroidTestCase {
+
+    private long mMountainView;
+    private long mPortlandOregon;
+    private long mPortlandMaine;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mMountainView = insertLocation("94043", "Mountain View", 37.3861, -122.0839);
+        mPortlandOregon = insertLocation("97201", "Portland", 45.5051, -122.675);
+        mPortlandMaine = insertLocation("04101", "Portland", 43.6591, -70.2568);
+    }
+
+    public void testNormalize() {
+        assertEquals("zurich ch", LocationIndex.normalize("  Z\u00fcrich,CH"));
+        assertEquals("mountain view", LocationIndex.normalize("MOUNTAIN-VIEW"));
+        assertEquals("", LocationIndex.normalize(" ,. "));
+    }
+
+    public void testResolveText() {
+        assertEquals(mMountainView, resolve(LocationEntry.buildLocationResolveUri("94043")));
+        assertEquals("Error: a city name should resolve whatever its case and spacing",
+                mMountainView, resolve(LocationEntry.buildLocationResolveUri(" mountain  VIEW")));
+        assertEquals("Error: a city name shared by two locations shouldn't resolve",
+                -1, resolve(LocationEntry.buildLocationResolveUri("portland")));
+        assertEquals(-1, resolve(LocationEntry.buildLocationResolveUri("Sunnyvale")));
+    }
+
+    public void testResolveCoordinates() {
+        // A few hundred metres away, in the next grid cell over.
+        assertEquals(mMountainView,
+                resolve(LocationEntry.buildLocationResolveUri(37.3891, -122.0791)));
+        assertEquals(mPortlandMaine,
+                resolve(LocationEntry.buildLocationResolveUri(43.66, -70.26)));
+        // Further than a cell.
+        assertEquals(-1, resolve(LocationEntry.buildLocationResolveUri(37.42, -122.0839)));
+    }
+
+    public void testSuggest() {
+        Cursor cursor = suggest("port");
+        assertEquals("Error: both Portlands should be suggested", 2, cursor.getCount());
+        cursor.close();
+
+        // A word inside the city name, from the full text index.
+        cursor = suggest("vie");
+        assertTrue(cursor.moveToFirst());
+        assertEquals(mMountainView, cursor.getLong(0));
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        cursor = suggest("970");
+        assertTrue(cursor.moveToFirst());
+        assertEquals(mPortlandOregon, cursor.getLong(0));
+        cursor.close();
+
+        cursor = suggest("");
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testDeletedLocationIsForgotten() {
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(mPortlandMaine)});
+        assertEquals("Error: the remaining Portland should now resolve",
+                mPortlandOregon, resolve(LocationEntry.buildLocationResolveUri("Portland")));
+        assertEquals(-1, resolve(LocationEntry.buildLocationResolveUri(43.66, -70.26)));
+        Cursor cursor = suggest("port");
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testUpdatedLocationIsReindexed() {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_CITY_NAME, "South Portland");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(mPortlandMaine)});
+        assertEquals(mPortlandMaine,
+                resolve(LocationEntry.buildLocationResolveUri("south portland")));
+        assertEquals("Error: the updated location kept its old city name",
+                mPortlandOregon, resolve(LocationEntry.buildLocationResolveUri("Portland")));
+        assertEquals("Error: a location the update didn't match lost its aliases",
+                mMountainView, resolve(LocationEntry.buildLocationResolveUri("94043")));
+        Cursor cursor = suggest("south");
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testMovedLocationIsReindexed() {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_COORD_LAT, 37.3688);
+        values.put(LocationEntry.COLUMN_COORD_LONG, -122.0363);
+        // Matched by setting, which the update leaves alone.
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{"94043"});
+        assertEquals(mMountainView,
+                resolve(LocationEntry.buildLocationResolveUri(37.3688, -122.0363)));
+        assertEquals(-1, resolve(LocationEntry.buildLocationResolveUri(37.3891, -122.0791)));
+        assertEquals(mPortlandMaine,
+                resolve(LocationEntry.buildLocationResolveUri(43.66, -70.26)));
+    }
+
+    private long insertLocation(String setting, String cityName, double lat, double lon) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, setting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        values.put(LocationEntry.COLUMN_COORD_LAT, lat);
+        values.put(LocationEntry.COLUMN_COORD_LONG, lon);
+        Uri uri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+        return ContentUris.parseId(uri);
+    }
+
+    private long resolve(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri,
+                new String[]{LocationEntry._ID}, null, null, null);
+        try {
+            assertTrue("Error: a resolve URI should give at most one location",
+                    cursor.getCount() <= 1);
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Cursor suggest(String prefix) {
+        return mContext.getContentResolver().query(
+                LocationEntry.buildLocationSuggestUri(prefix, 5),
+                new String[]{LocationEntry._ID}, null, null, null);
+    }
+}
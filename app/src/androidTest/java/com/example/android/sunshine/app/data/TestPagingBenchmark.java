@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.ForecastPageLoader;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    The forecast list's first page, read through the page URIs, compared with reading the whole
+    forecast the way the list used to.  The time to the first page is what stands between the
+    loader starting and the first frame with rows in it.  Results are written to logcat under
+    the LOG_TAG.
+ */
+@LargeTest
+public class TestPagingBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestPagingBenchmark.class.getSimpleName();
+
+    private static final int DAYS = 1200;
+    private static final int PAGE_SIZE = ForecastPageLoader.DEFAULT_PAGE_SIZE;
+    private static final int ITERATIONS = 20;
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    // The columns the forecast list reads.
+    private static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        // A second location, so pages have rows to skip.
+        ContentValues other = TestUtilities.createNorthPoleLocationValues();
+        other.put(LocationEntry.COLUMN_LOCATION_SETTING, "99706");
+        long otherRowId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, other));
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createWeatherValues(locationRowId));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createWeatherValues(otherRowId));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    /*
+        Walking the pages should give exactly the rows of the full query, in the same order.
+     */
+    public void testPagesCoverForecast() {
+        Cursor full = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION, mToday),
+                COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(DAYS, full.getCount());
+
+        long afterDate = mToday - 1;
+        int pages = 0;
+        while (true) {
+            Cursor page = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationPage(TestUtilities.TEST_LOCATION, afterDate,
+                            PAGE_SIZE), COLUMNS, null, null, null);
+            int count = page.getCount();
+            while (page.moveToNext()) {
+                assertTrue("Error: pages returned more rows than the full query",
+                        full.moveToNext());
+                assertEquals("Error: page rows out of order", full.getLong(1), page.getLong(1));
+                afterDate = page.getLong(1);
+            }
+            page.close();
+            pages++;
+            if (count < PAGE_SIZE) {
+                break;
+            }
+        }
+        assertFalse("Error: pages missed rows of the full query", full.moveToNext());
+        full.close();
+        assertEquals((DAYS + PAGE_SIZE) / PAGE_SIZE, pages);
+    }
+
+    public void testFirstPage() {
+        long pageMillis = 0;
+        long fullMillis = 0;
+        long pageBytes = 0;
+        long fullBytes = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long heap = Debug.getNativeHeapAllocatedSize();
+            long start = SystemClock.elapsedRealtime();
+            Cursor page = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationFirstPage(TestUtilities.TEST_LOCATION,
+                            mToday, PAGE_SIZE), COLUMNS, null, null, null);
+            assertEquals(PAGE_SIZE, page.getCount());
+            pageMillis += SystemClock.elapsedRealtime() - start;
+            pageBytes += Debug.getNativeHeapAllocatedSize() - heap;
+            page.close();
+
+            heap = Debug.getNativeHeapAllocatedSize();
+            start = SystemClock.elapsedRealtime();
+            Cursor full = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                            mToday), COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            assertEquals(DAYS, full.getCount());
+            fullMillis += SystemClock.elapsedRealtime() - start;
+            fullBytes += Debug.getNativeHeapAllocatedSize() - heap;
+            full.close();
+        }
+
+        // Native heap growth is only a rough guide: cursor windows may live in shared memory.
+        Log.i(LOG_TAG, String.format("first page: %d rows, %d ms, %d native bytes per query",
+                PAGE_SIZE, pageMillis / ITERATIONS, pageBytes / ITERATIONS));
+        Log.i(LOG_TAG, String.format("full load: %d rows, %d ms, %d native bytes per query",
+                DAYS, fullMillis / ITERATIONS, fullBytes / ITERATIONS));
+        assertTrue("Error: the first page wasn't quicker than the full load",
+                pageMillis < fullMillis);
+    }
+
+    private ContentValues[] createWeatherValues(long locationRowId) {
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, mToday + i * DAY_IN_MILLIS);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
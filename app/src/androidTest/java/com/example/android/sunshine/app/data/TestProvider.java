@@ -28,6 +28,7 @@ import android.test.AndroidTestCase;
 import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SummaryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /*
@@ -160,6 +161,13 @@ public class TestProvider extends AndroidTestCase {
         // vnd.android.cursor.dir/com.example.android.sunshine.app/location
         assertEquals("Error: the LocationEntry CONTENT_URI should return LocationEntry.CONTENT_TYPE",
                 LocationEntry.CONTENT_TYPE, type);
+
+        // content://com.example.android.sunshine.app/summary/94074/7
+        type = mContext.getContentResolver().getType(SummaryEntry.buildSummaryLocationWithWindow(
+                testLocation, SummaryEntry.WINDOW_WEEK));
+        // vnd.android.cursor.item/com.example.android.sunshine.app/summary
+        assertEquals("Error: the SummaryEntry CONTENT_URI with location and window should return SummaryEntry.CONTENT_ITEM_TYPE",
+                SummaryEntry.CONTENT_ITEM_TYPE, type);
     }
 
 
@@ -512,4 +520,197 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        Bulk inserting into a location's upsert URI should add the location once, reuse it on
+        later inserts, and still find the location again after it's been deleted and re-added.
+     */
+    public void testBulkInsertWithLocation() {
+        ContentValues location = TestUtilities.createNorthPoleLocationValues();
+        Uri upsertUri = WeatherEntry.buildWeatherLocationUpsert(TestUtilities.TEST_LOCATION,
+                location.getAsString(LocationEntry.COLUMN_CITY_NAME),
+                location.getAsDouble(LocationEntry.COLUMN_COORD_LAT),
+                location.getAsDouble(LocationEntry.COLUMN_COORD_LONG));
+
+        for (int pass = 0; pass < 3; pass++) {
+            if (pass == 2) {
+                // Deleting through the provider must not leave a stale id behind.
+                deleteAllRecordsFromProvider();
+            }
+            ContentValues[] weather = createBulkInsertWeatherValues(0);
+            for (ContentValues value : weather) {
+                value.remove(WeatherEntry.COLUMN_LOC_KEY);
+            }
+            int insertCount = mContext.getContentResolver().bulkInsert(upsertUri, weather);
+            assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+            Cursor cursor = mContext.getContentResolver().query(
+                    LocationEntry.CONTENT_URI, null, null, null, null);
+            assertEquals("Error: location was added more than once", 1, cursor.getCount());
+            TestUtilities.validateCursor("testBulkInsertWithLocation. Error validating location.",
+                    cursor, location);
+
+            cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                    null, null, null, null);
+            assertEquals("Error: weather wasn't joined to its location on pass " + pass,
+                    BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+            cursor.close();
+        }
+    }
+
+    /*
+        The retention pass should keep each location's history window and drop locations that
+        have no weather left.
+     */
+    public void testDeleteExpired() {
+        long millisecondsInADay = 1000*60*60*24;
+        long today = TestUtilities.TEST_DATE + 5 * millisecondsInADay;
+
+        ContentValues noHistory = TestUtilities.createNorthPoleLocationValues();
+        long noHistoryId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, noHistory));
+
+        ContentValues twoDays = TestUtilities.createNorthPoleLocationValues();
+        twoDays.put(LocationEntry.COLUMN_LOCATION_SETTING, "99706");
+        twoDays.put(LocationEntry.COLUMN_HISTORY_DAYS, 2);
+        long twoDaysId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, twoDays));
+
+        ContentValues orphan = TestUtilities.createNorthPoleLocationValues();
+        orphan.put(LocationEntry.COLUMN_LOCATION_SETTING, "99707");
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, orphan);
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(noHistoryId));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(twoDaysId));
+
+        int deleted = mContext.getContentResolver().delete(
+                WeatherContract.DatabaseEntry.buildExpiredUri(today), null, null);
+        // 5 days from the first location, 3 from the second and the orphaned location.
+        assertEquals("Error: unexpected number of rows deleted", 9, deleted);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals("Error: history window without history not applied", 5, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation("99706"), null, null, null, null);
+        assertEquals("Error: two day history window not applied", 7, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{"99707"}, null);
+        assertEquals("Error: orphaned location not removed", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Compacting should leave a size sample behind that agrees with the row counts.
+     */
+    public void testCompact() {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        int pagesFreed = mContext.getContentResolver().update(
+                WeatherContract.DatabaseEntry.buildCompactUri(1000), new ContentValues(),
+                null, null);
+        assertTrue(pagesFreed >= 0);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.DatabaseEntry.CONTENT_URI, null, null, null,
+                WeatherContract.DatabaseEntry._ID + " DESC");
+        assertTrue("Error: no size sample recorded", cursor.moveToFirst());
+        assertTrue(cursor.getLong(cursor.getColumnIndex(
+                WeatherContract.DatabaseEntry.COLUMN_SIZE_BYTES)) > 0);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getInt(cursor.getColumnIndex(
+                WeatherContract.DatabaseEntry.COLUMN_WEATHER_ROWS)));
+        assertEquals(1, cursor.getInt(cursor.getColumnIndex(
+                WeatherContract.DatabaseEntry.COLUMN_LOCATION_ROWS)));
+        cursor.close();
+    }
+
+    /*
+        Summaries should follow the weather they describe, through inserts and deletes.
+     */
+    public void testSummaries() {
+        long millisecondsInADay = 1000*60*60*24;
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+
+        // Ten days from today, rain every other day starting today.
+        ContentValues[] weather = createBulkInsertWeatherValues(locationRowId);
+        for (int i = 0; i < weather.length; i++) {
+            weather[i].put(WeatherEntry.COLUMN_DATE, today + i * millisecondsInADay);
+            weather[i].put(WeatherEntry.COLUMN_WEATHER_ID, i % 2 == 0 ? 500 : 800);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weather);
+
+        ContentValues week = new ContentValues();
+        week.put(SummaryEntry.COLUMN_LOC_KEY, locationRowId);
+        week.put(SummaryEntry.COLUMN_WINDOW_DAYS, SummaryEntry.WINDOW_WEEK);
+        week.put(SummaryEntry.COLUMN_START_DATE, today);
+        week.put(SummaryEntry.COLUMN_DAY_COUNT, 7);
+        week.put(SummaryEntry.COLUMN_MIN_TEMP, 59.0);
+        week.put(SummaryEntry.COLUMN_MAX_TEMP, 81.0);
+        week.put(SummaryEntry.COLUMN_AVG_TEMP, 70.0);
+        week.put(SummaryEntry.COLUMN_WARMEST_DATE, today + 6 * millisecondsInADay);
+        week.put(SummaryEntry.COLUMN_DOMINANT_WEATHER_ID, 500);
+        week.put(SummaryEntry.COLUMN_WET_DAYS, 4);
+        Cursor cursor = mContext.getContentResolver().query(
+                SummaryEntry.buildSummaryLocationWithWindow(TestUtilities.TEST_LOCATION,
+                        SummaryEntry.WINDOW_WEEK), null, null, null, null);
+        TestUtilities.validateCursor("testSummaries. Error validating weekly summary.",
+                cursor, week);
+
+        cursor = mContext.getContentResolver().query(
+                SummaryEntry.buildSummaryLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals("Error: expected a summary for each window", 2, cursor.getCount());
+        cursor.close();
+
+        // Deleting the hottest days has to bring the maximum back down.
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[]{Long.toString(today + 3 * millisecondsInADay)});
+        week.put(SummaryEntry.COLUMN_DAY_COUNT, 3);
+        week.put(SummaryEntry.COLUMN_MIN_TEMP, 63.0);
+        week.put(SummaryEntry.COLUMN_MAX_TEMP, 77.0);
+        week.put(SummaryEntry.COLUMN_WARMEST_DATE, today + 2 * millisecondsInADay);
+        week.put(SummaryEntry.COLUMN_WET_DAYS, 2);
+        cursor = mContext.getContentResolver().query(
+                SummaryEntry.buildSummaryLocationWithWindow(TestUtilities.TEST_LOCATION,
+                        SummaryEntry.WINDOW_WEEK), null, null, null, null);
+        TestUtilities.validateCursor("testSummaries. Error validating summary after delete.",
+                cursor, week);
+
+        // So does an update of the weather it describes.
+        ContentValues hotter = new ContentValues();
+        hotter.put(WeatherEntry.COLUMN_MAX_TEMP, 90.0);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, hotter,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(today)});
+        cursor = mContext.getContentResolver().query(
+                SummaryEntry.buildSummaryLocationWithWindow(TestUtilities.TEST_LOCATION,
+                        SummaryEntry.WINDOW_WEEK),
+                new String[]{SummaryEntry.COLUMN_MAX_TEMP, SummaryEntry.COLUMN_WARMEST_DATE},
+                null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: the summary missed an update", 90.0, cursor.getDouble(0));
+        assertEquals(today, cursor.getLong(1));
+        cursor.close();
+
+        deleteAllRecordsFromProvider();
+        cursor = mContext.getContentResolver().query(
+                SummaryEntry.buildSummaryLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals("Error: summaries outlived their weather", 0, cursor.getCount());
+        cursor.close();
+    }
 }
@@ -0,0 +1,514 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.example.android.sunshine.app.ForecastPageLoader;
+import com.example.android.sunshine.app.data.WeatherContract.DatabaseEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SummaryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.BenchmarkReport;
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.example.android.sunshine.app.utils.SunshineTestRunner;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The WeatherProvider under load: bulk insert throughput, the latency of every query URI with
+    a forecast's worth and a thousand weather rows stored, how long loaders take to deliver
+    after a write, and how readers fare while a sync writes.  Results go through a
+    BenchmarkReport, so they can be compared before and after a provider or schema change.
+
+    A bigger table, a hundred thousand rows say, is measured too when its size is given as the
+    benchmarkRows instrumentation argument; see SunshineTestRunner.
+
+    Locations hold at most DAYS_PER_LOCATION days, so bigger tables have more locations rather
+    than longer forecasts, as they would on a phone.
+ */
+@LargeTest
+public class TestProviderBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestProviderBenchmark.class.getSimpleName();
+
+    private static final int[] SIZES = {14, 1000};
+    private static final String ARG_ROWS = "benchmarkRows";
+    private static final int DAYS_PER_LOCATION = 1000;
+    private static final int FORECAST_DAYS = 14;
+    private static final int HOURLY_SAMPLES = 40;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 30;
+    private static final int READERS = 4;
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long HOUR_IN_MILLIS = 60 * 60 * 1000L;
+    private static final long LOAD_TIMEOUT = 5000;
+
+    // The columns the forecast list reads.
+    private static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    /*
+        Filling the table DAYS_PER_LOCATION rows a call, then syncs into it: a forecast for one
+        location through the upsert URI, which replaces the days already stored.
+     */
+    public void testBulkInsert() throws Exception {
+        BenchmarkReport report = new BenchmarkReport(LOG_TAG, getName());
+        for (int size : getSizes()) {
+            deleteAll();
+            long start = System.nanoTime();
+            int locations = populate(size);
+            report.addThroughput("bulkInsert/weather", size, System.nanoTime() - start);
+
+            BenchmarkReport.Samples syncs = new BenchmarkReport.Samples();
+            for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                int location = i % locations;
+                ContentValues[] forecast = createWeatherValues(-1, FORECAST_DAYS);
+                start = System.nanoTime();
+                int inserted = mContext.getContentResolver().bulkInsert(
+                        WeatherEntry.buildWeatherLocationUpsert(locationSetting(location),
+                                cityName(location), latitude(location), longitude(location)),
+                        forecast);
+                long nanos = System.nanoTime() - start;
+                assertEquals(FORECAST_DAYS, inserted);
+                if (i >= WARMUP) {
+                    syncs.add(nanos);
+                }
+            }
+            report.addLatency("bulkInsert/upsert_forecast", size, syncs);
+        }
+        report.write(mContext);
+    }
+
+    public void testQueryLatency() throws Exception {
+        BenchmarkReport report = new BenchmarkReport(LOG_TAG, getName());
+        for (int size : getSizes()) {
+            deleteAll();
+            populate(size);
+            mContext.getContentResolver().bulkInsert(
+                    HourlyEntry.buildHourlyLocation(locationSetting(0)), createHourlyValues());
+            // Compacting records the size sample the database URI reads, as a sync would.
+            mContext.getContentResolver().update(DatabaseEntry.buildCompactUri(1000),
+                    new ContentValues(), null, null);
+
+            for (Map.Entry<String, Uri> query : getQueries().entrySet()) {
+                BenchmarkReport.Samples samples = new BenchmarkReport.Samples();
+                for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                    long start = System.nanoTime();
+                    Cursor cursor = mContext.getContentResolver().query(query.getValue(),
+                            null, null, null, null);
+                    // Counting fills the cursor's window, which is when the query really runs.
+                    int count = cursor.getCount();
+                    long nanos = System.nanoTime() - start;
+                    cursor.close();
+                    assertTrue("Error: " + query.getKey() + " found nothing", count > 0);
+                    if (i >= WARMUP) {
+                        samples.add(nanos);
+                    }
+                }
+                report.addLatency("query/" + query.getKey(), size, samples);
+            }
+        }
+        report.write(mContext);
+    }
+
+    /*
+        From a weather row being updated to the loaders over it delivering a cursor with the
+        change: the forecast list's page loader and a detail view's CursorLoader.  This is the
+        notification, the requery and the hop back to the main thread.
+     */
+    public void testLoaderRequery() throws Exception {
+        BenchmarkReport report = new BenchmarkReport(LOG_TAG, getName());
+        int rows = DAYS_PER_LOCATION;
+        populate(rows);
+        long detailDate = mToday + 2 * DAY_IN_MILLIS;
+        final Uri detailUri = WeatherEntry.buildWeatherLocationWithDate(locationSetting(0),
+                detailDate);
+        Cursor cursor = mContext.getContentResolver().query(detailUri,
+                new String[]{WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID},
+                null, null, null);
+        assertTrue(cursor.moveToFirst());
+        String[] rowId = {Long.toString(cursor.getLong(0))};
+        cursor.close();
+
+        final DeliveryListener list = new DeliveryListener();
+        final DeliveryListener detail = new DeliveryListener();
+        final Loader[] loaders = new Loader[2];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                ForecastPageLoader listLoader = new ForecastPageLoader(mContext,
+                        locationSetting(0), mToday, COLUMNS, ForecastPageLoader.DEFAULT_PAGE_SIZE);
+                listLoader.registerListener(0, list);
+                listLoader.startLoading();
+                CursorLoader detailLoader =
+                        new CursorLoader(mContext, detailUri, null, null, null, null);
+                detailLoader.registerListener(1, detail);
+                detailLoader.startLoading();
+                loaders[0] = listLoader;
+                loaders[1] = detailLoader;
+            }
+        });
+        try {
+            list.waitForDeliveries(1);
+            detail.waitForDeliveries(1);
+
+            BenchmarkReport.Samples listSamples = new BenchmarkReport.Samples();
+            BenchmarkReport.Samples detailSamples = new BenchmarkReport.Samples();
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                int listDeliveries = list.getDeliveries();
+                int detailDeliveries = detail.getDeliveries();
+                values.put(WeatherEntry.COLUMN_MAX_TEMP, 80 + i);
+                long start = System.nanoTime();
+                assertEquals(1, mContext.getContentResolver().update(WeatherEntry.CONTENT_URI,
+                        values, WeatherEntry._ID + " = ?", rowId));
+                list.waitForDeliveries(listDeliveries + 1);
+                detail.waitForDeliveries(detailDeliveries + 1);
+                if (i >= WARMUP) {
+                    listSamples.add(list.getLastDeliveryNanos() - start);
+                    detailSamples.add(detail.getLastDeliveryNanos() - start);
+                }
+            }
+            report.addLatency("loader/forecast_list", rows, listSamples);
+            report.addLatency("loader/detail", rows, detailSamples);
+        } finally {
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    for (Loader loader : loaders) {
+                        if (loader != null) {
+                            loader.reset();
+                        }
+                    }
+                }
+            });
+        }
+        report.write(mContext);
+    }
+
+    /*
+        READERS threads reading the forecast list's query for locations of their own, alone and
+        then while a writer syncs another location over and over.
+     */
+    public void testConcurrentReaders() throws Exception {
+        BenchmarkReport report = new BenchmarkReport(LOG_TAG, getName());
+        int rows = (READERS + 1) * DAYS_PER_LOCATION;
+        populate(rows);
+
+        report.addLatency("contention/reader", rows, runReaders(null));
+
+        final BenchmarkReport.Samples writes = new BenchmarkReport.Samples();
+        Worker writer = new Worker() {
+            @Override
+            void work() {
+                while (!isStopRequested()) {
+                    ContentValues[] forecast = createWeatherValues(-1, FORECAST_DAYS);
+                    long start = System.nanoTime();
+                    mContext.getContentResolver().bulkInsert(
+                            WeatherEntry.buildWeatherLocationUpsert(locationSetting(READERS),
+                                    cityName(READERS), latitude(READERS), longitude(READERS)),
+                            forecast);
+                    writes.add(System.nanoTime() - start);
+                }
+            }
+        };
+        report.addLatency("contention/reader_with_writer", rows, runReaders(writer));
+        report.addLatency("contention/writer", rows, writes);
+        report.write(mContext);
+    }
+
+    /*
+        Runs the readers to completion, with the writer going for as long as they do if there
+        is one, and gives their latencies all together.
+     */
+    private BenchmarkReport.Samples runReaders(Worker writer) throws Exception {
+        Worker[] readers = new Worker[READERS];
+        final BenchmarkReport.Samples[] samples = new BenchmarkReport.Samples[READERS];
+        for (int r = 0; r < READERS; r++) {
+            final int location = r;
+            samples[r] = new BenchmarkReport.Samples();
+            readers[r] = new Worker() {
+                @Override
+                void work() {
+                    Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(
+                            locationSetting(location), mToday);
+                    for (int i = 0; i < WARMUP + ITERATIONS * 10; i++) {
+                        long start = System.nanoTime();
+                        Cursor cursor = mContext.getContentResolver().query(uri, COLUMNS,
+                                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+                        cursor.getCount();
+                        long nanos = System.nanoTime() - start;
+                        cursor.close();
+                        if (i >= WARMUP) {
+                            samples[location].add(nanos);
+                        }
+                    }
+                }
+            };
+        }
+
+        if (writer != null) {
+            writer.start();
+        }
+        for (Worker reader : readers) {
+            reader.start();
+        }
+        for (Worker reader : readers) {
+            reader.finish();
+        }
+        if (writer != null) {
+            writer.requestStop();
+            writer.finish();
+        }
+
+        BenchmarkReport.Samples all = new BenchmarkReport.Samples();
+        for (BenchmarkReport.Samples readerSamples : samples) {
+            all.addAll(readerSamples);
+        }
+        return all;
+    }
+
+    private Map<String, Uri> getQueries() {
+        Map<String, Uri> queries = new LinkedHashMap<String, Uri>();
+        queries.put("weather", WeatherEntry.CONTENT_URI);
+        queries.put("weather/location",
+                WeatherEntry.buildWeatherLocationWithStartDate(locationSetting(0), mToday));
+        queries.put("weather/location/date",
+                WeatherEntry.buildWeatherLocationWithDate(locationSetting(0), mToday + DAY_IN_MILLIS));
+        queries.put("weather/location/page", WeatherEntry.buildWeatherLocationFirstPage(
+                locationSetting(0), mToday, ForecastPageLoader.DEFAULT_PAGE_SIZE));
+        queries.put("location", LocationEntry.CONTENT_URI);
+        queries.put("location/resolve", LocationEntry.buildLocationResolveUri(cityName(0)));
+        queries.put("location/suggest", LocationEntry.buildLocationSuggestUri("City", 5));
+        queries.put("location/near",
+                LocationEntry.buildLocationNearUri(latitude(0), longitude(0), 5000, 1));
+        queries.put("hourly/location", HourlyEntry.buildHourlyLocation(locationSetting(0)));
+        queries.put("summary/location", SummaryEntry.buildSummaryLocation(locationSetting(0)));
+        queries.put("database", DatabaseEntry.CONTENT_URI);
+        return queries;
+    }
+
+    /*
+        SIZES, and after them the benchmarkRows argument if it was given.
+     */
+    private static int[] getSizes() {
+        int rows = SunshineTestRunner.getIntArgument(ARG_ROWS, 0);
+        if (rows <= SIZES[SIZES.length - 1]) {
+            return SIZES;
+        }
+        int[] sizes = Arrays.copyOf(SIZES, SIZES.length + 1);
+        sizes[SIZES.length] = rows;
+        return sizes;
+    }
+
+    /*
+        Stores size weather rows, DAYS_PER_LOCATION to a location from today on, and returns how
+        many locations that took.
+     */
+    private int populate(int size) {
+        int locations = 0;
+        for (int stored = 0; stored < size; stored += DAYS_PER_LOCATION) {
+            ContentValues location = new ContentValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting(locations));
+            location.put(LocationEntry.COLUMN_CITY_NAME, cityName(locations));
+            location.put(LocationEntry.COLUMN_COORD_LAT, latitude(locations));
+            location.put(LocationEntry.COLUMN_COORD_LONG, longitude(locations));
+            long locationId = Long.parseLong(mContext.getContentResolver()
+                    .insert(LocationEntry.CONTENT_URI, location).getLastPathSegment());
+            int days = Math.min(DAYS_PER_LOCATION, size - stored);
+            assertEquals(days, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                    createWeatherValues(locationId, days)));
+            locations++;
+        }
+        return locations;
+    }
+
+    /*
+        days of weather from today, for a location by id, or for the upsert URI's location if
+        the id is -1.
+     */
+    private ContentValues[] createWeatherValues(long locationId, int days) {
+        ContentValues[] values = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationId);
+            if (locationId == -1) {
+                weatherValues.remove(WeatherEntry.COLUMN_LOC_KEY);
+            }
+            weatherValues.put(WeatherEntry.COLUMN_DATE, mToday + i * DAY_IN_MILLIS);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i % 10);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 4);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    private ContentValues[] createHourlyValues() {
+        ContentValues[] samples = new ContentValues[HOURLY_SAMPLES];
+        for (int i = 0; i < HOURLY_SAMPLES; i++) {
+            ContentValues values = new ContentValues();
+            values.put(HourlyEntry.COLUMN_TIME, mToday + i * 3 * HOUR_IN_MILLIS);
+            values.put(HourlyEntry.COLUMN_TEMP, 10.5 + i % 8);
+            values.put(HourlyEntry.COLUMN_WEATHER_ID, 800 + i % 4);
+            values.put(HourlyEntry.COLUMN_HUMIDITY, 60.0);
+            values.put(HourlyEntry.COLUMN_PRESSURE, 1012.5);
+            values.put(HourlyEntry.COLUMN_WIND_SPEED, 1.5);
+            values.put(HourlyEntry.COLUMN_DEGREES, 90.0);
+            samples[i] = values;
+        }
+        return samples;
+    }
+
+    private static String locationSetting(int location) {
+        return Integer.toString(10000 + location);
+    }
+
+    private static String cityName(int location) {
+        return "City " + location;
+    }
+
+    // Locations in a row a tenth of a degree apart, so each has its own grid cells.
+    private static double latitude(int location) {
+        return 40 + location * 0.1;
+    }
+
+    private static double longitude(int location) {
+        return -100;
+    }
+
+    private void runOnMainThread(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        assertTrue("Error: the main thread didn't run the task",
+                done.await(LOAD_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(HourlyEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    /*
+        Counts a loader's deliveries, on the main thread, and when the last one came.
+     */
+    private static class DeliveryListener implements Loader.OnLoadCompleteListener<Cursor> {
+        private volatile int mDeliveries;
+        private volatile long mLastDeliveryNanos;
+
+        @Override
+        public void onLoadComplete(Loader<Cursor> loader, Cursor data) {
+            mLastDeliveryNanos = System.nanoTime();
+            mDeliveries++;
+        }
+
+        int getDeliveries() {
+            return mDeliveries;
+        }
+
+        long getLastDeliveryNanos() {
+            return mLastDeliveryNanos;
+        }
+
+        void waitForDeliveries(final int deliveries) {
+            new PollingCheck(LOAD_TIMEOUT) {
+                @Override
+                protected boolean check() {
+                    return mDeliveries >= deliveries;
+                }
+            }.run();
+        }
+    }
+
+    /*
+        A thread whose failure fails the test when it's finished.
+     */
+    private abstract static class Worker extends Thread {
+        private volatile boolean mStopped;
+        private volatile Throwable mFailure;
+
+        abstract void work();
+
+        @Override
+        public void run() {
+            try {
+                work();
+            } catch (Throwable t) {
+                mFailure = t;
+            }
+        }
+
+        boolean isStopRequested() {
+            return mStopped;
+        }
+
+        void requestStop() {
+            mStopped = true;
+        }
+
+        void finish() throws Exception {
+            join();
+            if (mFailure != null) {
+                throw new Exception("Error: a benchmark thread failed", mFailure);
+            }
+        }
+    }
+}
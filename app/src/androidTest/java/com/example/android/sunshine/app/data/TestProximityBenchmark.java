@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/*
+    Nearest-neighbour queries over 10,000 locations through the near URI, checked against
+    measuring every location, which is what finding one without the geohash index costs.  Times
+    are written to logcat under the LOG_TAG.
+ */
+@LargeTest
+public class TestProximityBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestProximityBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 10000;
+    private static final int QUERIES = 100;
+    private static final double RADIUS_METERS = 50000;
+    private static final int LIMIT = 5;
+
+    private static final String[] NEAR_COLUMNS = {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_DISTANCE
+    };
+
+    private double[] mLats = new double[LOCATIONS];
+    private double[] mLons = new double[LOCATIONS];
+    private long[] mIds = new long[LOCATIONS];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+
+        // Scattered over the continental US, a few hundred square kilometres each.
+        Random random = new Random(42);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (int i = 0; i < LOCATIONS; i++) {
+            mLats[i] = 30 + random.nextDouble() * 18;
+            mLons[i] = -124 + random.nextDouble() * 54;
+            operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                    .withValue(LocationEntry.COLUMN_LOCATION_SETTING, "loc" + i)
+                    .withValue(LocationEntry.COLUMN_CITY_NAME, "City " + i)
+                    .withValue(LocationEntry.COLUMN_COORD_LAT, mLats[i])
+                    .withValue(LocationEntry.COLUMN_COORD_LONG, mLons[i])
+                    .build());
+        }
+        long start = SystemClock.elapsedRealtime();
+        ContentProviderResult[] results = mContext.getContentResolver()
+                .applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        Log.i(LOG_TAG, String.format("%d locations inserted and indexed in %d ms", LOCATIONS,
+                SystemClock.elapsedRealtime() - start));
+        for (int i = 0; i < LOCATIONS; i++) {
+            mIds[i] = Long.parseLong(results[i].uri.getLastPathSegment());
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testNearMatchesScan() {
+        Random random = new Random(7);
+        long nearMillis = 0;
+        long scanMillis = 0;
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            double lat = 30 + random.nextDouble() * 18;
+            double lon = -124 + random.nextDouble() * 54;
+
+            long start = SystemClock.elapsedRealtime();
+            Cursor cursor = mContext.getContentResolver().query(
+                    LocationEntry.buildLocationNearUri(lat, lon, RADIUS_METERS, LIMIT),
+                    NEAR_COLUMNS, null, null, null);
+            long[] near = new long[cursor.getCount()];
+            double lastDistance = 0;
+            while (cursor.moveToNext()) {
+                near[cursor.getPosition()] = cursor.getLong(0);
+                double distance = cursor.getDouble(1);
+                assertTrue("Error: locations should come nearest first",
+                        distance >= lastDistance);
+                assertTrue(distance <= RADIUS_METERS);
+                lastDistance = distance;
+            }
+            cursor.close();
+            nearMillis += SystemClock.elapsedRealtime() - start;
+
+            start = SystemClock.elapsedRealtime();
+            long[] scanned = scan(lat, lon);
+            scanMillis += SystemClock.elapsedRealtime() - start;
+
+            assertEquals("Error: the near URI missed locations in the radius",
+                    scanned.length, near.length);
+            for (int i = 0; i < near.length; i++) {
+                assertEquals(scanned[i], near[i]);
+            }
+            found += near.length;
+        }
+        Log.i(LOG_TAG, String.format("%d locations, %.0f km radius: %.2f ms per near query, " +
+                        "%.2f ms per scan, %.1f found per query", LOCATIONS,
+                RADIUS_METERS / 1000, (double) nearMillis / QUERIES,
+                (double) scanMillis / QUERIES, (double) found / QUERIES));
+    }
+
+    public void testSyncMarksLocationUpdated() {
+        long before = System.currentTimeMillis();
+        ContentValues weather = TestUtilities.createWeatherValues(0);
+        weather.remove(WeatherEntry.COLUMN_LOC_KEY);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.buildWeatherLocationUpsert(
+                "loc0", "City 0", mLats[0], mLons[0]), new ContentValues[]{weather});
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationNearUri(mLats[0], mLons[0], 1, 1),
+                new String[]{LocationEntry._ID, LocationEntry.COLUMN_UPDATED}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(mIds[0], cursor.getLong(0));
+        assertTrue("Error: a sync should mark its location updated",
+                cursor.getLong(1) >= before);
+        cursor.close();
+    }
+
+    /*
+        The LIMIT nearest ids within the radius, by measuring every location the way a query
+        without the index would have to.
+     */
+    private long[] scan(double lat, double lon) {
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID, LocationEntry.COLUMN_COORD_LAT,
+                        LocationEntry.COLUMN_COORD_LONG}, null, null, null);
+        long[] ids = new long[LIMIT];
+        double[] distances = new double[LIMIT];
+        int count = 0;
+        while (cursor.moveToNext()) {
+            double distance = Geohash.distance(lat, lon, cursor.getDouble(1), cursor.getDouble(2));
+            if (distance > RADIUS_METERS ||
+                    (count == LIMIT && distance >= distances[LIMIT - 1])) {
+                continue;
+            }
+            // Insert in order, dropping the furthest if full.
+            int i = count < LIMIT ? count++ : LIMIT - 1;
+            while (i > 0 && distances[i - 1] > distance) {
+                ids[i] = ids[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            ids[i] = cursor.getLong(0);
+            distances[i] = distance;
+        }
+        cursor.close();
+        long[] result = new long[count];
+        System.arraycopy(ids, 0, result, 0, count);
+        return result;
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Parcel;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Random;
+
+/*
+    Random-access reads of the columns a forecast row shows, from a ForecastSnapshot compared with
+    the same rows read through the cursor's CursorWindow, as the list and the widgets did.  Results
+    are written to logcat under the LOG_TAG.
+ */
+@LargeTest
+public class TestSnapshotBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestSnapshotBenchmark.class.getSimpleName();
+
+    private static final int DAYS = 1000;
+    private static final int READS = 200000;
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final String[] DESCRIPTIONS = {"Clear", "Clouds", "Rain", "Snow"};
+
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createWeatherValues(locationRowId));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testParcelRoundTrip() {
+        Cursor cursor = query();
+        ForecastSnapshot snapshot =
+                ForecastSnapshot.fromCursor(TestUtilities.TEST_LOCATION, mToday, cursor);
+        cursor.close();
+        assertSame("Error: rows with the same description don't share it",
+                snapshot.getDescription(0), snapshot.getDescription(DESCRIPTIONS.length));
+
+        Parcel parcel = Parcel.obtain();
+        snapshot.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        ForecastSnapshot copy = ForecastSnapshot.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+
+        assertEquals(snapshot.getLocationSetting(), copy.getLocationSetting());
+        assertEquals(snapshot.getStartDate(), copy.getStartDate());
+        assertEquals(DAYS, copy.size());
+        for (int i = 0; i < DAYS; i++) {
+            assertEquals(snapshot.getDate(i), copy.getDate(i));
+            assertEquals(snapshot.getWeatherId(i), copy.getWeatherId(i));
+            assertEquals(snapshot.getDescription(i), copy.getDescription(i));
+            assertEquals(snapshot.getHigh(i), copy.getHigh(i));
+            assertEquals(snapshot.getLow(i), copy.getLow(i));
+            assertEquals(snapshot.getHumidity(i), copy.getHumidity(i));
+            assertEquals(snapshot.getPressure(i), copy.getPressure(i));
+            assertEquals(snapshot.getWindSpeed(i), copy.getWindSpeed(i));
+            assertEquals(snapshot.getDegrees(i), copy.getDegrees(i));
+        }
+        assertSame("Error: a parceled snapshot doesn't share descriptions",
+                copy.getDescription(0), copy.getDescription(DESCRIPTIONS.length));
+    }
+
+    public void testRandomReads() {
+        int[] positions = new int[READS];
+        Random random = new Random(42);
+        for (int i = 0; i < READS; i++) {
+            positions[i] = random.nextInt(DAYS);
+        }
+
+        Cursor cursor = query();
+        // Fill the window before timing anything, as a loader would.
+        cursor.getCount();
+        long start = SystemClock.elapsedRealtime();
+        ForecastSnapshot snapshot =
+                ForecastSnapshot.fromCursor(TestUtilities.TEST_LOCATION, mToday, cursor);
+        long buildMillis = SystemClock.elapsedRealtime() - start;
+
+        start = SystemClock.elapsedRealtime();
+        double cursorSum = 0;
+        int dateIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_DATE);
+        int weatherIdIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID);
+        int descIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_SHORT_DESC);
+        int highIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP);
+        int lowIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_MIN_TEMP);
+        for (int position : positions) {
+            cursor.moveToPosition(position);
+            cursorSum += cursor.getLong(dateIndex) % 7 + cursor.getInt(weatherIdIndex) +
+                    cursor.getString(descIndex).length() + cursor.getDouble(highIndex) +
+                    cursor.getDouble(lowIndex);
+        }
+        long cursorMillis = SystemClock.elapsedRealtime() - start;
+        cursor.close();
+
+        start = SystemClock.elapsedRealtime();
+        double snapshotSum = 0;
+        for (int position : positions) {
+            snapshotSum += snapshot.getDate(position) % 7 + snapshot.getWeatherId(position) +
+                    snapshot.getDescription(position).length() + snapshot.getHigh(position) +
+                    snapshot.getLow(position);
+        }
+        long snapshotMillis = SystemClock.elapsedRealtime() - start;
+
+        // The sums keep the reads from being optimized away, and check they read the same rows.
+        assertEquals(cursorSum, snapshotSum, 0.01 * READS);
+        Log.i(LOG_TAG, String.format("snapshot of %d rows built in %d ms", DAYS, buildMillis));
+        Log.i(LOG_TAG, String.format("%d random row reads: %d ms through the cursor, " +
+                "%d ms from the snapshot", READS, cursorMillis, snapshotMillis));
+        assertTrue("Error: snapshot reads weren't quicker than cursor reads",
+                snapshotMillis < cursorMillis);
+    }
+
+    private Cursor query() {
+        return mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION, mToday),
+                ForecastSnapshot.COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    /*
+        Temperatures are chosen to survive the round trip through a float exactly.
+     */
+    private ContentValues[] createWeatherValues(long locationRowId) {
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, mToday + i * DAY_IN_MILLIS);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 20.5 + i % 10);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 10.25 + i % 5);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC,
+                    DESCRIPTIONS[i % DESCRIPTIONS.length]);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i % DESCRIPTIONS.length);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
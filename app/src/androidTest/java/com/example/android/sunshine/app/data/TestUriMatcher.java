@@ -34,8 +34,13 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_DIR = WeatherContract.WeatherEntry.CONTENT_URI;
     private static final Uri TEST_WEATHER_WITH_LOCATION_DIR = WeatherContract.WeatherEntry.buildWeatherLocation(LOCATION_QUERY);
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
+    private static final Uri TEST_WEATHER_PAGE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationPage(LOCATION_QUERY, TEST_DATE, 30);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    private static final Uri TEST_LOCATION_RESOLVE = WeatherContract.LocationEntry.buildLocationResolveUri(LOCATION_QUERY);
+    private static final Uri TEST_LOCATION_RESOLVE_COORDINATES = WeatherContract.LocationEntry.buildLocationResolveUri(51.5, -0.12);
+    private static final Uri TEST_LOCATION_SUGGEST = WeatherContract.LocationEntry.buildLocationSuggestUri("Lon", 5);
+    private static final Uri TEST_LOCATION_NEAR = WeatherContract.LocationEntry.buildLocationNearUri(51.5, -0.12, 5000, 1);
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -51,7 +56,17 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_DIR), WeatherProvider.WEATHER_WITH_LOCATION);
         assertEquals("Error: The WEATHER WITH LOCATION AND DATE URI was matched incorrectly.",
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
+        assertEquals("Error: The WEATHER PAGE URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_PAGE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_PAGE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The LOCATION RESOLVE URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_RESOLVE), WeatherProvider.LOCATION_RESOLVE);
+        assertEquals("Error: The LOCATION RESOLVE URI with coordinates was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_RESOLVE_COORDINATES), WeatherProvider.LOCATION_RESOLVE);
+        assertEquals("Error: The LOCATION SUGGEST URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_SUGGEST), WeatherProvider.LOCATION_SUGGEST);
+        assertEquals("Error: The LOCATION NEAR URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_NEAR), WeatherProvider.LOCATION_NEAR);
     }
 }
@@ -17,6 +17,7 @@ package com.example.android.sunshine.app.data;
 
 import android.net.Uri;
 import android.test.AndroidTestCase;
+import android.text.format.Time;
 
 /*
     Students: This is NOT a complete test for the WeatherContract --- just for the functions
@@ -42,4 +43,19 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    /*
+        normalizeDate used to be done with a Time; it should still give the same day starts.
+     */
+    public void testNormalizeDate() {
+        long date = TEST_WEATHER_DATE * 1000;
+        for (int hour = 0; hour < 24 * 400; hour += 7) {
+            long time = date + hour * 60 * 60 * 1000L;
+            Time expected = new Time();
+            expected.set(time);
+            long dayStart = expected.setJulianDay(Time.getJulianDay(time, expected.gmtoff));
+            assertEquals("Error: " + time + " normalized to the wrong day start",
+                    dayStart, WeatherContract.normalizeDate(time));
+        }
+    }
 }
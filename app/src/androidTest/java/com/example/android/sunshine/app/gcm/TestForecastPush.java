@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+    Applies forecast messages to a location that isn't the preferred one, so nothing here asks
+    for a sync.
+ */
+public class TestForecastPush extends AndroidTestCase {
+    private static final String LOCATION = "99707";
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private long mToday;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteLocation();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        mLocationRowId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteLocation();
+        super.tearDown();
+    }
+
+    public void testDelta() throws JSONException {
+        JSONArray days = new JSONArray()
+                .put(createDay(mToday - DAY_IN_MILLIS, 10.0))
+                .put(createDay(mToday, 20.0))
+                .put(createDay(mToday + DAY_IN_MILLIS, 21.0));
+        assertEquals(ForecastPush.RESULT_APPLIED,
+                ForecastPush.handle(mContext, createDelta(LOCATION, days)));
+
+        Cursor cursor = queryWeather();
+        try {
+            assertEquals("Error: yesterday's day was stored", 2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(mToday, cursor.getLong(0));
+            assertEquals(20.0, cursor.getDouble(1));
+            cursor.moveToNext();
+            assertEquals(mToday + DAY_IN_MILLIS, cursor.getLong(0));
+            assertEquals(21.0, cursor.getDouble(1));
+        } finally {
+            cursor.close();
+        }
+
+        // A later delta replaces the day it carries and leaves the others alone.
+        assertEquals(ForecastPush.RESULT_APPLIED, ForecastPush.handle(mContext,
+                createDelta(LOCATION, new JSONArray().put(createDay(mToday, 25.0)))));
+        cursor = queryWeather();
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(25.0, cursor.getDouble(1));
+            cursor.moveToNext();
+            assertEquals(21.0, cursor.getDouble(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testUnusableDeltas() throws JSONException {
+        JSONObject badDay = createDay(mToday + DAY_IN_MILLIS, 21.0);
+        badDay.remove(ForecastPush.HUMIDITY);
+        JSONArray days = new JSONArray().put(createDay(mToday, 20.0)).put(badDay);
+        // Neither is the preferred location, so neither is synced instead.
+        assertEquals(ForecastPush.RESULT_IGNORED,
+                ForecastPush.handle(mContext, createDelta(LOCATION, days)));
+        assertEquals(ForecastPush.RESULT_IGNORED, ForecastPush.handle(mContext,
+                createDelta("99708", new JSONArray().put(createDay(mToday, 20.0)))));
+
+        Cursor cursor = queryWeather();
+        try {
+            assertEquals("Error: part of a malformed delta was stored", 0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testMessageTypes() throws JSONException {
+        assertTrue(ForecastPush.isForecastMessage(
+                createDelta(LOCATION, new JSONArray())));
+        assertTrue(ForecastPush.isForecastMessage(new JSONObject()
+                .put(ForecastPush.TYPE, ForecastPush.TYPE_INVALIDATE)
+                .put(ForecastPush.LOCATION, LOCATION)));
+        assertFalse("Error: a weather alert was taken for a forecast message",
+                ForecastPush.isForecastMessage(new JSONObject()
+                        .put("weather", "Hurricane").put("location", LOCATION)));
+    }
+
+    private JSONObject createDelta(String location, JSONArray days) throws JSONException {
+        return new JSONObject()
+                .put(ForecastPush.TYPE, ForecastPush.TYPE_DELTA)
+                .put(ForecastPush.LOCATION, location)
+                .put(ForecastPush.DAYS, days);
+    }
+
+    private JSONObject createDay(long date, double high) throws JSONException {
+        return new JSONObject()
+                .put(ForecastPush.DATE, date)
+                .put(ForecastPush.WEATHER_ID, 800)
+                .put(ForecastPush.SHORT_DESC, "Clear")
+                .put(ForecastPush.MAX, high)
+                .put(ForecastPush.MIN, high - 10)
+                .put(ForecastPush.HUMIDITY, 80)
+                .put(ForecastPush.PRESSURE, 1013.2)
+                .put(ForecastPush.WIND, 3.6)
+                .put(ForecastPush.DEGREES, 270);
+    }
+
+    private Cursor queryWeather() {
+        return mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MAX_TEMP},
+                WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(mLocationRowId)},
+                WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    private void deleteLocation() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " IN (SELECT " + LocationEntry._ID + " FROM " +
+                        LocationEntry.TABLE_NAME + " WHERE " +
+                        LocationEntry.COLUMN_LOCATION_SETTING + " = ?)",
+                new String[]{LOCATION});
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{LOCATION});
+    }
+}
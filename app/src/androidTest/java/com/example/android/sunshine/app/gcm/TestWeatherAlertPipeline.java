@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Replays a burst of alerts through the pipeline, most of them repeats, and checks how many
+    notifications came of it.  The time the burst took to hand over, which is what GCM's thread
+    pays, and the time until the last notification was posted are written to logcat under the
+    LOG_TAG.
+ */
+public class TestWeatherAlertPipeline extends AndroidTestCase {
+    public static final String LOG_TAG = TestWeatherAlertPipeline.class.getSimpleName();
+
+    private static final int MESSAGES = 500;
+    private static final int LOCATIONS = 10;
+    private static final int TYPES = 5;
+    private static final long COALESCE_MILLIS = 500;
+    private static final long HOUR_IN_MILLIS = 60 * 60 * 1000L;
+
+    private WeatherAlertPipeline mPipeline;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPipeline = new WeatherAlertPipeline(mContext, COALESCE_MILLIS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPipeline.quit();
+        ((NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE))
+                .cancel(WeatherAlertPipeline.NOTIFICATION_ID);
+        super.tearDown();
+    }
+
+    public void testBurst() {
+        long validFrom = System.currentTimeMillis();
+        long validUntil = validFrom + HOUR_IN_MILLIS;
+        int distinct = LOCATIONS * TYPES;
+
+        long start = SystemClock.uptimeMillis();
+        for (int i = 0; i < MESSAGES; i++) {
+            int alert = i % distinct;
+            mPipeline.enqueue("9470" + alert % LOCATIONS, "type" + alert / LOCATIONS, "Storm",
+                    validFrom, validUntil);
+        }
+        long handedOver = SystemClock.uptimeMillis() - start;
+
+        new PollingCheck(10000) {
+            @Override
+            protected boolean check() {
+                return mPipeline.isIdle();
+            }
+        }.run();
+        long elapsed = SystemClock.uptimeMillis() - start;
+
+        assertEquals(MESSAGES, mPipeline.getReceivedCount());
+        assertEquals("Error: repeated alerts weren't dropped",
+                MESSAGES - distinct, mPipeline.getDuplicateCount());
+        int posted = mPipeline.getPostedCount();
+        assertTrue("Error: nothing was posted", posted > 0);
+        // The first alert is posted straight away, and then at most one per window.
+        assertTrue("Error: the burst wasn't coalesced: " + posted + " notifications",
+                posted <= 1 + elapsed / COALESCE_MILLIS + 1);
+
+        Log.i(LOG_TAG, String.format("%d alerts handed over in %d ms; %d notifications " +
+                "posted, the last after %d ms", MESSAGES, handedOver, posted, elapsed));
+    }
+
+    public void testExpiredAlertsAreDropped() {
+        long now = System.currentTimeMillis();
+        mPipeline.enqueue("94043", "storm", "Storm", now - 2 * HOUR_IN_MILLIS,
+                now - HOUR_IN_MILLIS);
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return mPipeline.isIdle();
+            }
+        }.run();
+        assertEquals(0, mPipeline.getPostedCount());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    A minimal keep-alive HTTP/1.1 server standing in for OpenWeatherMap in tests.  It answers the
+    first "failures" requests with "failureCode" and every request after that with the given
+    body, gzipped if the client asked for it.  It counts requests and accepted connections so
+    tests can check retry and connection reuse behavior and what went over the wire.
+ */
+class StandInServer implements Runnable {
+    private final ServerSocket mSocket;
+    private final byte[] mBody;
+    private final byte[] mGzippedBody;
+    private final int mFailures;
+    private final int mFailureCode;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    StandInServer(String body, int failures, int failureCode) throws IOException {
+        mBody = body.getBytes("UTF-8");
+        mGzippedBody = gzip(mBody);
+        mFailures = failures;
+        mFailureCode = failureCode;
+        mSocket = new ServerSocket(0, 10, InetAddress.getByName("127.0.0.1"));
+        new Thread(this, "StandInServer").start();
+    }
+
+    URL getUrl() throws IOException {
+        return getUrl("/forecast");
+    }
+
+    URL getUrl(String path) throws IOException {
+        return new URL("http://127.0.0.1:" + mSocket.getLocalPort() + path);
+    }
+
+    int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    /**
+     * Total bytes written to clients, headers included.
+     */
+    long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    void stop() throws IOException {
+        mSocket.close();
+    }
+
+    @Override
+    public void run() {
+        while (!mSocket.isClosed()) {
+            try {
+                final Socket client = mSocket.accept();
+                mConnectionCount.incrementAndGet();
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(client);
+                    }
+                }, "StandInServer-client").start();
+            } catch (IOException e) {
+                // The socket was closed by stop().
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try {
+            InputStream in = client.getInputStream();
+            OutputStream out = client.getOutputStream();
+            String headers;
+            while ((headers = readHeaders(in)) != null) {
+                int count = mRequestCount.incrementAndGet();
+                boolean failed = count <= mFailures;
+                boolean gzip = headers.toLowerCase().contains("accept-encoding: gzip");
+                byte[] body = failed ? new byte[0] : (gzip ? mGzippedBody : mBody);
+                StringBuilder response = new StringBuilder()
+                        .append("HTTP/1.1 ").append(failed ? mFailureCode : 200)
+                        .append(" Stand-in\r\n")
+                        .append("Content-Type: application/json; charset=utf-8\r\n")
+                        .append("Content-Length: ").append(body.length).append("\r\n");
+                if (gzip && !failed) {
+                    response.append("Content-Encoding: gzip\r\n");
+                }
+                response.append("\r\n");
+                byte[] head = response.toString().getBytes("UTF-8");
+                out.write(head);
+                out.write(body);
+                out.flush();
+                mBytesSent.addAndGet(head.length + body.length);
+            }
+        } catch (IOException e) {
+            // Client went away.
+        } finally {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // Nothing to do.
+            }
+        }
+    }
+
+    /**
+     * Reads one request's headers.  Returns null once the client closes the connection.
+     */
+    private static String readHeaders(InputStream in) throws IOException {
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        int matched = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            headers.write(b);
+            // Look for the blank line (\r\n\r\n) ending the headers.
+            if ((b == '\r' && (matched == 0 || matched == 2))
+                    || (b == '\n' && (matched == 1 || matched == 3))) {
+                matched++;
+                if (matched == 4) {
+                    return headers.toString("UTF-8");
+                }
+            } else {
+                matched = 0;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Counts how often the loaders of a typical screen would requery: the forecast lists of two
+    locations, and detail views of two dates of the first.  Each change notification an
+    observer gets is one requery for a CursorLoader.  A resync with nothing new, a one-day
+    change and a units change are counted, and compared with what every observer got when each
+    of them notified the whole weather table.  Results are written to logcat under the LOG_TAG.
+ */
+public class TestChangeNotifications extends AndroidTestCase {
+    public static final String LOG_TAG = TestChangeNotifications.class.getSimpleName();
+
+    private static final String LOCATION_A = "94043";
+    private static final String LOCATION_B = "99705";
+    private static final int DAYS = 14;
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    // How long to wait for notifications, which are delivered asynchronously, to trickle in.
+    private static final long SETTLE_MILLIS = 1000;
+
+    private long mToday;
+    private HandlerThread mObserverThread;
+    private CountingObserver mListA;
+    private CountingObserver mListB;
+    private CountingObserver mDetailA0;
+    private CountingObserver mDetailA1;
+    private CountingObserver mPresentation;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        mObserverThread = new HandlerThread("CountingObserverThread");
+        mObserverThread.start();
+        Handler handler = new Handler(mObserverThread.getLooper());
+        mListA = new CountingObserver(handler);
+        mListB = new CountingObserver(handler);
+        mDetailA0 = new CountingObserver(handler);
+        mDetailA1 = new CountingObserver(handler);
+        mPresentation = new CountingObserver(handler);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        unregisterObservers();
+        mObserverThread.quit();
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testRequeryCounts() throws Exception {
+        ContentResolver resolver = mContext.getContentResolver();
+        sync(LOCATION_A, createWeatherValues());
+        sync(LOCATION_B, createWeatherValues());
+        SystemClock.sleep(SETTLE_MILLIS);
+
+        registerObservers();
+
+        // A resync that brings nothing new.
+        sync(LOCATION_A, createWeatherValues());
+        SystemClock.sleep(SETTLE_MILLIS);
+        assertEquals("Error: an unchanged forecast made loaders requery", 0, takeWeatherCounts());
+
+        // Tomorrow's high goes up by a degree.
+        ContentValues[] weather = createWeatherValues();
+        weather[1].put(WeatherEntry.COLUMN_MAX_TEMP, 77.0);
+        sync(LOCATION_A, weather);
+        SystemClock.sleep(SETTLE_MILLIS);
+        assertEquals("Error: the changed location's list wasn't notified once", 1, mListA.get());
+        assertEquals("Error: the changed date's detail wasn't notified once", 1, mDetailA1.get());
+        assertEquals("Error: an unchanged date's detail was notified", 0, mDetailA0.get());
+        assertEquals("Error: another location's list was notified", 0, mListB.get());
+        int requeries = takeWeatherCounts();
+
+        // Units change.
+        resolver.notifyChange(WeatherContract.PRESENTATION_URI, null);
+        SystemClock.sleep(SETTLE_MILLIS);
+        assertEquals("Error: the units change didn't reach presentation observers",
+                1, mPresentation.take());
+        assertEquals("Error: the units change made loaders requery", 0, takeWeatherCounts());
+
+        // The same three steps as they used to be reported: the weather table for each.
+        for (int i = 0; i < 3; i++) {
+            resolver.notifyChange(WeatherEntry.CONTENT_URI, null);
+        }
+        SystemClock.sleep(SETTLE_MILLIS);
+        int broadcastRequeries = takeWeatherCounts();
+
+        Log.i(LOG_TAG, String.format("requeries for 3 changes on 4 loaders: %d fine-grained, " +
+                "%d notifying the weather table", requeries, broadcastRequeries));
+        assertTrue("Error: fine-grained notifications didn't reduce requeries",
+                requeries < broadcastRequeries);
+    }
+
+    private void sync(String locationSetting, ContentValues[] weather) throws Exception {
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY,
+                SunshineSyncAdapter.buildForecastBatch(locationSetting, "City " + locationSetting,
+                        37.0, -122.0, weather, mToday));
+    }
+
+    private void registerObservers() {
+        ContentResolver resolver = mContext.getContentResolver();
+        // Registered the way cursors register their notification URIs.
+        resolver.registerContentObserver(WeatherEntry.buildWeatherLocation(LOCATION_A),
+                true, mListA);
+        resolver.registerContentObserver(WeatherEntry.buildWeatherLocation(LOCATION_B),
+                true, mListB);
+        resolver.registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(LOCATION_A, mToday), true, mDetailA0);
+        resolver.registerContentObserver(
+                WeatherEntry.buildWeatherLocationWithDate(LOCATION_A, mToday + DAY_IN_MILLIS),
+                true, mDetailA1);
+        resolver.registerContentObserver(WeatherContract.PRESENTATION_URI, false, mPresentation);
+    }
+
+    private void unregisterObservers() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.unregisterContentObserver(mListA);
+        resolver.unregisterContentObserver(mListB);
+        resolver.unregisterContentObserver(mDetailA0);
+        resolver.unregisterContentObserver(mDetailA1);
+        resolver.unregisterContentObserver(mPresentation);
+    }
+
+    private int takeWeatherCounts() {
+        return mListA.take() + mListB.take() + mDetailA0.take() + mDetailA1.take();
+    }
+
+    private ContentValues[] createWeatherValues() {
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherEntry.COLUMN_DATE, mToday + i * DAY_IN_MILLIS);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75.0 + i);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 65.0 - i);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private static class CountingObserver extends ContentObserver {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        CountingObserver(Handler handler) {
+            super(handler);
+        }
+
+        int get() {
+            return mCount.get();
+        }
+
+        int take() {
+            return mCount.getAndSet(0);
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            mCount.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Compares committing a sync the way the sync adapter used to (insert the location, bulk insert
+    the weather, delete old weather: three transactions and three notifications) with the single
+    applyBatch it uses now.  Counts the change notifications a loader watching the weather table
+    would get, which is how many times it would requery, and the time spent committing.  Results
+    are written to logcat under the LOG_TAG.
+ */
+@LargeTest
+public class TestForecastCommitBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestForecastCommitBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 10;
+    private static final int DAYS = 14;
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long START_DATE = 1419033600000L;
+    // How long to wait for notifications, which are delivered asynchronously, to trickle in.
+    private static final long SETTLE_MILLIS = 1000;
+
+    private HandlerThread mObserverThread;
+    private CountingObserver mObserver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mObserverThread = new HandlerThread("CountingObserverThread");
+        mObserverThread.start();
+        mObserver = new CountingObserver(new Handler(mObserverThread.getLooper()));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().unregisterContentObserver(mObserver);
+        mObserverThread.quit();
+        deleteAll();
+        super.tearDown();
+    }
+
+    public void testCommitNotifications() throws Exception {
+        ContentResolver resolver = mContext.getContentResolver();
+
+        resolver.registerContentObserver(WeatherEntry.CONTENT_URI, true, mObserver);
+        long legacyMillis = 0;
+        for (int i = 0; i < LOCATIONS; i++) {
+            long start = SystemClock.elapsedRealtime();
+            commitLegacy(resolver, i);
+            legacyMillis += SystemClock.elapsedRealtime() - start;
+        }
+        SystemClock.sleep(SETTLE_MILLIS);
+        int legacyNotifications = mObserver.mCount.getAndSet(0);
+        resolver.unregisterContentObserver(mObserver);
+
+        deleteAll();
+
+        resolver.registerContentObserver(WeatherEntry.CONTENT_URI, true, mObserver);
+        long batchMillis = 0;
+        for (int i = 0; i < LOCATIONS; i++) {
+            long start = SystemClock.elapsedRealtime();
+            resolver.applyBatch(WeatherContract.CONTENT_AUTHORITY,
+                    SunshineSyncAdapter.buildForecastBatch(locationSetting(i), "City " + i,
+                            37.0 + i, -122.0 - i, createWeatherValues(-1), START_DATE));
+            batchMillis += SystemClock.elapsedRealtime() - start;
+        }
+        SystemClock.sleep(SETTLE_MILLIS);
+        int batchNotifications = mObserver.mCount.get();
+
+        Log.i(LOG_TAG, String.format("legacy: %d locations, %d weather notifications, %d ms",
+                LOCATIONS, legacyNotifications, legacyMillis));
+        Log.i(LOG_TAG, String.format("batch: %d locations, %d weather notifications, %d ms",
+                LOCATIONS, batchNotifications, batchMillis));
+
+        assertEquals("Error: the batch should notify once per location",
+                LOCATIONS, batchNotifications);
+        assertTrue("Error: the batch didn't reduce notifications",
+                batchNotifications < legacyNotifications);
+    }
+
+    public void testFailedBatchIsRolledBack() throws Exception {
+        ContentResolver resolver = mContext.getContentResolver();
+        ContentValues[] weather = createWeatherValues(-1);
+        // The weather table won't take a row without a date.
+        weather[DAYS - 1].remove(WeatherEntry.COLUMN_DATE);
+
+        resolver.registerContentObserver(WeatherEntry.CONTENT_URI, true, mObserver);
+        try {
+            resolver.applyBatch(WeatherContract.CONTENT_AUTHORITY,
+                    SunshineSyncAdapter.buildForecastBatch(locationSetting(0), "City 0",
+                            37.0, -122.0, weather, START_DATE));
+            fail("Error: the batch should have failed");
+        } catch (SQLException e) {
+            // expected
+        }
+        SystemClock.sleep(SETTLE_MILLIS);
+
+        assertEquals("Error: a failed batch sent notifications", 0, mObserver.mCount.get());
+        assertEquals("Error: a failed batch left weather behind", 0, count(WeatherEntry.CONTENT_URI));
+        assertEquals("Error: a failed batch left a location behind",
+                0, count(LocationEntry.CONTENT_URI));
+    }
+
+    private void commitLegacy(ContentResolver resolver, int location) {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting(location));
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, "City " + location);
+        locationValues.put(LocationEntry.COLUMN_COORD_LAT, 37.0 + location);
+        locationValues.put(LocationEntry.COLUMN_COORD_LONG, -122.0 - location);
+        long locationId = ContentUris.parseId(
+                resolver.insert(LocationEntry.CONTENT_URI, locationValues));
+
+        resolver.bulkInsert(WeatherEntry.CONTENT_URI, createWeatherValues(locationId));
+        resolver.delete(WeatherEntry.CONTENT_URI, WeatherEntry.COLUMN_DATE + " <= ?",
+                new String[]{Long.toString(START_DATE)});
+    }
+
+    private static String locationSetting(int location) {
+        return Integer.toString(94040 + location);
+    }
+
+    /*
+        A location id of -1 leaves the location key out, for the upsert URI.
+     */
+    private static ContentValues[] createWeatherValues(long locationId) {
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues weatherValues = new ContentValues();
+            if (locationId != -1) {
+                weatherValues.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            }
+            weatherValues.put(WeatherEntry.COLUMN_DATE, START_DATE + i * DAY_IN_MILLIS);
+            weatherValues.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            weatherValues.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i);
+            weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - i);
+            weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private static class CountingObserver extends ContentObserver {
+        final AtomicInteger mCount = new AtomicInteger();
+
+        CountingObserver(Handler handler) {
+            super(handler);
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            mCount.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+import java.util.Random;
+
+/*
+    Exercises the sync retry policy and circuit breaker against a local stand-in for the
+    OpenWeatherMap server that fails a configurable number of requests before answering.
+ */
+public class TestSyncBackoff extends AndroidTestCase {
+
+    private static final String TEST_BODY = "{\"cod\":\"200\"}";
+    private static final String TEST_ENDPOINT = "localhost/forecast";
+
+    private final ForecastTransport mTransport = new HttpUrlConnectionTransport();
+    private StandInServer mServer;
+    private SharedPreferences mPrefs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences("test_circuit_breaker", Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (null != mServer) {
+            mServer.stop();
+        }
+        super.tearDown();
+    }
+
+    private static SyncBackoffPolicy fastPolicy(int maxAttempts) {
+        // Keep the delays tiny so the test doesn't take forever.
+        return new SyncBackoffPolicy(maxAttempts, 10, 40, new Random(42));
+    }
+
+    public void testBackoffIsBoundedAndGrows() {
+        SyncBackoffPolicy policy = new SyncBackoffPolicy(5, 1000, 30000, new Random(7));
+        long previousCeiling = 0;
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long ceiling = policy.getCeilingMillis(attempt);
+            assertTrue("Error: backoff ceiling shrank at attempt " + attempt,
+                    ceiling >= previousCeiling);
+            assertTrue("Error: backoff ceiling exceeds cap", ceiling <= 30000);
+            long delay = policy.getDelayMillis(attempt);
+            assertTrue("Error: jittered delay outside of window", delay >= 0 && delay <= ceiling);
+            previousCeiling = ceiling;
+        }
+        assertFalse("Error: policy retried past its max attempts", policy.shouldRetry(4));
+    }
+
+    public void testRetriesIntermittentFailures() throws Exception {
+        // Fail twice with a 503, then answer.
+        mServer = new StandInServer(TEST_BODY, 2, 503);
+        String body = SunshineSyncAdapter.fetchWithRetry(mTransport, mServer.getUrl(), fastPolicy(3));
+        assertEquals(TEST_BODY, body.trim());
+        assertEquals("Error: unexpected number of requests", 3, mServer.getRequestCount());
+    }
+
+    public void testGivesUpAfterMaxAttempts() throws Exception {
+        mServer = new StandInServer(TEST_BODY, Integer.MAX_VALUE, 503);
+        try {
+            SunshineSyncAdapter.fetchWithRetry(mTransport, mServer.getUrl(), fastPolicy(3));
+            fail("Error: fetch should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals("Error: unexpected number of requests", 3, mServer.getRequestCount());
+    }
+
+    public void testClientErrorsAreNotRetried() throws Exception {
+        mServer = new StandInServer(TEST_BODY, Integer.MAX_VALUE, 404);
+        try {
+            SunshineSyncAdapter.fetchWithRetry(mTransport, mServer.getUrl(), fastPolicy(3));
+            fail("Error: fetch should have failed");
+        } catch (HttpStatusException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+        assertEquals("Error: a 404 should not be retried", 1, mServer.getRequestCount());
+    }
+
+    public void testCircuitBreakerOpensAndPersists() {
+        SyncCircuitBreaker breaker = new SyncCircuitBreaker(mPrefs, TEST_ENDPOINT, 2,
+                new SyncBackoffPolicy(Integer.MAX_VALUE, 60000, 600000, new Random(1)));
+        assertTrue(breaker.allowRequest());
+
+        assertEquals("Error: breaker opened before the threshold", 0, breaker.recordFailure());
+        assertTrue(breaker.allowRequest());
+        assertTrue("Error: breaker didn't open at the threshold", breaker.recordFailure() > 0);
+        assertFalse(breaker.allowRequest());
+
+        // A new instance, as we'd get after a process restart, sees the same state.
+        SyncCircuitBreaker restored = new SyncCircuitBreaker(mPrefs, TEST_ENDPOINT, 2,
+                new SyncBackoffPolicy(Integer.MAX_VALUE, 60000, 600000, new Random(1)));
+        assertFalse("Error: breaker state didn't persist", restored.allowRequest());
+        assertEquals(2, restored.getConsecutiveFailures());
+
+        restored.recordSuccess();
+        assertTrue(breaker.allowRequest());
+        assertEquals(0, breaker.getConsecutiveFailures());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/*
+    Compares the cost of a multi-location sync through HttpUrlConnectionTransport against the
+    way the sync adapter used to fetch (no compression, disconnect() after every request).
+    Results are written to logcat under the LOG_TAG.
+ */
+@LargeTest
+public class TestTransportBenchmark extends AndroidTestCase {
+    public static final String LOG_TAG = TestTransportBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 10;
+    private static final int DAYS = 14;
+
+    private StandInServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StandInServer(createForecastJson(DAYS), 0, 0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.stop();
+        super.tearDown();
+    }
+
+    public void testMultiLocationSync() throws Exception {
+        long legacyBytes = mServer.getBytesSent();
+        int legacyConnections = mServer.getConnectionCount();
+        long legacyMillis = runSync(new LegacyTransport());
+        legacyBytes = mServer.getBytesSent() - legacyBytes;
+        legacyConnections = mServer.getConnectionCount() - legacyConnections;
+
+        HttpUrlConnectionTransport transport = new HttpUrlConnectionTransport();
+        long pooledBytes = mServer.getBytesSent();
+        int pooledConnections = mServer.getConnectionCount();
+        long pooledMillis = runSync(transport);
+        pooledBytes = mServer.getBytesSent() - pooledBytes;
+        pooledConnections = mServer.getConnectionCount() - pooledConnections;
+
+        Log.i(LOG_TAG, String.format("legacy: %d locations, %d bytes, %d connections, %d ms",
+                LOCATIONS, legacyBytes, legacyConnections, legacyMillis));
+        Log.i(LOG_TAG, String.format("pooled+gzip: %d locations, %d bytes, %d connections, %d ms",
+                LOCATIONS, pooledBytes, pooledConnections, pooledMillis));
+        Log.i(LOG_TAG, "transport stats: " + transport.getStats());
+
+        assertTrue("Error: gzip didn't reduce bytes on the wire", pooledBytes < legacyBytes);
+        assertTrue("Error: connections weren't reused", pooledConnections < LOCATIONS);
+        assertEquals(LOCATIONS, transport.getStats().getRequests());
+    }
+
+    private long runSync(ForecastTransport transport) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < LOCATIONS; i++) {
+            String body = transport.get(mServer.getUrl("/forecast?q=" + (94040 + i)));
+            assertNotNull(body);
+            assertTrue("Error: body wasn't decoded", body.startsWith("{"));
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+
+    /*
+        Builds a response shaped like OpenWeatherMap's daily forecast.
+     */
+    static String createForecastJson(int days) {
+        StringBuilder json = new StringBuilder()
+                .append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(days)
+                .append(",\"list\":[");
+        for (int i = 0; i < days; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"dt\":").append(1419033600L + i * 86400L)
+                    .append(",\"temp\":{\"day\":12.5,\"min\":").append(5 + i % 4)
+                    .append(".2,\"max\":").append(15 + i % 5)
+                    .append(".8,\"night\":6.1,\"eve\":11.3,\"morn\":5.4},")
+                    .append("\"pressure\":1012.64,\"humidity\":").append(60 + i)
+                    .append(",\"weather\":[{\"id\":800,\"main\":\"Clear\",")
+                    .append("\"description\":\"sky is clear\",\"icon\":\"01d\"}],")
+                    .append("\"speed\":1.5").append(i % 10)
+                    .append(",\"deg\":").append(i * 20 % 360)
+                    .append(",\"clouds\":0}");
+        }
+        return json.append("]}").toString();
+    }
+
+    /*
+        The fetch as the sync adapter used to do it.
+     */
+    private static class LegacyTransport implements ForecastTransport {
+        @Override
+        public String get(URL url) throws IOException {
+            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+            // Without this, the platform would transparently ask for gzip on our behalf.
+            urlConnection.setRequestProperty("Accept-Encoding", "identity");
+            try {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(urlConnection.getInputStream()));
+                StringBuffer buffer = new StringBuffer();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    buffer.append(line + "\n");
+                }
+                reader.close();
+                return buffer.toString();
+            } finally {
+                urlConnection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmark results in a form a script can compare between builds: one JSON object per result,
+ * logged a line each under the suite's tag and written to benchmarks/&lt;suite&gt;.&lt;test&gt;.json
+ * in the app's external files directory, a JSON object per line.  Pull them with
+ *
+ *     adb pull /sdcard/Android/data/com.example.android.sunshine.app/files/benchmarks
+ *
+ * Before KitKat they go in the internal files directory instead, for run-as to read.  Latencies
+ * are in microseconds.
+ */
+public class BenchmarkReport {
+    private final String mSuite;
+    private final String mTest;
+    private final List<JSONObject> mResults = new ArrayList<JSONObject>();
+
+    public BenchmarkReport(String suite, String test) {
+        mSuite = suite;
+        mTest = test;
+    }
+
+    /**
+     * Latency samples, in nanoseconds, as System.nanoTime gives them.
+     */
+    public static class Samples {
+        private long[] mNanos = new long[64];
+        private int mCount;
+
+        public void add(long nanos) {
+            if (mCount == mNanos.length) {
+                mNanos = Arrays.copyOf(mNanos, mCount * 2);
+            }
+            mNanos[mCount++] = nanos;
+        }
+
+        public void addAll(Samples samples) {
+            for (int i = 0; i < samples.mCount; i++) {
+                add(samples.mNanos[i]);
+            }
+        }
+
+        public int size() {
+            return mCount;
+        }
+
+        /**
+         * The time at percentile p (0 to 100) of the samples, in microseconds.
+         */
+        public double getPercentile(double p) {
+            long[] sorted = Arrays.copyOf(mNanos, mCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p / 100 * mCount) - 1;
+            return sorted[Math.max(0, Math.min(mCount - 1, index))] / 1000.0;
+        }
+
+        public double getMean() {
+            long total = 0;
+            for (int i = 0; i < mCount; i++) {
+                total += mNanos[i];
+            }
+            return total / 1000.0 / mCount;
+        }
+    }
+
+    /**
+     * A latency result.  rows is the size of the data it ran against, or 0 if that doesn't
+     * apply.
+     */
+    public void addLatency(String name, int rows, Samples samples) {
+        JSONObject result = newResult(name, rows, "us");
+        try {
+            result.put("count", samples.size());
+            result.put("min", samples.getPercentile(0));
+            result.put("p50", samples.getPercentile(50));
+            result.put("p90", samples.getPercentile(90));
+            result.put("p99", samples.getPercentile(99));
+            result.put("max", samples.getPercentile(100));
+            result.put("mean", samples.getMean());
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        mResults.add(result);
+    }
+
+    /**
+     * A throughput result, in rows a second.
+     */
+    public void addThroughput(String name, int rows, long nanos) {
+        JSONObject result = newResult(name, rows, "rows/s");
+        try {
+            result.put("value", rows * 1e9 / nanos);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        mResults.add(result);
+    }
+
+    /**
+     * A count of events, such as frames dropped.
+     */
+    public void addCount(String name, int rows, String unit, long count) {
+        JSONObject result = newResult(name, rows, unit);
+        try {
+            result.put("value", count);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        mResults.add(result);
+    }
+
+    private JSONObject newResult(String name, int rows, String unit) {
+        JSONObject result = new JSONObject();
+        try {
+            result.put("suite", mSuite);
+            result.put("test", mTest);
+            result.put("name", name);
+            result.put("rows", rows);
+            result.put("unit", unit);
+            result.put("device", Build.MODEL);
+            result.put("sdk", Build.VERSION.SDK_INT);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Logs the results and writes them out, replacing the last run's.
+     */
+    public void write(Context context) throws IOException {
+        for (JSONObject result : mResults) {
+            Log.i(mSuite, result.toString());
+        }
+        // Before KitKat the external files directory takes a permission the app doesn't have.
+        File dir = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT ?
+                context.getExternalFilesDir(null) : null;
+        if (dir == null) {
+            dir = context.getFilesDir();
+        }
+        dir = new File(dir, "benchmarks");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Couldn't create " + dir);
+        }
+        Writer out = new OutputStreamWriter(
+                new FileOutputStream(new File(dir, mSuite + "." + mTest + ".json")), "UTF-8");
+        try {
+            for (JSONObject result : mResults) {
+                out.write(result.toString());
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
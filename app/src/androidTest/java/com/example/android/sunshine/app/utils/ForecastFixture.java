@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Stands in for a synced forecast in tests that drive the UI: makes a fixed location the
+ * preferred one and writes a number of days of weather for it from today on, marked as just
+ * synced so nothing syncs over it.  Call {@link #seed} in setUp and {@link #restore} in
+ * tearDown.
+ */
+public class ForecastFixture {
+    public static final String LOCATION = "99705";
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int[] WEATHER_IDS = {800, 801, 500, 600};
+
+    private final Context mContext;
+    private final String mLocationKey;
+    private String mSavedLocation;
+
+    public ForecastFixture(Context context) {
+        mContext = context;
+        mLocationKey = context.getString(R.string.pref_location_key);
+    }
+
+    public void seed(int days) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mSavedLocation = prefs.getString(mLocationKey, null);
+        prefs.edit().putString(mLocationKey, LOCATION).commit();
+        deleteAll();
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        location.put(LocationEntry.COLUMN_UPDATED, System.currentTimeMillis());
+        long locationRowId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] weather = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            values.put(WeatherEntry.COLUMN_DATE, today + i * DAY_IN_MILLIS);
+            values.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            values.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            values.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i % 10);
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - i % 10);
+            values.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            values.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            values.put(WeatherEntry.COLUMN_WEATHER_ID, WEATHER_IDS[i % WEATHER_IDS.length]);
+            weather[i] = values;
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weather);
+    }
+
+    public void restore() {
+        deleteAll();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        if (mSavedLocation == null) {
+            prefs.edit().remove(mLocationKey).commit();
+        } else {
+            prefs.edit().putString(mLocationKey, mSavedLocation).commit();
+        }
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import com.example.android.sunshine.app.IoWatchdog;
+
+import junit.framework.Assert;
+
+import java.util.List;
+
+/**
+ * Fails a test whose main thread blocked for longer than the IoWatchdog's budgets allow.  Call
+ * {@link #start} before the work and {@link #assertWithinBudget} after it.
+ */
+public class IoBudget {
+    private IoBudget() {
+    }
+
+    public static void start() {
+        IoWatchdog.resetBudgets();
+        IoWatchdog.reset();
+    }
+
+    public static void assertWithinBudget() {
+        // Written to logcat either way, so a passing run shows how close it came.
+        IoWatchdog.dump();
+        List<IoWatchdog.Site> over = IoWatchdog.getSitesOverBudget();
+        if (!over.isEmpty()) {
+            StringBuilder message = new StringBuilder(
+                    "Error: the main thread blocked for longer than its budget allows:\n");
+            for (IoWatchdog.Site site : over) {
+                message.append(site).append('\n').append(site.stack);
+            }
+            Assert.fail(message.toString());
+        }
+    }
+}
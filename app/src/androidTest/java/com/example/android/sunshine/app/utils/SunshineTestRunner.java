@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import android.os.Bundle;
+import android.test.InstrumentationTestRunner;
+
+/**
+ * The instrumentation tests run under, so that tests which don't hold the Instrumentation can
+ * still read the arguments given with am instrument -e, such as how big the benchmarks go:
+ *
+ *     adb shell am instrument -w -e size large -e benchmarkRows 100000 \
+ *         com.example.android.sunshine.app.test/com.example.android.sunshine.app.utils.SunshineTestRunner
+ */
+public class SunshineTestRunner extends InstrumentationTestRunner {
+    private static volatile Bundle sArguments = new Bundle();
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        if (arguments != null) {
+            sArguments = arguments;
+        }
+        super.onCreate(arguments);
+    }
+
+    /**
+     * The integer argument with the given name, or defaultValue if it wasn't given or isn't a
+     * number.
+     */
+    public static int getIntArgument(String name, int defaultValue) {
+        String value = sArguments.getString(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
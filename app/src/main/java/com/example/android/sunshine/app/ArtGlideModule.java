@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.module.GlideModule;
+
+/**
+ * Sizes Glide's caches for the app, which loads nothing but weather art (see {@link ArtLoader}).
+ * A few dozen small images at a couple of sizes each don't need Glide's defaults, which are
+ * meant for photo galleries; the list, detail view, widgets and notification all share this one
+ * budget.  Registered in the manifest.
+ *
+ * Both caches are accounted for by the {@link MemoryTracker}, which trims them when memory is
+ * short.  Glide 3 leaves trimming to the app, and only at background levels; while the app is
+ * running low they give up half the art and all the pooled bitmaps.
+ */
+public class ArtGlideModule implements GlideModule {
+    // The memory cache gets 1/16 of the app's heap, and the pool of bitmaps to reuse half that.
+    private static final int MEMORY_CACHE_DIVISOR = 16;
+    private static final int BITMAP_POOL_DIVISOR = 32;
+
+    static int getMemoryCacheBytes(Context context) {
+        return getMemoryClassBytes(context) / MEMORY_CACHE_DIVISOR;
+    }
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        final int memoryCacheBytes = getMemoryCacheBytes(context);
+        final LruResourceCache memoryCache = new LruResourceCache(memoryCacheBytes) {
+            @Override
+            public void trimMemory(int level) {
+                if (isRunningLow(level)) {
+                    trimToSize(getCurrentSize() / 2);
+                } else {
+                    super.trimMemory(level);
+                }
+            }
+        };
+        final CountingBitmapPool bitmapPool =
+                new CountingBitmapPool(getMemoryClassBytes(context) / BITMAP_POOL_DIVISOR);
+        builder.setMemoryCache(memoryCache);
+        builder.setBitmapPool(bitmapPool);
+
+        MemoryTracker tracker = MemoryTracker.getInstance(context);
+        tracker.register(MemoryTracker.ART_CACHE, memoryCacheBytes, new MemoryTracker.Cache() {
+            @Override
+            public long getSizeBytes() {
+                return memoryCache.getCurrentSize();
+            }
+
+            @Override
+            public void trimMemory(int level) {
+                memoryCache.trimMemory(level);
+            }
+        });
+        tracker.register(MemoryTracker.ART_POOL, bitmapPool.getMaxSize(),
+                new MemoryTracker.Cache() {
+                    @Override
+                    public long getSizeBytes() {
+                        return bitmapPool.getSizeBytes();
+                    }
+
+                    @Override
+                    public void trimMemory(int level) {
+                        bitmapPool.trimMemory(level);
+                    }
+                });
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide) {
+        // The default loaders do.
+    }
+
+    private static int getMemoryClassBytes(Context context) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        return activityManager.getMemoryClass() * 1024 * 1024;
+    }
+
+    private static boolean isRunningLow(int level) {
+        return level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW &&
+                level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+    }
+
+    /*
+        A pool that keeps count of what it holds, which LruBitmapPool doesn't say: the bytes put
+        in less those taken out, never more than the pool's size.  The bitmaps it evicts to make
+        room go unseen, so the count errs high.
+     */
+    private static class CountingBitmapPool extends LruBitmapPool {
+        private long mBytes;
+
+        CountingBitmapPool(int maxSize) {
+            super(maxSize);
+        }
+
+        synchronized long getSizeBytes() {
+            return mBytes;
+        }
+
+        @Override
+        public synchronized boolean put(Bitmap bitmap) {
+            // Counted first, as a bitmap the pool turns down may be recycled straight after.
+            long bytes = bitmap != null ? MemoryTracker.getByteCount(bitmap) : 0;
+            boolean pooled = super.put(bitmap);
+            if (pooled) {
+                mBytes = Math.min(getMaxSize(), mBytes + bytes);
+            }
+            return pooled;
+        }
+
+        @Override
+        public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+            return taken(super.get(width, height, config));
+        }
+
+        @Override
+        public synchronized Bitmap getDirty(int width, int height, Bitmap.Config config) {
+            return taken(super.getDirty(width, height, config));
+        }
+
+        @Override
+        public synchronized void clearMemory() {
+            super.clearMemory();
+            mBytes = 0;
+        }
+
+        @Override
+        public synchronized void trimMemory(int level) {
+            // Pooled bitmaps only save allocations, so they all go.
+            if (isRunningLow(level)) {
+                clearMemory();
+                return;
+            }
+            super.trimMemory(level);
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+                mBytes = Math.min(mBytes, getMaxSize() / 2);
+            }
+        }
+
+        private Bitmap taken(Bitmap bitmap) {
+            if (bitmap != null) {
+                mBytes = Math.max(0, mBytes - MemoryTracker.getByteCount(bitmap));
+            }
+            return bitmap;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.bitmap.GlideBitmapDrawable;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.load.resource.gif.GifDrawable;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Loads weather art from the art pack for everything that shows it: the list, the detail view,
+ * the widgets and the notification.  There are only a handful of distinct images, so the point
+ * is to decode each once per size it's shown at and keep it in Glide's memory cache, which
+ * {@link ArtGlideModule} sizes for all of them together.
+ *
+ * Every load asks for an exact size (a list icon or a today icon) and for a GlideDrawable, even
+ * where a bitmap is wanted, so the same image shown in two places hits the same cache entry,
+ * and nothing is decoded at full size.  After each sync
+ * the forecast's distinct images are prefetched at the sizes the list shows them at.  Loads are
+ * counted per client, with how many came from memory.
+ */
+public class ArtLoader {
+    public static final String LOG_TAG = ArtLoader.class.getSimpleName();
+
+    public static final int CLIENT_LIST = 0;
+    public static final int CLIENT_DETAIL = 1;
+    public static final int CLIENT_WIDGET = 2;
+    public static final int CLIENT_NOTIFICATION = 3;
+    public static final int CLIENT_PREFETCH = 4;
+    private static final String[] CLIENT_NAMES =
+            {"list", "detail", "widget", "notification", "prefetch"};
+
+    private static ArtLoader sInstance;
+
+    private final Context mContext;
+    private final Handler mMainHandler;
+    private final int mListIconSize;
+    private final int mTodayIconSize;
+
+    private final AtomicIntegerArray mLoads = new AtomicIntegerArray(CLIENT_NAMES.length);
+    private final AtomicIntegerArray mMemoryHits = new AtomicIntegerArray(CLIENT_NAMES.length);
+    private final AtomicIntegerArray mFailures = new AtomicIntegerArray(CLIENT_NAMES.length);
+
+    private ArtLoader(Context context) {
+        mContext = context;
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mListIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        mTodayIconSize = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+    }
+
+    public static synchronized ArtLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ArtLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Loads a condition's art into a view, decoded at the list icon size or, for today's row and
+     * the detail view, the today icon size.
+     */
+    public void loadInto(RequestManager glide, ImageView view, int weatherId, boolean today,
+                         int errorResId, int client) {
+        int size = today ? mTodayIconSize : mListIconSize;
+        glide.load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                .listener(new CountingListener<GlideDrawable>(client))
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .override(size, size)
+                .fitCenter()
+                .error(errorResId)
+                .crossFade()
+                .into(view);
+    }
+
+    /**
+     * A condition's art as a bitmap of at most the given size, for RemoteViews and
+     * notifications, or null if Glide gave back something else.  Blocks, so call it off the main
+     * thread.
+     */
+    public Bitmap getBitmap(int weatherId, int width, int height, int errorResId, int client)
+            throws InterruptedException, ExecutionException {
+        // Loaded as the list loads it rather than asBitmap(), which Glide would decode and
+        // cache a second time under a key of its own.
+        GlideDrawable drawable = Glide.with(mContext)
+                .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                .listener(new CountingListener<GlideDrawable>(client))
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .fitCenter()
+                .error(errorResId)
+                .into(width, height)
+                .get();
+        if (drawable instanceof GlideBitmapDrawable) {
+            return ((GlideBitmapDrawable) drawable).getBitmap();
+        } else if (drawable instanceof GifDrawable) {
+            return ((GifDrawable) drawable).getFirstFrame();
+        }
+        return null;
+    }
+
+    /**
+     * A condition's art at the list icon size, the size the detail widget shows it at.
+     */
+    public Bitmap getListIconBitmap(int weatherId, int errorResId, int client)
+            throws InterruptedException, ExecutionException {
+        return getBitmap(weatherId, mListIconSize, mListIconSize, errorResId, client);
+    }
+
+    /**
+     * Decodes the forecast's distinct images into the memory cache at the sizes the list will
+     * ask for: each at the list icon size, and today's at the today icon size too.
+     */
+    public void prefetch(ForecastSnapshot forecast) {
+        if (forecast.isEmpty() || Utility.usingLocalGraphics(mContext)) {
+            return;
+        }
+        final Set<String> urls = new LinkedHashSet<String>();
+        for (int i = 0; i < forecast.size(); i++) {
+            String url = Utility.getArtUrlForWeatherCondition(mContext, forecast.getWeatherId(i));
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        final String todayUrl =
+                Utility.getArtUrlForWeatherCondition(mContext, forecast.getWeatherId(0));
+        // Glide starts loads into targets on the main thread only.
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (String url : urls) {
+                    prefetch(url, mListIconSize);
+                }
+                if (todayUrl != null) {
+                    prefetch(todayUrl, mTodayIconSize);
+                }
+            }
+        });
+    }
+
+    /**
+     * Decodes one condition's art into the memory cache at the size {@link #loadInto} will ask
+     * for.  Call it on the main thread.
+     */
+    public void prefetch(int weatherId, boolean today) {
+        String url = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+        if (url != null && !Utility.usingLocalGraphics(mContext)) {
+            prefetch(url, today ? mTodayIconSize : mListIconSize);
+        }
+    }
+
+    private void prefetch(String url, int size) {
+        // The same request a view of that size makes, so the view finds it in memory.
+        Glide.with(mContext)
+                .load(url)
+                .listener(new CountingListener<GlideDrawable>(CLIENT_PREFETCH))
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .fitCenter()
+                .into(new SimpleTarget<GlideDrawable>(size, size) {
+                    @Override
+                    public void onResourceReady(GlideDrawable resource,
+                                                GlideAnimation<? super GlideDrawable> animation) {
+                        release(this);
+                    }
+
+                    @Override
+                    public void onLoadFailed(Exception e, Drawable errorDrawable) {
+                        release(this);
+                    }
+                });
+    }
+
+    /*
+        Clearing the prefetch's target hands its image to the memory cache, where it can be
+        evicted; until then it counts as in use.  Loads can't be cleared from their own callbacks.
+     */
+    private void release(final Target<?> target) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Glide.clear(target);
+            }
+        });
+    }
+
+    public int getLoadCount(int client) {
+        return mLoads.get(client);
+    }
+
+    public int getMemoryHitCount(int client) {
+        return mMemoryHits.get(client);
+    }
+
+    public int getFailureCount(int client) {
+        return mFailures.get(client);
+    }
+
+    /**
+     * The share of a client's loads that came from the memory cache, from 0 to 1.
+     */
+    public float getHitRate(int client) {
+        int loads = mLoads.get(client);
+        return loads == 0 ? 0f : (float) mMemoryHits.get(client) / loads;
+    }
+
+    /**
+     * One line per client: loads, memory hits and failures.
+     */
+    public String dumpStats() {
+        StringBuilder stats = new StringBuilder();
+        for (int client = 0; client < CLIENT_NAMES.length; client++) {
+            stats.append(String.format(Locale.US, "%s: %d loads, %d from memory (%.0f%%), %d failed\n",
+                    CLIENT_NAMES[client], mLoads.get(client), mMemoryHits.get(client),
+                    getHitRate(client) * 100, mFailures.get(client)));
+        }
+        return stats.toString();
+    }
+
+    private class CountingListener<R> implements RequestListener<String, R> {
+        private final int mClient;
+
+        CountingListener(int client) {
+            mClient = client;
+        }
+
+        @Override
+        public boolean onException(Exception e, String model, Target<R> target,
+                                   boolean isFirstResource) {
+            mLoads.incrementAndGet(mClient);
+            mFailures.incrementAndGet(mClient);
+            // Let Glide show the error drawable.
+            return false;
+        }
+
+        @Override
+        public boolean onResourceReady(R resource, String model, Target<R> target,
+                                       boolean isFromMemoryCache, boolean isFirstResource) {
+            mLoads.incrementAndGet(mClient);
+            if (isFromMemoryCache) {
+                mMemoryHits.incrementAndGet(mClient);
+            }
+            return false;
+        }
+    }
+}
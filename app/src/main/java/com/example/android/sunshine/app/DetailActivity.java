@@ -30,6 +30,7 @@ public class DetailActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        IoWatchdog.install();
         setContentView(R.layout.activity_detail);
 
         if (savedInstanceState == null) {
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+/**
+ * One day's weather formatted the way {@link DetailFragment} shows it.  Built from the detail
+ * view's own cursor, or ahead of time from the list's by {@link DetailPreloader}.
+ */
+class DetailModel {
+    final long date;
+    final int weatherId;
+    final double high;
+    final double low;
+    final String dateText;
+    final String description;
+    final String highText;
+    final String lowText;
+    final String humidityText;
+    final String windText;
+    final String pressureText;
+
+    DetailModel(Context context, long date, int weatherId, double high, double low,
+                float humidity, float pressure, float windSpeed, float degrees) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.high = high;
+        this.low = low;
+        dateText = Utility.getFullFriendlyDayString(context, date);
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        highText = Utility.formatTemperature(context, high);
+        lowText = Utility.formatTemperature(context, low);
+        humidityText = context.getString(R.string.format_humidity, humidity);
+        windText = Utility.getFormattedWind(context, windSpeed, degrees);
+        pressureText = context.getString(R.string.format_pressure, pressure);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.util.LongSparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Detail models for the row selected in the forecast list and the rows next to it, read from
+ * the list's own cursor.  In two-pane layouts a click replaces the detail fragment, which would
+ * otherwise show nothing until its loader has queried the provider; with a model here it binds
+ * straight away, and its loader only keeps the pane up to date.
+ *
+ * Models are for the list's cursor they were read from: a new cursor, or new units, and they're
+ * dropped.  Only used on the main thread.
+ */
+class DetailPreloader {
+    // Rows either side of the selected one to have ready for the next click.
+    static final int NEIGHBOURS = 1;
+
+    private final Context mContext;
+    private final LongSparseArray<DetailModel> mModels = new LongSparseArray<DetailModel>();
+    private Cursor mSource;
+    private String mLocationSetting;
+
+    DetailPreloader(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Reads models for the row at position and its neighbours from a cursor over
+     * {@link ForecastFragment#FORECAST_COLUMNS}, keeping any already read from it, and starts
+     * their art loading at the size the detail view shows it at.
+     */
+    void preload(Cursor list, int position) {
+        if (list == null || list.isClosed() || position < 0 || position >= list.getCount()) {
+            return;
+        }
+        if (list != mSource) {
+            mModels.clear();
+            mSource = list;
+            mLocationSetting = null;
+        }
+        int first = Math.max(0, position - NEIGHBOURS);
+        int last = Math.min(list.getCount() - 1, position + NEIGHBOURS);
+        for (int i = first; i <= last && list.moveToPosition(i); i++) {
+            long date = list.getLong(ForecastFragment.COL_WEATHER_DATE);
+            if (mModels.get(date) != null) {
+                continue;
+            }
+            if (mLocationSetting == null) {
+                mLocationSetting = list.getString(ForecastFragment.COL_LOCATION_SETTING);
+            }
+            DetailModel model = new DetailModel(mContext, date,
+                    list.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                    list.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                    list.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP),
+                    list.getFloat(ForecastFragment.COL_WEATHER_HUMIDITY),
+                    list.getFloat(ForecastFragment.COL_WEATHER_PRESSURE),
+                    list.getFloat(ForecastFragment.COL_WEATHER_WIND_SPEED),
+                    list.getFloat(ForecastFragment.COL_WEATHER_DEGREES));
+            mModels.put(date, model);
+            ArtLoader.getInstance(mContext).prefetch(model.weatherId, true);
+        }
+    }
+
+    /**
+     * The model for a {@link WeatherContract.WeatherEntry#buildWeatherLocationWithDate} URI, or
+     * null if it hasn't been read.
+     */
+    DetailModel get(Uri uri) {
+        if (uri == null || mLocationSetting == null || !mLocationSetting.equals(
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(uri))) {
+            return null;
+        }
+        return mModels.get(WeatherContract.WeatherEntry.getDateFromUri(uri));
+    }
+
+    /**
+     * Drops every model, as when units change and they're formatted wrongly.
+     */
+    void clear() {
+        mModels.clear();
+        mSource = null;
+        mLocationSetting = null;
+    }
+}
@@ -41,14 +41,20 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
 
+    // Ask for the next page once a row this close to the end of the loaded rows is bound.
+    private static final int PAGE_PREFETCH_DISTANCE = 10;
+
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    // The list as it was last shown, until the cursor arrives.
+    private ForecastListCache.Rows mCachedRows;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    private OnPageNeededListener mPageListener;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,9 +79,15 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            long date;
+            if (null != mCursor) {
+                mCursor.moveToPosition(adapterPosition);
+                int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+                date = mCursor.getLong(dateColumnIndex);
+            } else {
+                date = mCachedRows.getDate(adapterPosition);
+            }
+            mClickHandler.onClick(date, this);
             mICM.onClick(this);
         }
     }
@@ -84,10 +96,19 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         void onClick(Long date, ForecastAdapterViewHolder vh);
     }
 
+    /**
+     * Told when the list gets close to the end of the rows loaded so far.
+     */
+    public static interface OnPageNeededListener {
+        void onPageNeeded();
+    }
+
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Rows are identified by date, so the selection stays with its day when the list changes.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,30 +145,21 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
-
-        switch (getItemViewType(position)) {
-            case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
-                break;
-            default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
-        }
-
-        if ( Utility.usingLocalGraphics(mContext) ) {
-            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+        long start = FrameStats.begin();
+        if (null == mCursor) {
+            bindCachedRow(forecastAdapterViewHolder, position);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
-                    .crossFade()
-                    .into(forecastAdapterViewHolder.mIconView);
+            bindCursorRow(forecastAdapterViewHolder, position);
         }
+        FrameStats.end(getItemViewType(position) == VIEW_TYPE_TODAY
+                ? FrameStats.BIND_TODAY : FrameStats.BIND_FUTURE_DAY, start);
+    }
+
+    private void bindCursorRow(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        mCursor.moveToPosition(position);
+        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        boolean useLongToday = getItemViewType(position) == VIEW_TYPE_TODAY;
+        bindIcon(forecastAdapterViewHolder, weatherId, useLongToday);
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
@@ -183,6 +195,54 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+
+        if (null != mPageListener && position >= getItemCount() - PAGE_PREFETCH_DISTANCE) {
+            mPageListener.onPageNeeded();
+        }
+    }
+
+    /*
+        Binds a row of the list as it was last shown, formatted already.
+     */
+    private void bindCachedRow(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        int weatherId = mCachedRows.getWeatherId(position);
+        bindIcon(forecastAdapterViewHolder, weatherId, getItemViewType(position) == VIEW_TYPE_TODAY);
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+
+        forecastAdapterViewHolder.mDateView.setText(mCachedRows.getDay(position));
+
+        String description = mCachedRows.getDescription(position);
+        forecastAdapterViewHolder.mDescriptionView.setText(description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+
+        String highString = mCachedRows.getHigh(position);
+        forecastAdapterViewHolder.mHighTempView.setText(highString);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+
+        String lowString = mCachedRows.getLow(position);
+        forecastAdapterViewHolder.mLowTempView.setText(lowString);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+    }
+
+    private void bindIcon(ForecastAdapterViewHolder forecastAdapterViewHolder, int weatherId,
+                          boolean today) {
+        int defaultImage = today
+                ? Utility.getArtResourceForWeatherCondition(weatherId)
+                : Utility.getIconResourceForWeatherCondition(weatherId);
+
+        if ( Utility.usingLocalGraphics(mContext) ) {
+            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+        } else {
+            ArtLoader.getInstance(mContext).loadInto(Glide.with(mContext),
+                    forecastAdapterViewHolder.mIconView, weatherId, today, defaultImage,
+                    ArtLoader.CLIENT_LIST);
+        }
+    }
+
+    public void setOnPageNeededListener(OnPageNeededListener listener) {
+        mPageListener = listener;
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -206,14 +266,37 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        if (null == mCursor) {
+            return mCachedRows.getDate(position);
+        }
+        mCursor.moveToPosition(position);
+        return mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
+        if ( null == mCursor ) return null == mCachedRows ? 0 : mCachedRows.size();
         return mCursor.getCount();
     }
 
+    /**
+     * Shows rows from {@link ForecastListCache} until the first cursor arrives.
+     */
+    public void showCachedRows(ForecastListCache.Rows rows) {
+        if (null != mCursor) {
+            return;
+        }
+        mCachedRows = rows;
+        notifyDataSetChanged();
+        mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
     public void swapCursor(Cursor newCursor) {
         mCursor = newCursor;
+        // Whatever the cursor holds, it's newer than the cached rows.
+        mCachedRows = null;
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
@@ -20,15 +20,16 @@ import android.app.Activity;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -59,13 +60,30 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    // The cursor last stored to the ForecastListCache, so a redelivery isn't stored again.
+    private Cursor mCachedCursor;
+    // Set in two-pane layouts, where the detail pane shows the selected row.
+    private DetailPreloader mDetailPreloader;
+
+    // Redraws the list when units or the art pack change; the rows themselves haven't.
+    private final ContentObserver mPresentationObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange) {
+            if (null != mForecastAdapter) {
+                mForecastAdapter.notifyDataSetChanged();
+            }
+            if (null != mDetailPreloader) {
+                mDetailPreloader.clear();
+            }
+        }
+    };
 
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
+    static final String[] FORECAST_COLUMNS = {
             // In this case the id needs to be fully qualified with a table name, since
             // the content provider joins the location & weather tables in the background
             // (both have an _id column)
@@ -80,7 +98,13 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            // The rest aren't shown in the list, but let a selected row's detail be shown
+            // without querying for it again.
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
     };
 
     // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
@@ -94,6 +118,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     static final int COL_WEATHER_CONDITION_ID = 6;
     static final int COL_COORD_LAT = 7;
     static final int COL_COORD_LONG = 8;
+    static final int COL_WEATHER_HUMIDITY = 9;
+    static final int COL_WEATHER_PRESSURE = 10;
+    static final int COL_WEATHER_WIND_SPEED = 11;
+    static final int COL_WEATHER_DEGREES = 12;
 
     /**
      * A callback interface that all activities containing this fragment must
@@ -188,6 +216,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         mForecastAdapter = new ForecastAdapter(getActivity(), new ForecastAdapter.ForecastAdapterOnClickHandler() {
             @Override
             public void onClick(Long date, ForecastAdapter.ForecastAdapterViewHolder vh) {
+                FrameStats.startInterval(FrameStats.DETAIL_OPEN);
+                if (null != mDetailPreloader) {
+                    mDetailPreloader.preload(mForecastAdapter.getCursor(), vh.getAdapterPosition());
+                }
                 String locationSetting = Utility.getPreferredLocation(getActivity());
                 ((Callback) getActivity())
                         .onItemSelected(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
@@ -197,8 +229,21 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             }
         }, emptyView, mChoiceMode);
 
+        // Read further pages of the forecast as the list nears the end of what's loaded.
+        mForecastAdapter.setOnPageNeededListener(new ForecastAdapter.OnPageNeededListener() {
+            @Override
+            public void onPageNeeded() {
+                Loader<Cursor> loader = getLoaderManager().getLoader(FORECAST_LOADER);
+                if (loader instanceof ForecastPageLoader) {
+                    ((ForecastPageLoader) loader).loadNextPage();
+                }
+            }
+        });
+
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
+        getActivity().getContentResolver().registerContentObserver(
+                WeatherContract.PRESENTATION_URI, false, mPresentationObserver);
 
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
@@ -237,6 +282,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             }
         }
 
+        FrameStats.trackScrolling(mRecyclerView, FrameStats.FRAMES_FORECAST_LIST);
+
         // If there's instance state, mine it for useful information.
         // The end-goal here is that the user never knows that turning their device sideways
         // does crazy lifecycle related things.  It should feel like some stuff stretched out,
@@ -259,6 +306,15 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if ( mHoldForTransition ) {
             getActivity().supportPostponeEnterTransition();
         }
+        // Until the loader has read the database, show the list as it was last shown.  This is
+        // after the activity has set the layout the rows were formatted for.
+        if (savedInstanceState == null) {
+            ForecastListCache.Rows rows = ForecastListCache.read(getActivity(),
+                    Utility.getPreferredLocation(getActivity()), mUseTodayLayout);
+            if (rows != null) {
+                mForecastAdapter.showCachedRows(rows);
+            }
+        }
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
@@ -307,27 +363,30 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // fragment only uses one loader, so we don't care about checking the id.
 
         // To only show current and future dates, filter the query to return weather only for
-        // dates after or including today.
-
-        // Sort order:  Ascending, by date.
-        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
-
+        // dates after or including today.  Pages come back in ascending date order, and only
+        // as many as have been scrolled to are read.
         String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
-                weatherForLocationUri,
+        return new ForecastPageLoader(getActivity(),
+                locationSetting,
+                System.currentTimeMillis(),
                 FORECAST_COLUMNS,
-                null,
-                null,
-                sortOrder);
+                ForecastPageLoader.DEFAULT_PAGE_SIZE);
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         mForecastAdapter.swapCursor(data);
         updateEmptyView();
+        if (data instanceof ForecastPageLoader.PagedCursor &&
+                ((ForecastPageLoader.PagedCursor) data).isAppended()) {
+            // More rows below the ones showing: leave the scroll position and selection alone.
+            return;
+        }
+        if (data != mCachedCursor) {
+            mCachedCursor = data;
+            ForecastListCache.save(getActivity(), data, mUseTodayLayout);
+        }
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
         } else {
@@ -374,6 +433,12 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
 
 
+    @Override
+    public void onDestroyView() {
+        getActivity().getContentResolver().unregisterContentObserver(mPresentationObserver);
+        super.onDestroyView();
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
@@ -384,6 +449,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        mCachedCursor = null;
         mForecastAdapter.swapCursor(null);
     }
 
@@ -394,6 +460,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         }
     }
 
+    /**
+     * Has the detail models for selected rows and their neighbours read ahead of the detail
+     * pane asking for them.
+     */
+    void setDetailPreloader(DetailPreloader detailPreloader) {
+        mDetailPreloader = detailPreloader;
+    }
+
     public void setInitialSelectedDate(long initialSelectedDate) {
         mInitialSelectedDate = initialSelectedDate;
     }
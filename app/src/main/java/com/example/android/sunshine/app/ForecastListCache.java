@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * The top of the forecast list as it was last shown, kept in a small file so the next launch
+ * can draw it before the database has even been opened.  Rows are stored formatted, the way the
+ * list shows them, along with each row's date and weather id for the icon and clicks.
+ *
+ * What's stored is only good for the location, the day, the units and the layout it was
+ * formatted for; {@link #read} turns down anything else, and the list waits for its loader as
+ * it always has.
+ */
+public class ForecastListCache {
+    public static final String LOG_TAG = ForecastListCache.class.getSimpleName();
+
+    static final String FILE_NAME = "forecast_list";
+    private static final int VERSION = 1;
+    // About a screenful and a half: enough to fill the first frame.
+    static final int MAX_ROWS = 16;
+
+    // Writes are put in order on one thread, so the last save wins.
+    private static final Executor sWriter = Executors.newSingleThreadExecutor();
+
+    /**
+     * Rows as the list showed them.
+     */
+    public static class Rows {
+        private final long[] mDates;
+        private final int[] mWeatherIds;
+        private final String[] mDays;
+        private final String[] mDescriptions;
+        private final String[] mHighs;
+        private final String[] mLows;
+
+        private Rows(int size) {
+            mDates = new long[size];
+            mWeatherIds = new int[size];
+            mDays = new String[size];
+            mDescriptions = new String[size];
+            mHighs = new String[size];
+            mLows = new String[size];
+        }
+
+        public int size() {
+            return mDates.length;
+        }
+
+        public long getDate(int position) {
+            return mDates[position];
+        }
+
+        public int getWeatherId(int position) {
+            return mWeatherIds[position];
+        }
+
+        public String getDay(int position) {
+            return mDays[position];
+        }
+
+        public String getDescription(int position) {
+            return mDescriptions[position];
+        }
+
+        public String getHigh(int position) {
+            return mHighs[position];
+        }
+
+        public String getLow(int position) {
+            return mLows[position];
+        }
+    }
+
+    private ForecastListCache() {
+    }
+
+    /**
+     * Stores the top of a freshly loaded forecast list over {@link ForecastFragment#FORECAST_COLUMNS}.
+     * The values are copied out of the cursor right away; formatting and writing happen in the
+     * background.
+     */
+    static void save(Context context, Cursor cursor, final boolean useTodayLayout) {
+        final Context appContext = context.getApplicationContext();
+        int size = Math.min(cursor.getCount(), MAX_ROWS);
+        if (size == 0 || !cursor.moveToFirst()) {
+            return;
+        }
+        final String locationSetting = cursor.getString(ForecastFragment.COL_LOCATION_SETTING);
+        final long[] dates = new long[size];
+        final int[] weatherIds = new int[size];
+        final double[] highs = new double[size];
+        final double[] lows = new double[size];
+        for (int i = 0; i < size && cursor.moveToPosition(i); i++) {
+            dates[i] = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            weatherIds[i] = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            highs[i] = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+            lows[i] = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        }
+        sWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                Rows rows = new Rows(dates.length);
+                for (int i = 0; i < dates.length; i++) {
+                    rows.mDates[i] = dates[i];
+                    rows.mWeatherIds[i] = weatherIds[i];
+                    rows.mDays[i] = Utility.getFriendlyDayString(appContext, dates[i],
+                            i == 0 && useTodayLayout);
+                    rows.mDescriptions[i] =
+                            Utility.getStringForWeatherCondition(appContext, weatherIds[i]);
+                    rows.mHighs[i] = Utility.formatTemperature(appContext, highs[i]);
+                    rows.mLows[i] = Utility.formatTemperature(appContext, lows[i]);
+                }
+                write(appContext, locationSetting, useTodayLayout, rows);
+            }
+        });
+    }
+
+    /**
+     * The stored rows, if they were formatted for this location, today, the current units and
+     * the layout asked for; otherwise null.  Reads a file of a few kilobytes.
+     */
+    static Rows read(Context context, String locationSetting, boolean useTodayLayout) {
+        // The units preference is watched where it's read, so it's read before the file is.
+        boolean metric = Utility.isMetric(context);
+        // Read on the main thread on purpose, but watched to stay within budget.
+        long start = IoWatchdog.begin();
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(getFile(context))));
+        } catch (FileNotFoundException e) {
+            IoWatchdog.end(IoWatchdog.DISK_READ, start);
+            return null;
+        }
+        try {
+            if (in.readInt() != VERSION ||
+                    !in.readUTF().equals(locationSetting) ||
+                    in.readLong() != today() ||
+                    in.readBoolean() != metric ||
+                    in.readBoolean() != useTodayLayout) {
+                return null;
+            }
+            Rows rows = new Rows(in.readInt());
+            for (int i = 0; i < rows.size(); i++) {
+                rows.mDates[i] = in.readLong();
+                rows.mWeatherIds[i] = in.readInt();
+                rows.mDays[i] = in.readUTF();
+                rows.mDescriptions[i] = in.readUTF();
+                rows.mHighs[i] = in.readUTF();
+                rows.mLows[i] = in.readUTF();
+            }
+            return rows;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't read the stored forecast list", e);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Everything needed has been read.
+            }
+            IoWatchdog.end(IoWatchdog.DISK_READ, start);
+        }
+    }
+
+    /*
+        Writes to a file alongside and renames it over the old one, so a reader never sees half
+        a list.
+     */
+    private static void write(Context context, String locationSetting, boolean useTodayLayout,
+                              Rows rows) {
+        File file = getFile(context);
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(VERSION);
+            out.writeUTF(locationSetting);
+            out.writeLong(today());
+            out.writeBoolean(Utility.isMetric(context));
+            out.writeBoolean(useTodayLayout);
+            out.writeInt(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                out.writeLong(rows.mDates[i]);
+                out.writeInt(rows.mWeatherIds[i]);
+                out.writeUTF(rows.mDays[i]);
+                out.writeUTF(rows.mDescriptions[i]);
+                out.writeUTF(rows.mHighs[i]);
+                out.writeUTF(rows.mLows[i]);
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                Log.w(LOG_TAG, "Couldn't replace the stored forecast list");
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't store the forecast list", e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Already failed.
+                }
+            }
+            temp.delete();
+        }
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    private static long today() {
+        return WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.MergeCursor;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Loads a location's forecast a page at a time, through the provider's page URIs (see
+ * {@link WeatherContract.WeatherEntry#buildWeatherLocationPage}).  The first load reads one page;
+ * {@link #loadNextPage()} reads the next one and delivers the pages so far as one cursor.  Only
+ * the new page is queried: the earlier pages' cursors are carried over.
+ *
+ * When the data changes, the pages that were showing are all read again, so a requery costs as
+ * much as what has been scrolled through rather than everything stored for the location.
+ */
+public class ForecastPageLoader extends AsyncTaskLoader<Cursor> {
+    public static final int DEFAULT_PAGE_SIZE = 30;
+
+    private final ForceLoadContentObserver mObserver;
+    private final String mLocationSetting;
+    private final long mStartDate;
+    private final String[] mProjection;
+    private final int mPageSize;
+
+    // The cursor last delivered, and how many pages the next load should end up with.
+    private PagedCursor mCursor;
+    private volatile int mPagesWanted = 1;
+    // The cursor the next load should add a page to, or null to read every page again.
+    private volatile PagedCursor mAppendTo;
+    // Set while a requery for changed data is under way.  Pages can't be added to the old
+    // cursor then, since they'd be stitched onto stale ones.
+    private boolean mReloading;
+
+    /**
+     * A cursor over the pages loaded so far.  Pages are shared with the next cursor the loader
+     * delivers, so closing this one leaves them open; the loader closes each page once nothing
+     * it has delivered uses it any more.
+     */
+    public static class PagedCursor extends MergeCursor {
+        private final Cursor[] mPages;
+        private final long mLastDate;
+        private final boolean mHasMore;
+        private final boolean mAppended;
+
+        PagedCursor(Cursor[] pages, long lastDate, boolean hasMore, boolean appended) {
+            super(shareable(pages));
+            mPages = pages;
+            mLastDate = lastDate;
+            mHasMore = hasMore;
+            mAppended = appended;
+        }
+
+        public int getPageCount() {
+            return mPages.length;
+        }
+
+        /**
+         * Whether the last page was full, so there may be another one.
+         */
+        public boolean hasMore() {
+            return mHasMore;
+        }
+
+        /**
+         * Whether this is the previous cursor with a page added, rather than a fresh read.
+         */
+        public boolean isAppended() {
+            return mAppended;
+        }
+
+        private static Cursor[] shareable(Cursor[] pages) {
+            Cursor[] wrapped = new Cursor[pages.length];
+            for (int i = 0; i < pages.length; i++) {
+                wrapped[i] = new CursorWrapper(pages[i]) {
+                    @Override
+                    public void close() {
+                        // The loader owns the page.
+                    }
+                };
+            }
+            return wrapped;
+        }
+    }
+
+    public ForecastPageLoader(Context context, String locationSetting, long startDate,
+                              String[] projection, int pageSize) {
+        super(context);
+        mObserver = new ForceLoadContentObserver();
+        mLocationSetting = locationSetting;
+        mStartDate = startDate;
+        mProjection = projection;
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Asks for one more page, if the last one was full and no page is on its way already.
+     */
+    public void loadNextPage() {
+        if (mCursor == null || !mCursor.hasMore() || mPagesWanted > mCursor.getPageCount()) {
+            return;
+        }
+        mPagesWanted = mCursor.getPageCount() + 1;
+        mAppendTo = mReloading ? null : mCursor;
+        forceLoad();
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        PagedCursor appendTo = mAppendTo;
+        int pagesWanted = mPagesWanted;
+
+        List<Cursor> pages = new ArrayList<Cursor>();
+        long afterDate;
+        if (appendTo != null) {
+            pages.addAll(Arrays.asList(appendTo.mPages));
+            afterDate = appendTo.mLastDate;
+        } else {
+            afterDate = WeatherContract.normalizeDate(mStartDate) - 1;
+        }
+        int firstNewPage = pages.size();
+
+        boolean hasMore = true;
+        try {
+            while (hasMore && pages.size() < pagesWanted) {
+                Cursor page = getContext().getContentResolver().query(
+                        WeatherContract.WeatherEntry.buildWeatherLocationPage(
+                                mLocationSetting, afterDate, mPageSize),
+                        mProjection, null, null, null);
+                if (page == null) {
+                    break;
+                }
+                pages.add(page);
+                // Ensure the cursor window is filled, as CursorLoader does.
+                int count = page.getCount();
+                page.registerContentObserver(mObserver);
+                hasMore = count == mPageSize;
+                if (count > 0) {
+                    page.moveToLast();
+                    afterDate = page.getLong(
+                            page.getColumnIndexOrThrow(WeatherContract.WeatherEntry.COLUMN_DATE));
+                }
+            }
+        } catch (RuntimeException e) {
+            for (int i = firstNewPage; i < pages.size(); i++) {
+                pages.get(i).close();
+            }
+            throw e;
+        }
+        return new PagedCursor(pages.toArray(new Cursor[pages.size()]), afterDate, hasMore,
+                appendTo != null);
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (isReset()) {
+            // An async query came in while the loader is stopped
+            release((PagedCursor) cursor, null);
+            return;
+        }
+        PagedCursor oldCursor = mCursor;
+        mCursor = (PagedCursor) cursor;
+        mPagesWanted = mCursor.getPageCount();
+        mAppendTo = null;
+        mReloading = false;
+
+        if (isStarted()) {
+            super.deliverResult(cursor);
+        }
+
+        if (oldCursor != null && oldCursor != cursor) {
+            release(oldCursor, mCursor);
+        }
+    }
+
+    @Override
+    public void onContentChanged() {
+        mAppendTo = null;
+        mReloading = true;
+        super.onContentChanged();
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mCursor != null) {
+            deliverResult(mCursor);
+        }
+        if (takeContentChanged() || mCursor == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    public void onCanceled(Cursor cursor) {
+        release((PagedCursor) cursor, mCursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        release(mCursor, null);
+        mCursor = null;
+    }
+
+    /*
+        Closes the pages of cursor that keep (the cursor still in use, if any) doesn't share.
+     */
+    private static void release(PagedCursor cursor, PagedCursor keep) {
+        if (cursor == null) {
+            return;
+        }
+        List<Cursor> kept = keep != null ? Arrays.asList(keep.mPages) : new ArrayList<Cursor>();
+        for (Cursor page : cursor.mPages) {
+            if (!kept.contains(page) && !page.isClosed()) {
+                page.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How smooth the forecast list and detail screens are, in debug builds: the time between frames
+ * while the list scrolls and how many of them were dropped, how long the adapter takes to bind
+ * each type of row, and how long the detail screen takes from a click to showing the day.
+ * Timings are kept by name, the latest MAX_SAMPLES of each, for FrameStatsActivity to show and
+ * tests to export.  In release builds nothing is recorded.
+ *
+ * Frames are timed with Choreographer, so only on Jelly Bean and later.
+ */
+public class FrameStats {
+    public static final String LOG_TAG = FrameStats.class.getSimpleName();
+
+    public static final String FRAMES_FORECAST_LIST = "frames/forecast_list";
+    public static final String BIND_TODAY = "bind/today";
+    public static final String BIND_FUTURE_DAY = "bind/future_day";
+    public static final String DETAIL_OPEN = "detail/open";
+
+    static final boolean ENABLED = BuildConfig.DEBUG;
+    // What begin returns when nothing is being recorded.
+    static final long NOT_TIMED = Long.MIN_VALUE;
+    // A minute of scrolling at 60 frames a second.
+    static final int MAX_SAMPLES = 4096;
+
+    /**
+     * The latest samples of one timing, with the dropped frames if it's a frame timing.
+     */
+    public static class Timings {
+        private final long[] mNanos = new long[MAX_SAMPLES];
+        // How many samples were ever added; the latest MAX_SAMPLES are kept.
+        private int mCount;
+        private int mDroppedFrames;
+        private int mJankyFrames;
+
+        synchronized void add(long nanos) {
+            mNanos[mCount % MAX_SAMPLES] = nanos;
+            mCount++;
+        }
+
+        synchronized void addFrame(long nanos, int dropped) {
+            add(nanos);
+            if (dropped > 0) {
+                mDroppedFrames += dropped;
+                mJankyFrames++;
+            }
+        }
+
+        public synchronized int getCount() {
+            return mCount;
+        }
+
+        /**
+         * For frame timings, how many frames weren't drawn in time.
+         */
+        public synchronized int getDroppedFrames() {
+            return mDroppedFrames;
+        }
+
+        /**
+         * For frame timings, how many frames came late, after one or more dropped ones.
+         */
+        public synchronized int getJankyFrames() {
+            return mJankyFrames;
+        }
+
+        /**
+         * The samples kept, in nanoseconds, in no particular order.
+         */
+        public synchronized long[] getSamples() {
+            return Arrays.copyOf(mNanos, Math.min(mCount, MAX_SAMPLES));
+        }
+
+        /**
+         * The time at percentile p (0 to 100) of the samples kept, in milliseconds.
+         */
+        public double getPercentile(double p) {
+            long[] sorted = getSamples();
+            if (sorted.length == 0) {
+                return 0;
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            String percentiles = String.format("%d, p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, " +
+                    "max %.1f ms", getCount(), getPercentile(50), getPercentile(90),
+                    getPercentile(99), getPercentile(100));
+            synchronized (this) {
+                return mDroppedFrames > 0 || mJankyFrames > 0
+                        ? String.format("%s, %d janky, %d dropped", percentiles, mJankyFrames,
+                                mDroppedFrames)
+                        : percentiles;
+            }
+        }
+    }
+
+    private static final Map<String, Timings> sTimings = new LinkedHashMap<String, Timings>();
+    // When intervals still open began, by name.
+    private static final Map<String, Long> sStarts = new HashMap<String, Long>();
+
+    private FrameStats() {
+    }
+
+    /**
+     * Marks the start of work to time on one thread; pass what it returns to {@link #end}.
+     */
+    public static long begin() {
+        return ENABLED ? System.nanoTime() : NOT_TIMED;
+    }
+
+    public static void end(String name, long start) {
+        if (start != NOT_TIMED) {
+            getOrCreate(name).add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Marks the start of something that ends somewhere else, perhaps in another activity.  A
+     * second start before the end replaces the first.
+     */
+    public static void startInterval(String name) {
+        if (ENABLED) {
+            synchronized (FrameStats.class) {
+                sStarts.put(name, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Ends an interval, if one by the name was started.
+     */
+    public static void endInterval(String name) {
+        if (!ENABLED) {
+            return;
+        }
+        Long start;
+        synchronized (FrameStats.class) {
+            start = sStarts.remove(name);
+        }
+        if (start != null) {
+            getOrCreate(name).add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Times the frames drawn while the list scrolls, under the name.
+     */
+    public static void trackScrolling(RecyclerView list, String name) {
+        if (ENABLED && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            list.addOnScrollListener(new FrameWatcher(list.getContext(), name));
+        }
+    }
+
+    /**
+     * The timings by that name, or null if there are none.
+     */
+    public static synchronized Timings getTimings(String name) {
+        return sTimings.get(name);
+    }
+
+    public static synchronized Map<String, Timings> getAllTimings() {
+        return new LinkedHashMap<String, Timings>(sTimings);
+    }
+
+    public static synchronized void reset() {
+        sTimings.clear();
+        sStarts.clear();
+    }
+
+    /**
+     * Every timing as text, a line each; also written to logcat under the LOG_TAG.
+     */
+    public static String dump() {
+        StringBuilder dump = new StringBuilder();
+        for (Map.Entry<String, Timings> timings : getAllTimings().entrySet()) {
+            dump.append(timings.getKey()).append(": ").append(timings.getValue()).append('\n');
+        }
+        Log.i(LOG_TAG, dump.length() > 0 ? dump.toString() : "Nothing timed");
+        return dump.toString();
+    }
+
+    private static synchronized Timings getOrCreate(String name) {
+        Timings timings = sTimings.get(name);
+        if (timings == null) {
+            timings = new Timings();
+            sTimings.put(name, timings);
+        }
+        return timings;
+    }
+
+    /*
+        From the list starting to scroll until it comes to rest, asks for a callback every frame
+        and records the time since the one before.  A frame that took n refresh intervals had
+        n - 1 frames dropped before it.  The time includes the list's other scroll listeners,
+        the parallax bar and the app bar's elevation.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameWatcher extends RecyclerView.OnScrollListener
+            implements Choreographer.FrameCallback {
+        private final String mName;
+        private final long mRefreshNanos;
+        private boolean mScrolling;
+        private boolean mPosted;
+        private long mLastFrameNanos = -1;
+
+        FrameWatcher(Context context, String name) {
+            mName = name;
+            float refreshRate = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE))
+                    .getDefaultDisplay().getRefreshRate();
+            mRefreshNanos = (long) (1e9 / (refreshRate > 0 ? refreshRate : 60));
+        }
+
+        @Override
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            mScrolling = newState != RecyclerView.SCROLL_STATE_IDLE;
+            if (mScrolling && !mPosted) {
+                mPosted = true;
+                mLastFrameNanos = -1;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mScrolling) {
+                mPosted = false;
+                return;
+            }
+            if (mLastFrameNanos != -1) {
+                long nanos = frameTimeNanos - mLastFrameNanos;
+                int intervals = (int) ((nanos + mRefreshNanos / 2) / mRefreshNanos);
+                getOrCreate(mName).addFrame(nanos, Math.max(0, intervals - 1));
+            }
+            mLastFrameNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.Toolbar;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+/**
+ * A debug screen showing what {@link FrameStats} has timed since the app started or the
+ * timings were last reset.  MainActivity's menu only offers it in debug builds.
+ */
+public class FrameStatsActivity extends AppCompatActivity {
+    private TextView mText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        IoWatchdog.install();
+        setContentView(R.layout.activity_frame_stats);
+        setSupportActionBar((Toolbar) findViewById(R.id.toolbar));
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        mText = (TextView) findViewById(R.id.frame_stats_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showTimings();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.frame_stats, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_reset) {
+            FrameStats.reset();
+            showTimings();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showTimings() {
+        String timings = FrameStats.dump();
+        mText.setText(timings.length() > 0 ? timings : getString(R.string.frame_stats_empty));
+    }
+}
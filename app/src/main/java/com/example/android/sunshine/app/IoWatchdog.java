@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Looper;
+import android.os.StrictMode;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps account of the blocking work the main thread does, in debug builds.  Code that reads or
+ * writes on whatever thread it's called from brackets the work with {@link #begin} and
+ * {@link #end}; calls on the main thread that take long enough to have touched the disk are
+ * added up by call site, with the stack of the first one, so tests can fail when a site goes
+ * over its budget and {@link #dump} can say where the time went.
+ *
+ * {@link #install} also turns on StrictMode for the main thread, which logs disk and network
+ * access nobody bracketed.  In release builds none of this does anything.
+ */
+public class IoWatchdog {
+    public static final String LOG_TAG = IoWatchdog.class.getSimpleName();
+
+    public static final String DISK_READ = "disk_read";
+    public static final String DISK_WRITE = "disk_write";
+    // A binder call into another process, which the main thread waits on.
+    public static final String IPC = "ipc";
+
+    static final boolean ENABLED = BuildConfig.DEBUG;
+    // What begin returns when the call isn't being watched.
+    static final long NOT_WATCHED = Long.MIN_VALUE;
+    // Anything quicker came from memory: a preference already loaded, a page already cached.
+    private static final long FLOOR_NANOS = 100 * 1000;
+    private static final int STACK_DEPTH = 12;
+    // Classes that do I/O on their callers' behalf.  Their calls are charged to whoever called
+    // them, which is the code to change.
+    private static final String[] WRAPPERS = {
+            IoWatchdog.class.getName(),
+            Utility.class.getName()
+    };
+
+    /**
+     * The main thread's calls of one kind from one place.
+     */
+    public static class Site {
+        public final String kind;
+        // The calling frame, as a stack trace shows it.
+        public final String site;
+        // The stack of the first call.
+        public final String stack;
+        private int mCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        Site(String kind, String site, String stack) {
+            this.kind = kind;
+            this.site = site;
+            this.stack = stack;
+        }
+
+        public synchronized int getCount() {
+            return mCount;
+        }
+
+        public synchronized long getTotalNanos() {
+            return mTotalNanos;
+        }
+
+        public synchronized long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        synchronized void add(long nanos) {
+            mCount++;
+            mTotalNanos += nanos;
+            mMaxNanos = Math.max(mMaxNanos, nanos);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s %s: %d calls, %.1f ms, longest %.1f ms", kind, site,
+                    mCount, mTotalNanos / 1e6, mMaxNanos / 1e6);
+        }
+    }
+
+    /**
+     * How long any one call of a kind may block the main thread, and how long all the calls
+     * from one site may, in milliseconds.
+     */
+    public static class Budget {
+        public final long maxCallMillis;
+        public final long maxTotalMillis;
+
+        public Budget(long maxCallMillis, long maxTotalMillis) {
+            this.maxCallMillis = maxCallMillis;
+            this.maxTotalMillis = maxTotalMillis;
+        }
+
+        boolean isExceededBy(Site site) {
+            return site.getMaxNanos() > maxCallMillis * 1000000 ||
+                    site.getTotalNanos() > maxTotalMillis * 1000000;
+        }
+    }
+
+    private static final Map<String, Site> sSites = new HashMap<String, Site>();
+    private static final Map<String, Budget> sBudgets = new HashMap<String, Budget>();
+    private static boolean sInstalled;
+
+    static {
+        resetBudgets();
+    }
+
+    private IoWatchdog() {
+    }
+
+    /**
+     * Turns on StrictMode for the main thread, logging disk and network access.  Every activity
+     * calls it from onCreate, as the process may be started into any of them from a
+     * widget or a notification; calls after the first do nothing.
+     */
+    public static void install() {
+        if (!ENABLED || sInstalled) {
+            return;
+        }
+        sInstalled = true;
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .penaltyLog()
+                .build());
+    }
+
+    /**
+     * Marks the start of work that may block; pass what it returns to {@link #end}.
+     */
+    public static long begin() {
+        if (!ENABLED || Looper.myLooper() != Looper.getMainLooper()) {
+            return NOT_WATCHED;
+        }
+        return System.nanoTime();
+    }
+
+    public static void end(String kind, long start) {
+        if (start == NOT_WATCHED) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        if (nanos < FLOOR_NANOS) {
+            return;
+        }
+        StackTraceElement[] stack = new Throwable().getStackTrace();
+        int caller = 0;
+        while (caller < stack.length - 1 && isWrapper(stack[caller])) {
+            caller++;
+        }
+        String site = stack[caller].toString();
+        String key = kind + " " + site;
+        synchronized (IoWatchdog.class) {
+            Site entry = sSites.get(key);
+            if (entry == null) {
+                entry = new Site(kind, site, formatStack(stack, caller));
+                sSites.put(key, entry);
+            }
+            entry.add(nanos);
+        }
+    }
+
+    /**
+     * Replaces the budget for a kind of call.
+     */
+    public static synchronized void setBudget(String kind, Budget budget) {
+        sBudgets.put(kind, budget);
+    }
+
+    /**
+     * Puts back the budgets calls start with: a disk read may take half a frame, a write or a
+     * binder call a quarter, and no site more than two frames altogether.
+     */
+    public static synchronized void resetBudgets() {
+        sBudgets.put(DISK_READ, new Budget(8, 32));
+        sBudgets.put(DISK_WRITE, new Budget(4, 32));
+        sBudgets.put(IPC, new Budget(4, 32));
+    }
+
+    /**
+     * Every site recorded since the last reset, the one that blocked longest first.
+     */
+    public static synchronized List<Site> getSites() {
+        List<Site> sites = new ArrayList<Site>(sSites.values());
+        Collections.sort(sites, new Comparator<Site>() {
+            @Override
+            public int compare(Site lhs, Site rhs) {
+                long lhsNanos = lhs.getTotalNanos();
+                long rhsNanos = rhs.getTotalNanos();
+                return lhsNanos < rhsNanos ? 1 : (lhsNanos == rhsNanos ? 0 : -1);
+            }
+        });
+        return sites;
+    }
+
+    /**
+     * The sites over their kind's budget.
+     */
+    public static synchronized List<Site> getSitesOverBudget() {
+        List<Site> over = new ArrayList<Site>();
+        for (Site site : getSites()) {
+            Budget budget = sBudgets.get(site.kind);
+            if (budget != null && budget.isExceededBy(site)) {
+                over.add(site);
+            }
+        }
+        return over;
+    }
+
+    public static synchronized void reset() {
+        sSites.clear();
+    }
+
+    /**
+     * The sites recorded since the last reset, with the stack of each one's first call, as
+     * text; also written to logcat under the LOG_TAG.
+     */
+    public static synchronized String dump() {
+        StringBuilder dump = new StringBuilder();
+        for (Site site : getSites()) {
+            dump.append(site).append('\n').append(site.stack).append('\n');
+        }
+        Log.i(LOG_TAG, dump.length() > 0 ? dump.toString() : "No blocking calls recorded");
+        return dump.toString();
+    }
+
+    private static boolean isWrapper(StackTraceElement frame) {
+        for (String wrapper : WRAPPERS) {
+            if (frame.getClassName().equals(wrapper) ||
+                    frame.getClassName().startsWith(wrapper + "$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String formatStack(StackTraceElement[] stack, int from) {
+        StringBuilder formatted = new StringBuilder();
+        for (int i = from; i < stack.length && i < from + STACK_DEPTH; i++) {
+            formatted.append("\tat ").append(stack[i]).append('\n');
+        }
+        return formatted.toString();
+    }
+}
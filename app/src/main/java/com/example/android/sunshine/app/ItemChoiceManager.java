@@ -19,7 +19,6 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.support.v4.util.LongSparseArray;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
@@ -28,8 +27,8 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  If the adapter
+ * has stable ids, selections follow their items when the data changes, however far they move.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -41,8 +40,22 @@ public class ItemChoiceManager {
         @Override
         public void onChanged() {
             super.onChanged();
-            if (mAdapter != null && mAdapter.hasStableIds())
-                confirmCheckedPositionsById(mAdapter.getItemCount());
+            onDataChanged();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onDataChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onDataChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onDataChanged();
         }
     };
 
@@ -51,17 +64,15 @@ public class ItemChoiceManager {
 
     ;
 
+    /**
+     * The adapter must have set whether it has stable ids already, since this registers an
+     * observer on it.
+     */
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
-    /**
-     * How many positions in either direction we will search to try to
-     * find a checked item with a stable ID that moved position across
-     * a data set change. If the item isn't found it will be unselected.
-     */
-    private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
-
     /**
      * Running state of which positions are currently checked
      */
@@ -72,7 +83,13 @@ public class ItemChoiceManager {
      * If there is a value for a given key, the checked state for that ID is true
      * and the value holds the last known position in the adapter for that id.
      */
-    LongSparseArray<Integer> mCheckedIdStates = new LongSparseArray<Integer>();
+    LongIntMap mCheckedIdStates = new LongIntMap();
+
+    /**
+     * Every item's position by id, built the first time a checked item is found to have moved
+     * after a data set change, and kept until the next one.
+     */
+    private LongIntMap mPositionsById;
 
     public void onClick(RecyclerView.ViewHolder vh) {
         if (mChoiceMode == AbsListView.CHOICE_MODE_NONE)
@@ -154,38 +171,46 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
-    void confirmCheckedPositionsById(int oldItemCount) {
+    private void onDataChanged() {
+        mPositionsById = null;
+        // With nothing to check against, keep the selection for when the items are back.
+        if (mAdapter.hasStableIds() && mAdapter.getItemCount() > 0) {
+            confirmCheckedPositionsById(mAdapter.getItemCount());
+        }
+    }
+
+    void confirmCheckedPositionsById(int itemCount) {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
 
-        for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
+        for (int checkedIndex = mCheckedIdStates.size() - 1; checkedIndex >= 0; checkedIndex--) {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
-            final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = mAdapter.getItemId(searchPos);
-                    if (id == searchId) {
-                        found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
-                }
-
-                if (!found) {
-                    mCheckedIdStates.delete(id);
-                    checkedIndex--;
-                }
-            } else {
+            if (lastPos < itemCount && mAdapter.getItemId(lastPos) == id) {
                 mCheckStates.put(lastPos, true);
+                continue;
+            }
+            // It moved, or is gone: look it up wherever it is.  If it's gone, uncheck it.
+            final int position = getPositionsById(itemCount).get(id, RecyclerView.NO_POSITION);
+            if (position != RecyclerView.NO_POSITION) {
+                mCheckStates.put(position, true);
+                mCheckedIdStates.setValueAt(checkedIndex, position);
+            } else {
+                // Walking backwards, the entry moved into this index has been seen already.
+                mCheckedIdStates.remove(id);
+            }
+        }
+    }
+
+    private LongIntMap getPositionsById(int itemCount) {
+        if (mPositionsById == null) {
+            mPositionsById = new LongIntMap(itemCount);
+            for (int position = 0; position < itemCount; position++) {
+                mPositionsById.put(mAdapter.getItemId(position), position);
             }
         }
+        return mPositionsById;
     }
 
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
@@ -18,17 +18,24 @@ package com.example.android.sunshine.app;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
+import android.content.AsyncQueryHandler;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.database.Cursor;
 import android.os.Bundle;
 import android.preference.EditTextPreference;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
@@ -38,7 +45,20 @@ import com.google.android.gms.location.places.ui.PlacePicker;
 
 public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
+    // Stored locations offered as the user types
+    static final private int SUGGESTION_LIMIT = 5;
+    static final private int SUGGESTION_TOKEN = 0;
+    static final private String[] SUGGESTION_COLUMNS = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+    };
+    static final private int COL_CITY_NAME = 1;
+    static final private int COL_LOCATION_SETTING = 2;
+
     private int mMinLength;
+    private LinearLayout mSuggestions;
+    private AsyncQueryHandler mSuggestionQuery;
 
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -123,6 +143,7 @@ public class LocationEditTextPreference extends EditTextPreference {
 
             @Override
             public void afterTextChanged(Editable s) {
+                querySuggestions(s.toString());
                 Dialog d = getDialog();
                 if (d instanceof AlertDialog) {
                     AlertDialog dialog = (AlertDialog) d;
@@ -139,4 +160,85 @@ public class LocationEditTextPreference extends EditTextPreference {
             }
         });
     }
+
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, EditText editText) {
+        super.onAddEditTextToDialogView(dialogView, editText);
+        ViewGroup container = (ViewGroup) editText.getParent();
+        if (container != null) {
+            mSuggestions = (LinearLayout) LayoutInflater.from(getContext())
+                    .inflate(R.layout.pref_location_suggestions, container, false);
+            container.addView(mSuggestions);
+        }
+    }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        if (mSuggestionQuery != null) {
+            mSuggestionQuery.cancelOperation(SUGGESTION_TOKEN);
+        }
+        mSuggestions = null;
+        super.onDialogClosed(positiveResult);
+    }
+
+    /*
+        Looks up the stored locations matching what's been typed, off the main thread, and shows
+        them under the text.  Picking one fills it in, so the weather we have for it shows at
+        once instead of after the server has been asked about a new location.
+     */
+    private void querySuggestions(String text) {
+        if (mSuggestions == null) {
+            return;
+        }
+        if (mSuggestionQuery == null) {
+            mSuggestionQuery = new AsyncQueryHandler(getContext().getContentResolver()) {
+                @Override
+                protected void onQueryComplete(int token, Object cookie, Cursor cursor) {
+                    try {
+                        showSuggestions(cursor);
+                    } finally {
+                        if (cursor != null) {
+                            cursor.close();
+                        }
+                    }
+                }
+            };
+        }
+        // Only the answer to the latest text matters.
+        mSuggestionQuery.cancelOperation(SUGGESTION_TOKEN);
+        mSuggestionQuery.startQuery(SUGGESTION_TOKEN, null,
+                WeatherContract.LocationEntry.buildLocationSuggestUri(text, SUGGESTION_LIMIT),
+                SUGGESTION_COLUMNS, null, null, null);
+    }
+
+    private void showSuggestions(Cursor cursor) {
+        if (mSuggestions == null) {
+            return;
+        }
+        mSuggestions.removeAllViews();
+        if (cursor == null) {
+            return;
+        }
+        String typed = getEditText().getText().toString();
+        LayoutInflater inflater = LayoutInflater.from(getContext());
+        while (cursor.moveToNext()) {
+            final String locationSetting = cursor.getString(COL_LOCATION_SETTING);
+            if (locationSetting.equals(typed)) {
+                continue;
+            }
+            View row = inflater.inflate(android.R.layout.simple_list_item_2, mSuggestions, false);
+            ((TextView) row.findViewById(android.R.id.text1)).setText(
+                    cursor.getString(COL_CITY_NAME));
+            ((TextView) row.findViewById(android.R.id.text2)).setText(locationSetting);
+            row.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    EditText et = getEditText();
+                    et.setText(locationSetting);
+                    et.setSelection(locationSetting.length());
+                }
+            });
+            mSuggestions.addView(row);
+        }
+    }
 }
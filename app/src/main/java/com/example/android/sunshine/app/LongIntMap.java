@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Arrays;
+
+/**
+ * A map from long keys to int values with nothing boxed.  Entries are kept densely, so they can
+ * be walked by index like a {@link android.util.SparseArray}'s, and found by a hash table of
+ * indices into them, so lookups don't depend on how many there are.  Removing an entry moves
+ * the last one into its place, so indices of other entries may change.
+ */
+class LongIntMap {
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private int mSize;
+    // Open addressing with linear probing.  Each slot holds an entry's index plus one, or 0.
+    private int[] mTable;
+    private int mMask;
+
+    LongIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    LongIntMap(int capacity) {
+        capacity = Math.max(MIN_CAPACITY, capacity);
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        // Kept at most half full, so probes stay short.
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        mTable = new int[tableSize];
+        mMask = tableSize - 1;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    long keyAt(int index) {
+        return mKeys[index];
+    }
+
+    int valueAt(int index) {
+        return mValues[index];
+    }
+
+    void setValueAt(int index, int value) {
+        mValues[index] = value;
+    }
+
+    /**
+     * The index of the entry for key, or -1 if there isn't one.
+     */
+    int indexOfKey(long key) {
+        int slot = findSlot(key);
+        return mTable[slot] - 1;
+    }
+
+    int get(long key, int valueIfMissing) {
+        int index = indexOfKey(key);
+        return index < 0 ? valueIfMissing : mValues[index];
+    }
+
+    void put(long key, int value) {
+        int slot = findSlot(key);
+        if (mTable[slot] != 0) {
+            mValues[mTable[slot] - 1] = value;
+            return;
+        }
+        if ((mSize + 1) * 2 > mTable.length) {
+            resizeTable(mTable.length * 2);
+            slot = findSlot(key);
+        }
+        if (mSize == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mSize * 2);
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+        }
+        mKeys[mSize] = key;
+        mValues[mSize] = value;
+        mSize++;
+        mTable[slot] = mSize;
+    }
+
+    void remove(long key) {
+        int slot = findSlot(key);
+        int index = mTable[slot] - 1;
+        if (index < 0) {
+            return;
+        }
+        clearSlot(slot);
+        int last = mSize - 1;
+        if (index != last) {
+            long lastKey = mKeys[last];
+            mTable[findSlot(lastKey)] = index + 1;
+            mKeys[index] = lastKey;
+            mValues[index] = mValues[last];
+        }
+        mSize--;
+    }
+
+    void clear() {
+        Arrays.fill(mTable, 0);
+        mSize = 0;
+    }
+
+    /*
+        The slot holding key, or the empty slot where it would go.
+     */
+    private int findSlot(long key) {
+        int slot = hash(key) & mMask;
+        while (mTable[slot] != 0 && mKeys[mTable[slot] - 1] != key) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    /*
+        Empties a slot, moving back any entry further along the probe run that would no longer
+        be found past the gap.
+     */
+    private void clearSlot(int hole) {
+        int slot = (hole + 1) & mMask;
+        while (mTable[slot] != 0) {
+            int home = hash(mKeys[mTable[slot] - 1]) & mMask;
+            // The entry may fill the hole unless its home lies between the hole and here.
+            if (((slot - home) & mMask) >= ((slot - hole) & mMask)) {
+                mTable[hole] = mTable[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        mTable[hole] = 0;
+    }
+
+    private void resizeTable(int tableSize) {
+        mTable = new int[tableSize];
+        mMask = tableSize - 1;
+        for (int i = 0; i < mSize; i++) {
+            int slot = hash(mKeys[i]) & mMask;
+            while (mTable[slot] != 0) {
+                slot = (slot + 1) & mMask;
+            }
+            mTable[slot] = i + 1;
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
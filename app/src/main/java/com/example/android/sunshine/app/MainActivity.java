@@ -15,6 +15,7 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
@@ -36,6 +37,9 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback {
 
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -45,13 +49,20 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
 
     private boolean mTwoPane;
     private String mLocation;
+    private StartupOrchestrator mStartup;
+    private DetailPreloader mDetailPreloader;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        IoWatchdog.install();
+        mStartup = new StartupOrchestrator();
         mLocation = Utility.getPreferredLocation(this);
+        // Open the database and read the list's first page while the layout inflates.
+        mStartup.prewarm(getApplicationContext(), mLocation);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
 
+        long contentViewStart = mStartup.beginPhase(StartupOrchestrator.PHASE_CONTENT_VIEW);
         setContentView(R.layout.activity_main);
         Toolbar toolbar = (Toolbar)findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -62,6 +73,7 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
             // (res/layout-sw600dp). If this view is present, then the activity should be
             // in two-pane mode.
             mTwoPane = true;
+            mDetailPreloader = new DetailPreloader(this);
             // In two-pane mode, show the detail view in this activity by
             // adding or replacing the detail fragment using a
             // fragment transaction.
@@ -84,35 +96,76 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         ForecastFragment forecastFragment =  ((ForecastFragment)getSupportFragmentManager()
                 .findFragmentById(R.id.fragment_forecast));
         forecastFragment.setUseTodayLayout(!mTwoPane);
+        forecastFragment.setDetailPreloader(mDetailPreloader);
         if (contentUri != null) {
             forecastFragment.setInitialSelectedDate(
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        mStartup.endPhase(StartupOrchestrator.PHASE_CONTENT_VIEW, contentViewStart);
+
+        // Nothing on screen needs the sync account or GCM, so they wait for the first frame.
+        mStartup.runAfterFirstDraw(getWindow().getDecorView(), new Runnable() {
+            @Override
+            public void run() {
+                onFirstDraw();
+            }
+        });
+    }
+
+    /*
+        The startup work the first frame doesn't need.  Runs on the main thread, and hands what
+        it can to the orchestrator's background thread.
+     */
+    private void onFirstDraw() {
+        final Context context = getApplicationContext();
+        mStartup.runInBackground(StartupOrchestrator.PHASE_SYNC_SETUP, new Runnable() {
+            @Override
+            public void run() {
+                SunshineSyncAdapter.initializeSyncAdapter(context);
+            }
+        });
 
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
         // skip the registration and this device will not receive any downstream messages from
         // our fake server. Because weather alerts are not a core feature of the app, this should
         // not affect the behavior of the app, from a user perspective.
-        if (checkPlayServices()) {
-            // Because this is the initial creation of the app, we'll want to be certain we have
-            // a token. If we do not, then we will start the IntentService that will register this
-            // application with GCM.
-            SharedPreferences sharedPreferences =
-                    PreferenceManager.getDefaultSharedPreferences(this);
-            boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
-            if (!sentToken) {
-                Intent intent = new Intent(this, RegistrationIntentService.class);
-                startService(intent);
-            }
+        // The check stays on the main thread, since it may show a dialog.
+        if (!isFinishing() && checkPlayServices()) {
+            mStartup.runInBackground(StartupOrchestrator.PHASE_GCM_SETUP, new Runnable() {
+                @Override
+                public void run() {
+                    // Because this is the initial creation of the app, we'll want to be certain
+                    // we have a token. If we do not, then we will start the IntentService that
+                    // will register this application with GCM.
+                    SharedPreferences sharedPreferences =
+                            PreferenceManager.getDefaultSharedPreferences(context);
+                    boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
+                    if (!sentToken) {
+                        Intent intent = new Intent(context, RegistrationIntentService.class);
+                        context.startService(intent);
+                    }
+                }
+            });
         }
     }
 
+    StartupOrchestrator getStartupOrchestrator() {
+        return mStartup;
+    }
+
+    /**
+     * Detail models the list has read ahead for the detail pane, or null in single-pane layouts.
+     */
+    DetailPreloader getDetailPreloader() {
+        return mDetailPreloader;
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.action_frame_stats).setVisible(FrameStats.ENABLED);
         return true;
     }
 
@@ -127,6 +180,9 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         if (id == R.id.action_settings) {
             startActivity(new Intent(this, SettingsActivity.class));
             return true;
+        } else if (id == R.id.action_frame_stats) {
+            startActivity(new Intent(this, FrameStatsActivity.class));
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
@@ -150,6 +206,22 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         }
     }
 
+    /*
+        adb shell dumpsys activity com.example.android.sunshine.app/.MainActivity
+        adds what the MemoryTracker accounts for to the activity's own state.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println("Memory:");
+        for (String line : MemoryTracker.getInstance(this).dump().split("\n")) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.println(line);
+        }
+    }
+
     @Override
     public void onItemSelected(Uri contentUri, ForecastAdapter.ForecastAdapterViewHolder vh) {
         if (mTwoPane) {
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Accounts for the memory the app holds in caches and decoded bitmaps, by subsystem, and frees
+ * it in a set order when the system is short.  Caches register themselves with a budget and say
+ * how much they hold and what they can free at each onTrimMemory level; bitmaps that are decoded
+ * and handed on, to a widget or a notification, are tracked until they're collected.
+ *
+ * Caches are shrunk in a set order.  The alert icons go first, as they're decoded from resources
+ * in a moment.  Then the art Glide has decoded, and after it Glide's pool of bitmaps to reuse,
+ * which only saves allocations; the pool has to come after the art, as Glide puts the art it
+ * evicts in the pool.  The forecast the widgets read goes last.  Each cache decides for itself
+ * how much a level calls for.
+ *
+ * Before Ice Cream Sandwich there's no onTrimMemory, and caches keep to their own limits.
+ */
+public class MemoryTracker {
+    public static final String LOG_TAG = MemoryTracker.class.getSimpleName();
+
+    public static final String ALERT_ICONS = "alert_icons";
+    public static final String ART_POOL = "art_pool";
+    public static final String ART_CACHE = "art_cache";
+    public static final String FORECAST = "forecast";
+    public static final String WIDGET_BITMAPS = "widget_bitmaps";
+    public static final String NOTIFICATION_BITMAPS = "notification_bitmaps";
+
+    // Caches not listed here are shrunk after these, in the order they registered.
+    private static final List<String> SHRINK_ORDER =
+            Arrays.asList(ALERT_ICONS, ART_CACHE, ART_POOL, FORECAST);
+
+    // A widget list's icons, and a notification's large icon, at the most they're likely to be.
+    private static final long WIDGET_BITMAPS_BUDGET = 4 * 1024 * 1024;
+    private static final long NOTIFICATION_BITMAPS_BUDGET = 1024 * 1024;
+
+    /**
+     * Memory a subsystem can give back.
+     */
+    public interface Cache {
+        /**
+         * What the cache holds now, in bytes.
+         */
+        long getSizeBytes();
+
+        /**
+         * Frees as much as the level calls for: one of ComponentCallbacks2's TRIM_MEMORY_
+         * levels.
+         */
+        void trimMemory(int level);
+    }
+
+    /**
+     * A subsystem's memory at one moment, against its budget.
+     */
+    public static class Usage {
+        public final String name;
+        public final long bytes;
+        public final long budgetBytes;
+
+        Usage(String name, long bytes, long budgetBytes) {
+            this.name = name;
+            this.bytes = bytes;
+            this.budgetBytes = budgetBytes;
+        }
+
+        public boolean isOverBudget() {
+            return bytes > budgetBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: %d KB of %d KB", name, bytes / 1024,
+                    budgetBytes / 1024);
+        }
+    }
+
+    private static class Subsystem {
+        final String name;
+        final long budgetBytes;
+        final Cache cache;
+        final List<WeakReference<Bitmap>> bitmaps = new ArrayList<WeakReference<Bitmap>>();
+
+        Subsystem(String name, long budgetBytes, Cache cache) {
+            this.name = name;
+            this.budgetBytes = budgetBytes;
+            this.cache = cache;
+        }
+
+        long getSizeBytes() {
+            long bytes = cache != null ? cache.getSizeBytes() : 0;
+            Iterator<WeakReference<Bitmap>> iterator = bitmaps.iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next().get();
+                if (bitmap == null || bitmap.isRecycled()) {
+                    iterator.remove();
+                } else {
+                    bytes += getByteCount(bitmap);
+                }
+            }
+            return bytes;
+        }
+    }
+
+    private static MemoryTracker sInstance;
+
+    private final Map<String, Subsystem> mSubsystems = new LinkedHashMap<String, Subsystem>();
+    private int mLastTrimLevel = -1;
+
+    MemoryTracker() {
+        register(WIDGET_BITMAPS, WIDGET_BITMAPS_BUDGET, null);
+        register(NOTIFICATION_BITMAPS, NOTIFICATION_BITMAPS_BUDGET, null);
+    }
+
+    public static synchronized MemoryTracker getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MemoryTracker();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+                context.getApplicationContext().registerComponentCallbacks(
+                        new Callbacks(sInstance));
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Accounts for a subsystem's memory, and frees it when memory is short if cache isn't null.
+     * Registering a name again replaces it.
+     */
+    public synchronized void register(String name, long budgetBytes, Cache cache) {
+        mSubsystems.put(name, new Subsystem(name, budgetBytes, cache));
+    }
+
+    /**
+     * Counts a bitmap against a registered subsystem until it's collected or recycled.
+     */
+    public synchronized void track(String name, Bitmap bitmap) {
+        Subsystem subsystem = mSubsystems.get(name);
+        if (subsystem == null) {
+            throw new IllegalArgumentException("Unknown subsystem: " + name);
+        }
+        if (bitmap == null) {
+            return;
+        }
+        // Glide hands out the same bitmap for the same image while it's in use.
+        for (WeakReference<Bitmap> tracked : subsystem.bitmaps) {
+            if (tracked.get() == bitmap) {
+                return;
+            }
+        }
+        subsystem.bitmaps.add(new WeakReference<Bitmap>(bitmap));
+    }
+
+    /**
+     * What each subsystem holds now, in the order they're registered.
+     */
+    public synchronized List<Usage> getUsage() {
+        List<Usage> usage = new ArrayList<Usage>();
+        for (Subsystem subsystem : mSubsystems.values()) {
+            usage.add(new Usage(subsystem.name, subsystem.getSizeBytes(), subsystem.budgetBytes));
+        }
+        return usage;
+    }
+
+    public synchronized Usage getUsage(String name) {
+        Subsystem subsystem = mSubsystems.get(name);
+        return subsystem == null ? null
+                : new Usage(name, subsystem.getSizeBytes(), subsystem.budgetBytes);
+    }
+
+    /**
+     * The caches in the order they're shrunk.
+     */
+    public synchronized List<String> getShrinkOrder() {
+        List<String> order = new ArrayList<String>();
+        for (Subsystem subsystem : getCachesInShrinkOrder()) {
+            order.add(subsystem.name);
+        }
+        return order;
+    }
+
+    /**
+     * Every subsystem's memory and budget, a line each, and the last trim level; also written
+     * to logcat under the LOG_TAG.
+     */
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        long total = 0;
+        for (Usage usage : getUsage()) {
+            dump.append(usage);
+            if (usage.isOverBudget()) {
+                dump.append(" (over budget)");
+            }
+            dump.append('\n');
+            total += usage.bytes;
+        }
+        synchronized (this) {
+            dump.append(String.format(Locale.US, "total: %d KB, last trim level %d\n",
+                    total / 1024, mLastTrimLevel));
+        }
+        Log.i(LOG_TAG, dump.toString());
+        return dump.toString();
+    }
+
+    /**
+     * Shrinks every cache in turn, for one of ComponentCallbacks2's TRIM_MEMORY_ levels.  Call
+     * it on the main thread, where Glide recycles the art its cache evicts.
+     */
+    public void onTrimMemory(int level) {
+        List<Subsystem> caches;
+        synchronized (this) {
+            mLastTrimLevel = level;
+            caches = getCachesInShrinkOrder();
+        }
+        // Outside the lock: caches take their own, and may be asked their size meanwhile.
+        for (Subsystem subsystem : caches) {
+            subsystem.cache.trimMemory(level);
+        }
+    }
+
+    private List<Subsystem> getCachesInShrinkOrder() {
+        final List<String> registered = new ArrayList<String>(mSubsystems.keySet());
+        List<Subsystem> caches = new ArrayList<Subsystem>();
+        for (Subsystem subsystem : mSubsystems.values()) {
+            if (subsystem.cache != null) {
+                caches.add(subsystem);
+            }
+        }
+        Collections.sort(caches, new Comparator<Subsystem>() {
+            @Override
+            public int compare(Subsystem lhs, Subsystem rhs) {
+                return getRank(lhs.name) - getRank(rhs.name);
+            }
+
+            private int getRank(String name) {
+                int rank = SHRINK_ORDER.indexOf(name);
+                return rank != -1 ? rank : SHRINK_ORDER.size() + registered.indexOf(name);
+            }
+        });
+        return caches;
+    }
+
+    /*
+        Passes the application's memory callbacks on.  A class of its own, so the tracker loads
+        on devices without ComponentCallbacks2.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static class Callbacks implements ComponentCallbacks2 {
+        private final MemoryTracker mTracker;
+
+        Callbacks(MemoryTracker tracker) {
+            mTracker = tracker;
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            mTracker.onTrimMemory(level);
+        }
+
+        @Override
+        public void onLowMemory() {
+            mTracker.onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    }
+
+    /**
+     * The bytes a bitmap's pixels take.  Bitmap.getByteCount is Honeycomb MR1 and later.
+     */
+    public static long getByteCount(Bitmap bitmap) {
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
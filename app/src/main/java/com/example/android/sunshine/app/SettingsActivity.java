@@ -16,10 +16,14 @@
 package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
+import android.content.AsyncQueryHandler;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.preference.EditTextPreference;
 import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceActivity;
@@ -48,9 +52,27 @@ public class SettingsActivity extends PreferenceActivity
     protected final static int PLACE_PICKER_REQUEST = 9090;
     private ImageView mAttribution;
 
+    private static final int RESOLVE_TOKEN = 0;
+    private static final String[] RESOLVE_COLUMNS = {
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            WeatherContract.LocationEntry.COLUMN_UPDATED
+    };
+    private static final int COL_LOCATION_SETTING = 0;
+    private static final int COL_COORD_LAT = 1;
+    private static final int COL_COORD_LONG = 2;
+    private static final int COL_UPDATED = 3;
+
+    private AsyncQueryHandler mResolveQuery;
+    // Set while we write a resolved location to the preferences, so the change isn't taken
+    // for the user's.
+    private String mResolvedLocation;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        IoWatchdog.install();
         // Add 'general' preferences, defined in the XML file
         addPreferencesFromResource(R.xml.pref_general);
 
@@ -59,6 +81,7 @@ public class SettingsActivity extends PreferenceActivity
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_location_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_units_key)));
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_art_pack_key)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_reuse_radius_key)));
 
 
         // If we are using a PlacePicker location, we need to show attributions.
@@ -154,30 +177,35 @@ public class SettingsActivity extends PreferenceActivity
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if ( key.equals(getString(R.string.pref_location_key)) ) {
+            if (sharedPreferences.getString(key, "").equals(mResolvedLocation)) {
+                return;
+            }
             // we've changed the location
             // Wipe out any potential PlacePicker latlng values so that we can use this text entry.
             SharedPreferences.Editor editor = sharedPreferences.edit();
             editor.remove(getString(R.string.pref_location_latitude));
             editor.remove(getString(R.string.pref_location_longitude));
-            editor.commit();
+            // apply() writes the file on a background thread; commit() would block this one on
+            // it.
+            editor.apply();
 
             // Remove attributions for our any PlacePicker locations.
             if (mAttribution != null) {
                 mAttribution.setVisibility(View.GONE);
             }
 
-            Utility.resetLocationStatus(this);
-            SunshineSyncAdapter.syncImmediately(this);
+            resolveLocationAndSync(WeatherContract.LocationEntry.buildLocationResolveUri(
+                    sharedPreferences.getString(key, "")));
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
-            // units have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // units have changed. redraw lists of weather entries accordingly
+            getContentResolver().notifyChange(WeatherContract.PRESENTATION_URI, null);
         } else if ( key.equals(getString(R.string.pref_location_status_key)) ) {
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
-            // art pack have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // art pack have changed. redraw lists of weather entries accordingly
+            getContentResolver().notifyChange(WeatherContract.PRESENTATION_URI, null);
         }
     }
 
@@ -215,7 +243,7 @@ public class SettingsActivity extends PreferenceActivity
                         (float) latLong.latitude);
                 editor.putFloat(getString(R.string.pref_location_longitude),
                         (float) latLong.longitude);
-                editor.commit();
+                editor.apply();
 
                 // Tell the SyncAdapter that we've changed the location, so that we can update
                 // our UI with new values. We need to do this manually because we are responding
@@ -234,11 +262,83 @@ public class SettingsActivity extends PreferenceActivity
                             Snackbar.LENGTH_LONG).show();
                 }
 
-                Utility.resetLocationStatus(this);
-                SunshineSyncAdapter.syncImmediately(this);
+                // Any stored location near enough will do, if the user lets us.
+                int reuseRadius = Utility.getReuseRadiusMeters(this);
+                if (reuseRadius > 0) {
+                    resolveLocationAndSync(WeatherContract.LocationEntry.buildLocationNearUri(
+                            latLong.latitude, latLong.longitude, reuseRadius, 1));
+                } else {
+                    resolveLocationAndSync(WeatherContract.LocationEntry.buildLocationResolveUri(
+                            latLong.latitude, latLong.longitude));
+                }
             }
         } else {
             super.onActivityResult(requestCode, resultCode, data);
         }
     }
+
+    /*
+        Before syncing a new location, checks whether it's one we already have, typed another way
+        or picked a few streets over.  If it is, the preference is switched to that location, so
+        its weather shows straight away and the sync refreshes it rather than fetching a new
+        location.  Its coordinates go along, since a setting from the Place Picker is an address
+        the weather server may not understand.  If its weather is fresh, there's no sync at all.
+     */
+    private void resolveLocationAndSync(Uri resolveUri) {
+        if (mResolveQuery == null) {
+            mResolveQuery = new AsyncQueryHandler(getContentResolver()) {
+                @Override
+                protected void onQueryComplete(int token, Object cookie, Cursor cursor) {
+                    boolean fresh = false;
+                    try {
+                        if (cursor != null && cursor.moveToFirst()) {
+                            useResolvedLocation(cursor.getString(COL_LOCATION_SETTING),
+                                    (float) cursor.getDouble(COL_COORD_LAT),
+                                    (float) cursor.getDouble(COL_COORD_LONG));
+                            fresh = Utility.isForecastFresh(cursor.getLong(COL_UPDATED));
+                        }
+                    } finally {
+                        if (cursor != null) {
+                            cursor.close();
+                        }
+                    }
+                    if (fresh) {
+                        // We have its weather, so the server knows it.
+                        PreferenceManager.getDefaultSharedPreferences(SettingsActivity.this).edit()
+                                .putInt(getString(R.string.pref_location_status_key),
+                                        SunshineSyncAdapter.LOCATION_STATUS_OK)
+                                .apply();
+                        // Widgets and the watch show the preferred location; catch them up.
+                        sendBroadcast(new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                                .setPackage(getPackageName()));
+                    } else {
+                        Utility.resetLocationStatus(SettingsActivity.this);
+                        SunshineSyncAdapter.syncImmediately(SettingsActivity.this);
+                    }
+                }
+            };
+        }
+        // A newer location supersedes the one still being resolved.
+        mResolveQuery.cancelOperation(RESOLVE_TOKEN);
+        mResolveQuery.startQuery(RESOLVE_TOKEN, null, resolveUri, RESOLVE_COLUMNS,
+                null, null, null);
+    }
+
+    private void useResolvedLocation(String locationSetting, float lat, float lon) {
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(this).edit();
+        editor.putString(getString(R.string.pref_location_key), locationSetting);
+        editor.putFloat(getString(R.string.pref_location_latitude), lat);
+        editor.putFloat(getString(R.string.pref_location_longitude), lon);
+        // Listeners hear of the change before apply() returns, while this is set.
+        mResolvedLocation = locationSetting;
+        editor.apply();
+        mResolvedLocation = null;
+
+        Preference locationPreference = findPreference(getString(R.string.pref_location_key));
+        if (locationPreference instanceof EditTextPreference) {
+            ((EditTextPreference) locationPreference).setText(locationSetting);
+        }
+        setPreferenceSummary(locationPreference, locationSetting);
+    }
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Puts MainActivity's startup work in order, so the main thread does only what the first frame
+ * needs.  The database is opened and the forecast's first page read on a background thread while
+ * the layout inflates, so the list's loader finds both warm; setting up the sync account and GCM
+ * waits until the first frame has been drawn, then runs on the same background thread.
+ *
+ * Each phase is timed from when the orchestrator was made, and shows up as a section in systrace
+ * on devices that have it.  Once everything has run the phases are written to logcat under the
+ * LOG_TAG.
+ */
+public class StartupOrchestrator {
+    public static final String LOG_TAG = StartupOrchestrator.class.getSimpleName();
+
+    static final String PHASE_CONTENT_VIEW = "content_view";
+    static final String PHASE_FIRST_DRAW = "first_draw";
+    static final String PHASE_PREWARM = "prewarm";
+    static final String PHASE_SYNC_SETUP = "sync_setup";
+    static final String PHASE_GCM_SETUP = "gcm_setup";
+
+    // One thread for all of it: the deferred work isn't urgent, and runs after the prewarm.
+    private static final ExecutorService sBackground = Executors.newSingleThreadExecutor();
+
+    /**
+     * When a phase started and ended, in milliseconds after the orchestrator was made.
+     */
+    public static class Phase {
+        public final String name;
+        public final long startMillis;
+        public final long endMillis;
+
+        Phase(String name, long startMillis, long endMillis) {
+            this.name = name;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d-%d ms", name, startMillis, endMillis);
+        }
+    }
+
+    private final long mStart = SystemClock.elapsedRealtime();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final List<Phase> mPhases = new ArrayList<Phase>();
+    // Background phases not yet finished, and whether the first frame is out.
+    private int mPending;
+    private boolean mDrawn;
+    private boolean mLogged;
+
+    /**
+     * Reads the first page of the location's forecast on the background thread, which opens
+     * (and if need be creates or upgrades) the database on the way.
+     */
+    public void prewarm(final Context context, final String locationSetting) {
+        runInBackground(PHASE_PREWARM, new Runnable() {
+            @Override
+            public void run() {
+                Cursor cursor = context.getContentResolver().query(
+                        WeatherContract.WeatherEntry.buildWeatherLocationFirstPage(
+                                locationSetting, System.currentTimeMillis(),
+                                ForecastPageLoader.DEFAULT_PAGE_SIZE),
+                        ForecastFragment.FORECAST_COLUMNS, null, null, null);
+                if (cursor != null) {
+                    // Fill the window, so the pages the query touched are in the page cache.
+                    cursor.getCount();
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Marks the start of a phase on the calling thread; {@link #endPhase} ends it.
+     */
+    public long beginPhase(String name) {
+        beginSection(name);
+        return elapsed();
+    }
+
+    public void endPhase(String name, long startMillis) {
+        endSection();
+        record(name, startMillis);
+    }
+
+    /**
+     * Runs work on the main thread once the view's first frame has been drawn.
+     */
+    public void runAfterFirstDraw(final View view, final Runnable work) {
+        final ViewTreeObserver.OnPreDrawListener listener =
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        view.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // Posted from here, this runs once the frame that's about to be drawn is.
+                        mMainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                // Timed from the start: this is the time to the first frame.
+                                record(PHASE_FIRST_DRAW, 0);
+                                work.run();
+                                // Only now, so the phases the work queued count as pending.
+                                synchronized (StartupOrchestrator.this) {
+                                    mDrawn = true;
+                                }
+                                logIfComplete();
+                            }
+                        });
+                        return true;
+                    }
+                };
+        view.getViewTreeObserver().addOnPreDrawListener(listener);
+    }
+
+    /**
+     * Queues work for the background thread, timed as a phase.
+     */
+    public void runInBackground(final String name, final Runnable work) {
+        synchronized (this) {
+            mPending++;
+        }
+        sBackground.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = beginPhase(name);
+                try {
+                    work.run();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Startup phase " + name + " failed", e);
+                } finally {
+                    endPhase(name, start);
+                    synchronized (StartupOrchestrator.this) {
+                        mPending--;
+                    }
+                    logIfComplete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Whether the first frame has been drawn and every background phase has finished.
+     */
+    public synchronized boolean isComplete() {
+        return mDrawn && mPending == 0;
+    }
+
+    public synchronized List<Phase> getPhases() {
+        return new ArrayList<Phase>(mPhases);
+    }
+
+    /**
+     * The named phase, or null if it hasn't finished.
+     */
+    public synchronized Phase getPhase(String name) {
+        for (Phase phase : mPhases) {
+            if (phase.name.equals(name)) {
+                return phase;
+            }
+        }
+        return null;
+    }
+
+    private long elapsed() {
+        return SystemClock.elapsedRealtime() - mStart;
+    }
+
+    private synchronized void record(String name, long startMillis) {
+        mPhases.add(new Phase(name, startMillis, elapsed()));
+    }
+
+    private void logIfComplete() {
+        synchronized (this) {
+            if (!isComplete() || mLogged) {
+                return;
+            }
+            mLogged = true;
+        }
+        for (Phase phase : getPhases()) {
+            Log.i(LOG_TAG, phase.toString());
+        }
+    }
+
+    private static void beginSection(String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            beginTraceSection(name);
+        }
+    }
+
+    private static void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            endTraceSection();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginTraceSection(String name) {
+        Trace.beginSection("startup:" + name);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endTraceSection() {
+        Trace.endSection();
+    }
+}
@@ -20,12 +20,12 @@ import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.preference.PreferenceManager;
-import android.text.format.Time;
 
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.core.DayLabels;
+import com.example.android.sunshine.core.WeatherConditions;
 
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 
@@ -33,35 +33,64 @@ public class Utility {
     // We'll default our latlong to 0. Yay, "Earth!"
     public static float DEFAULT_LATLONG = 0F;
 
+    /*
+        The default preferences, loaded.  Getting them is quick, but the first read waits for
+        the file to be read, so the watchdog times a read.  Once loaded they're in memory.
+     */
+    private static SharedPreferences getPreferences(Context context) {
+        long start = IoWatchdog.begin();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        prefs.contains(context.getString(R.string.pref_location_key));
+        IoWatchdog.end(IoWatchdog.DISK_READ, start);
+        return prefs;
+    }
+
     public static boolean isLocationLatLonAvailable(Context context) {
-        SharedPreferences prefs
-                = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences prefs = getPreferences(context);
         return prefs.contains(context.getString(R.string.pref_location_latitude))
                 && prefs.contains(context.getString(R.string.pref_location_longitude));
     }
 
     public static float getLocationLatitude(Context context) {
-        SharedPreferences prefs
-                = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences prefs = getPreferences(context);
         return prefs.getFloat(context.getString(R.string.pref_location_latitude),
                 DEFAULT_LATLONG);
     }
 
     public static float getLocationLongitude(Context context) {
-        SharedPreferences prefs
-                = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences prefs = getPreferences(context);
         return prefs.getFloat(context.getString(R.string.pref_location_longitude),
                 DEFAULT_LATLONG);
     }
 
+    /**
+     * How far a location picked on the map may be from one with fresh weather for that weather
+     * to be shown instead of fetching more, in metres.  0 if it mustn't be.
+     */
+    public static int getReuseRadiusMeters(Context context) {
+        SharedPreferences prefs = getPreferences(context);
+        return Integer.parseInt(prefs.getString(context.getString(R.string.pref_reuse_radius_key),
+                context.getString(R.string.pref_reuse_radius_5km)));
+    }
+
+    /**
+     * Whether weather last synced at the given time is recent enough that syncing again now
+     * would be wasted: the periodic sync wouldn't have come round yet.
+     *
+     * @param updated the location's LocationEntry.COLUMN_UPDATED
+     */
+    public static boolean isForecastFresh(long updated) {
+        return System.currentTimeMillis() - updated < SunshineSyncAdapter.SYNC_INTERVAL * 1000L;
+    }
+
     public static String getPreferredLocation(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences prefs = getPreferences(context);
         return prefs.getString(context.getString(R.string.pref_location_key),
                 context.getString(R.string.pref_location_default));
     }
 
     public static boolean isMetric(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences prefs = getPreferences(context);
         return prefs.getString(context.getString(R.string.pref_units_key),
                 context.getString(R.string.pref_units_metric))
                 .equals(context.getString(R.string.pref_units_metric));
@@ -103,28 +132,24 @@ public class Utility {
         // For the next 5 days: "Wednesday" (just the day name)
         // For all days after that: "Mon Jun 8"
 
-        Time time = new Time();
-        time.setToNow();
-        long currentTime = System.currentTimeMillis();
-        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
-        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+        DayLabels labels = DayLabels.getInstance();
+        int days = labels.getDaysFromNow(dateInMillis, System.currentTimeMillis());
 
         // If the date we're building the String for is today's date, the format
         // is "Today, June 24"
-        if (displayLongToday && julianDay == currentJulianDay) {
+        if (displayLongToday && days == 0) {
             String today = context.getString(R.string.today);
             int formatId = R.string.format_full_friendly_date;
             return String.format(context.getString(
                     formatId,
                     today,
-                    getFormattedMonthDay(context, dateInMillis)));
-        } else if ( julianDay < currentJulianDay + 7 ) {
+                    labels.formatMonthDay(dateInMillis)));
+        } else if ( days < 7 ) {
             // If the input date is less than a week in the future, just return the day name.
             return getDayName(context, dateInMillis);
         } else {
             // Otherwise, use the form "Mon Jun 3"
-            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
-            return shortenedDateFormat.format(dateInMillis);
+            return labels.formatShortDate(dateInMillis);
         }
     }
 
@@ -158,20 +183,15 @@ public class Utility {
         // If the date is today, return the localized version of "Today" instead of the actual
         // day name.
 
-        Time t = new Time();
-        t.setToNow();
-        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
-        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
-        if (julianDay == currentJulianDay) {
+        DayLabels labels = DayLabels.getInstance();
+        int days = labels.getDaysFromNow(dateInMillis, System.currentTimeMillis());
+        if (days == 0) {
             return context.getString(R.string.today);
-        } else if ( julianDay == currentJulianDay +1 ) {
+        } else if ( days == 1 ) {
             return context.getString(R.string.tomorrow);
         } else {
-            Time time = new Time();
-            time.setToNow();
             // Otherwise, the format is just the day of the week (e.g "Wednesday".
-            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
-            return dayFormat.format(dateInMillis);
+            return labels.formatDayName(dateInMillis);
         }
     }
 
@@ -183,12 +203,7 @@ public class Utility {
      * @return The day in the form of a string formatted "December 6"
      */
     public static String getFormattedMonthDay(Context context, long dateInMillis ) {
-        Time time = new Time();
-        time.setToNow();
-        SimpleDateFormat dbDateFormat = new SimpleDateFormat(Utility.DATE_FORMAT);
-        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
-        String monthDayString = monthDayFormat.format(dateInMillis);
-        return monthDayString;
+        return DayLabels.getInstance().formatMonthDay(dateInMillis);
     }
 
     public static String getFormattedWind(Context context, float windSpeed, float degrees) {
@@ -231,32 +246,27 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getIconResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
+        switch (WeatherConditions.getCondition(weatherId)) {
+            case WeatherConditions.STORM:
+                return R.drawable.ic_storm;
+            case WeatherConditions.LIGHT_RAIN:
+                return R.drawable.ic_light_rain;
+            case WeatherConditions.RAIN:
+            case WeatherConditions.SHOWER_RAIN:
+                return R.drawable.ic_rain;
+            case WeatherConditions.SNOW:
+                return R.drawable.ic_snow;
+            case WeatherConditions.FOG:
+                return R.drawable.ic_fog;
+            case WeatherConditions.CLEAR:
+                return R.drawable.ic_clear;
+            case WeatherConditions.LIGHT_CLOUDS:
+                return R.drawable.ic_light_clouds;
+            case WeatherConditions.CLOUDS:
+                return R.drawable.ic_cloudy;
+            default:
+                return -1;
         }
-        return -1;
     }
 
     /**
@@ -266,7 +276,7 @@ public class Utility {
      * @return true if Sunshine is using local graphics, false otherwise.
      */
     public static boolean usingLocalGraphics(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences prefs = getPreferences(context);
         String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
         return prefs.getString(context.getString(R.string.pref_art_pack_key),
                 sunshineArtPack).equals(sunshineArtPack);
@@ -281,36 +291,13 @@ public class Utility {
      * @return url for the corresponding weather artwork. null if no relation is found.
      */
     public static String getArtUrlForWeatherCondition(Context context, int weatherId) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences prefs = getPreferences(context);
         String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
                 context.getString(R.string.pref_art_pack_sunshine));
 
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return String.format(Locale.US, formatArtUrl, "storm");
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return String.format(Locale.US, formatArtUrl, "light_rain");
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return String.format(Locale.US, formatArtUrl, "rain");
-        } else if (weatherId == 511) {
-            return String.format(Locale.US, formatArtUrl, "snow");
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return String.format(Locale.US, formatArtUrl, "rain");
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return String.format(Locale.US, formatArtUrl, "snow");
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return String.format(Locale.US, formatArtUrl, "fog");
-        } else if (weatherId == 761 || weatherId == 781) {
-            return String.format(Locale.US, formatArtUrl, "storm");
-        } else if (weatherId == 800) {
-            return String.format(Locale.US, formatArtUrl, "clear");
-        } else if (weatherId == 801) {
-            return String.format(Locale.US, formatArtUrl, "light_clouds");
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return String.format(Locale.US, formatArtUrl, "clouds");
-        }
-        return null;
+        String artName = WeatherConditions.getArtName(
+                WeatherConditions.getCondition(weatherId));
+        return artName != null ? String.format(Locale.US, formatArtUrl, artName) : null;
     }
 
     /**
@@ -320,32 +307,27 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getArtResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
+        switch (WeatherConditions.getCondition(weatherId)) {
+            case WeatherConditions.STORM:
+                return R.drawable.art_storm;
+            case WeatherConditions.LIGHT_RAIN:
+                return R.drawable.art_light_rain;
+            case WeatherConditions.RAIN:
+            case WeatherConditions.SHOWER_RAIN:
+                return R.drawable.art_rain;
+            case WeatherConditions.SNOW:
+                return R.drawable.art_snow;
+            case WeatherConditions.FOG:
+                return R.drawable.art_fog;
+            case WeatherConditions.CLEAR:
+                return R.drawable.art_clear;
+            case WeatherConditions.LIGHT_CLOUDS:
+                return R.drawable.art_light_clouds;
+            case WeatherConditions.CLOUDS:
+                return R.drawable.art_clouds;
+            default:
+                return -1;
         }
-        return -1;
     }
 
     /**
@@ -585,7 +567,7 @@ public class Utility {
     @SuppressWarnings("ResourceType")
     static public @SunshineSyncAdapter.LocationStatus
     int getLocationStatus(Context c){
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        SharedPreferences sp = getPreferences(c);
         return sp.getInt(c.getString(R.string.pref_location_status_key), SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
     }
 
@@ -594,7 +576,7 @@ public class Utility {
      * @param c Context used to get the SharedPreferences
      */
     static public void resetLocationStatus(Context c){
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        SharedPreferences sp = getPreferences(c);
         SharedPreferences.Editor spe = sp.edit();
         spe.putInt(c.getString(R.string.pref_location_status_key), SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
         spe.apply();
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.example.android.sunshine.app.MemoryTracker;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The preferred location's forecast from today on, kept in memory for the whole process.  The
+ * widgets, the Muzei source, the wearable service and the sync's notification all read today's
+ * weather; rather than each querying the provider for it, they share one
+ * {@link ForecastSnapshot} that is read the first time somebody asks and dropped when the
+ * provider writes the location's weather.
+ *
+ * {@link #get()} reads the snapshot if there isn't a current one, so call it off the main
+ * thread.  Listeners are told on the main thread when a write changes the forecast, with the
+ * snapshot already read.
+ *
+ * The snapshot is the last thing the {@link MemoryTracker} frees, and only once the process is
+ * in the background; whatever asks next reads it again.
+ */
+public class ForecastRepository {
+
+    public interface Listener {
+        void onForecastChanged(ForecastSnapshot snapshot);
+    }
+
+    // Several months of forecast, with room to spare.
+    private static final long BUDGET_BYTES = 256 * 1024;
+
+    private static ForecastRepository sInstance;
+
+    private final Context mContext;
+    private final Handler mMainHandler;
+    private final Handler mRefreshHandler;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+
+    private volatile ForecastSnapshot mSnapshot;
+    // Bumped on every write to the forecast, so a read that overlapped one isn't kept.
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    // Held while reading, so components that ask at the same time share one query.
+    private final Object mLoadLock = new Object();
+
+    private final Runnable mRefresh = new Runnable() {
+        @Override
+        public void run() {
+            final ForecastSnapshot snapshot = get();
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (Listener listener : mListeners) {
+                        listener.onForecastChanged(snapshot);
+                    }
+                }
+            });
+        }
+    };
+
+    private ForecastRepository(Context context) {
+        mContext = context;
+        mMainHandler = new Handler(Looper.getMainLooper());
+        HandlerThread thread = new HandlerThread("ForecastRepository",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mRefreshHandler = new Handler(thread.getLooper());
+        MemoryTracker.getInstance(context).register(MemoryTracker.FORECAST, BUDGET_BYTES,
+                new MemoryTracker.Cache() {
+                    @Override
+                    public long getSizeBytes() {
+                        ForecastSnapshot snapshot = mSnapshot;
+                        return snapshot != null ? snapshot.getSizeBytes() : 0;
+                    }
+
+                    @Override
+                    public void trimMemory(int level) {
+                        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+                            mSnapshot = null;
+                        }
+                    }
+                });
+    }
+
+    public static synchronized ForecastRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /*
+        Called by the WeatherProvider for each weather URI it notifies, before the notification
+        goes out, so anything that reads the repository on hearing of a change reads the change.
+     */
+    static void onWeatherChanged(Uri uri) {
+        ForecastRepository repository;
+        synchronized (ForecastRepository.class) {
+            repository = sInstance;
+        }
+        if (repository != null) {
+            repository.invalidate(uri);
+        }
+    }
+
+    /**
+     * The preferred location's forecast from today on, read from the provider if the location,
+     * the date or the weather has changed since it was last read.  Blocks while reading.
+     */
+    public ForecastSnapshot get() {
+        String locationSetting = Utility.getPreferredLocation(mContext);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ForecastSnapshot snapshot = mSnapshot;
+        if (isCurrent(snapshot, locationSetting, today)) {
+            return snapshot;
+        }
+        synchronized (mLoadLock) {
+            snapshot = mSnapshot;
+            if (isCurrent(snapshot, locationSetting, today)) {
+                return snapshot;
+            }
+            int generation = mGeneration.get();
+            snapshot = load(locationSetting, today);
+            if (generation == mGeneration.get()) {
+                mSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * The snapshot last read, or null if there is none or it is out of date.  Doesn't block.
+     */
+    public ForecastSnapshot peek() {
+        ForecastSnapshot snapshot = mSnapshot;
+        if (isCurrent(snapshot, Utility.getPreferredLocation(mContext),
+                WeatherContract.normalizeDate(System.currentTimeMillis()))) {
+            return snapshot;
+        }
+        return null;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void invalidate(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.isEmpty() || !WeatherContract.PATH_WEATHER.equals(segments.get(0))) {
+            return;
+        }
+        // weather/<location>/... of another location leaves the forecast alone.
+        if (segments.size() > 1 &&
+                !segments.get(1).equals(Utility.getPreferredLocation(mContext))) {
+            return;
+        }
+        mGeneration.incrementAndGet();
+        mSnapshot = null;
+        if (!mListeners.isEmpty()) {
+            // A burst of writes is read once.
+            mRefreshHandler.removeCallbacks(mRefresh);
+            mRefreshHandler.post(mRefresh);
+        }
+    }
+
+    private ForecastSnapshot load(String locationSetting, long today) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(locationSetting, today),
+                ForecastSnapshot.COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return ForecastSnapshot.empty(locationSetting, today);
+        }
+        try {
+            return ForecastSnapshot.fromCursor(locationSetting, today, cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static boolean isCurrent(ForecastSnapshot snapshot, String locationSetting,
+                                     long today) {
+        return snapshot != null && snapshot.getStartDate() == today &&
+                snapshot.getLocationSetting().equals(locationSetting);
+    }
+}
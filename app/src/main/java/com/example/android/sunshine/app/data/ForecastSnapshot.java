@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A location's forecast from one date on, read out of a cursor once and held in one array per
+ * column, a row per day in date order.  A snapshot never changes after it is built, so it can be
+ * handed to any thread without copying; {@link ForecastRepository} hands out the same one to
+ * everything that asks until the weather changes.
+ *
+ * Reads are plain array loads, where a cursor goes through its CursorWindow (and on some paths
+ * JNI) for every value.  A forecast has a handful of distinct descriptions, so rows share one
+ * String per description, and a parceled snapshot writes each description once.
+ */
+public final class ForecastSnapshot implements Parcelable {
+    // The columns a snapshot is read from.
+    static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_SHORT_DESC = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+    private static final int INDEX_HUMIDITY = 5;
+    private static final int INDEX_PRESSURE = 6;
+    private static final int INDEX_WIND_SPEED = 7;
+    private static final int INDEX_DEGREES = 8;
+
+    private final String mLocationSetting;
+    private final long mStartDate;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final String[] mDescriptions;
+    private final float[] mHighs;
+    private final float[] mLows;
+    private final float[] mHumidity;
+    private final float[] mPressure;
+    private final float[] mWind;
+    private final float[] mDegrees;
+
+    private ForecastSnapshot(String locationSetting, long startDate, int size) {
+        mLocationSetting = locationSetting;
+        mStartDate = startDate;
+        mDates = new long[size];
+        mWeatherIds = new int[size];
+        mDescriptions = new String[size];
+        mHighs = new float[size];
+        mLows = new float[size];
+        mHumidity = new float[size];
+        mPressure = new float[size];
+        mWind = new float[size];
+        mDegrees = new float[size];
+    }
+
+    /**
+     * Reads every row of a cursor over {@link #COLUMNS}, in date order.  The cursor is left
+     * open.
+     *
+     * @param startDate the normalized date the cursor's rows start from
+     */
+    static ForecastSnapshot fromCursor(String locationSetting, long startDate, Cursor cursor) {
+        ForecastSnapshot snapshot = new ForecastSnapshot(locationSetting, startDate,
+                cursor.getCount());
+        Map<String, String> descriptions = new HashMap<String, String>();
+        cursor.moveToPosition(-1);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            snapshot.mDates[i] = cursor.getLong(INDEX_DATE);
+            snapshot.mWeatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+            String description = cursor.getString(INDEX_SHORT_DESC);
+            String shared = descriptions.get(description);
+            if (shared == null) {
+                descriptions.put(description, description);
+                shared = description;
+            }
+            snapshot.mDescriptions[i] = shared;
+            snapshot.mHighs[i] = cursor.getFloat(INDEX_MAX_TEMP);
+            snapshot.mLows[i] = cursor.getFloat(INDEX_MIN_TEMP);
+            snapshot.mHumidity[i] = cursor.getFloat(INDEX_HUMIDITY);
+            snapshot.mPressure[i] = cursor.getFloat(INDEX_PRESSURE);
+            snapshot.mWind[i] = cursor.getFloat(INDEX_WIND_SPEED);
+            snapshot.mDegrees[i] = cursor.getFloat(INDEX_DEGREES);
+        }
+        return snapshot;
+    }
+
+    private ForecastSnapshot(Parcel in) {
+        mLocationSetting = in.readString();
+        mStartDate = in.readLong();
+        mDates = in.createLongArray();
+        mWeatherIds = in.createIntArray();
+        mHighs = in.createFloatArray();
+        mLows = in.createFloatArray();
+        mHumidity = in.createFloatArray();
+        mPressure = in.createFloatArray();
+        mWind = in.createFloatArray();
+        mDegrees = in.createFloatArray();
+        String[] distinct = in.createStringArray();
+        int[] descriptionIndices = in.createIntArray();
+        mDescriptions = new String[descriptionIndices.length];
+        for (int i = 0; i < descriptionIndices.length; i++) {
+            mDescriptions[i] = distinct[descriptionIndices[i]];
+        }
+    }
+
+    static ForecastSnapshot empty(String locationSetting, long startDate) {
+        return new ForecastSnapshot(locationSetting, startDate, 0);
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    /**
+     * The normalized date the snapshot was read from; its first day may be later.
+     */
+    public long getStartDate() {
+        return mStartDate;
+    }
+
+    public int size() {
+        return mDates.length;
+    }
+
+    public boolean isEmpty() {
+        return mDates.length == 0;
+    }
+
+    /**
+     * Roughly what the snapshot takes on the heap: a row's values and a reference to its
+     * description, and each distinct description once.
+     */
+    public long getSizeBytes() {
+        // A long, an int, seven floats and a reference.
+        long bytes = mDates.length * 44L;
+        Set<String> distinct = new HashSet<String>();
+        for (String description : mDescriptions) {
+            if (description != null && distinct.add(description)) {
+                // The String and its char array, with their headers.
+                bytes += 40 + 2L * description.length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * The row of a normalized date, or a negative number if there is no forecast for it.
+     */
+    public int indexOfDate(long date) {
+        return Arrays.binarySearch(mDates, date);
+    }
+
+    public long getDate(int position) {
+        return mDates[position];
+    }
+
+    public int getWeatherId(int position) {
+        return mWeatherIds[position];
+    }
+
+    public String getDescription(int position) {
+        return mDescriptions[position];
+    }
+
+    public float getHigh(int position) {
+        return mHighs[position];
+    }
+
+    public float getLow(int position) {
+        return mLows[position];
+    }
+
+    public float getHumidity(int position) {
+        return mHumidity[position];
+    }
+
+    public float getPressure(int position) {
+        return mPressure[position];
+    }
+
+    public float getWindSpeed(int position) {
+        return mWind[position];
+    }
+
+    public float getDegrees(int position) {
+        return mDegrees[position];
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(mLocationSetting);
+        dest.writeLong(mStartDate);
+        dest.writeLongArray(mDates);
+        dest.writeIntArray(mWeatherIds);
+        dest.writeFloatArray(mHighs);
+        dest.writeFloatArray(mLows);
+        dest.writeFloatArray(mHumidity);
+        dest.writeFloatArray(mPressure);
+        dest.writeFloatArray(mWind);
+        dest.writeFloatArray(mDegrees);
+        // Each distinct description once, then the one each row has.
+        List<String> distinct = new ArrayList<String>();
+        Map<String, Integer> indices = new HashMap<String, Integer>();
+        int[] descriptionIndices = new int[mDescriptions.length];
+        for (int i = 0; i < mDescriptions.length; i++) {
+            Integer index = indices.get(mDescriptions[i]);
+            if (index == null) {
+                index = distinct.size();
+                indices.put(mDescriptions[i], index);
+                distinct.add(mDescriptions[i]);
+            }
+            descriptionIndices[i] = index;
+        }
+        dest.writeStringArray(distinct.toArray(new String[distinct.size()]));
+        dest.writeIntArray(descriptionIndices);
+    }
+
+    public static final Parcelable.Creator<ForecastSnapshot> CREATOR =
+            new Parcelable.Creator<ForecastSnapshot>() {
+                @Override
+                public ForecastSnapshot createFromParcel(Parcel in) {
+                    return new ForecastSnapshot(in);
+                }
+
+                @Override
+                public ForecastSnapshot[] newArray(int size) {
+                    return new ForecastSnapshot[size];
+                }
+            };
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohashes: a point's cell in a grid that halves in longitude and latitude in turn, written five
+ * halvings to a character.  Points in a cell share its hash as a prefix, so the locations in a
+ * cell are a single range of an index over the column, at any size of cell.
+ */
+class Geohash {
+    // Stored hashes are cells about five metres across.
+    static final int PRECISION = 9;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int BITS_PER_CHAR = 5;
+    private static final double EARTH_RADIUS_METERS = 6371000;
+
+    private Geohash() {
+    }
+
+    static String encode(double lat, double lon) {
+        return encode(lat, lon, PRECISION);
+    }
+
+    static String encode(double lat, double lon, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        char[] hash = new char[precision];
+        boolean even = true;
+        for (int i = 0; i < precision; i++) {
+            int ch = 0;
+            for (int bit = 0; bit < BITS_PER_CHAR; bit++) {
+                ch <<= 1;
+                if (even) {
+                    double mid = (minLon + maxLon) / 2;
+                    if (lon >= mid) {
+                        ch |= 1;
+                        minLon = mid;
+                    } else {
+                        maxLon = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (lat >= mid) {
+                        ch |= 1;
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                even = !even;
+            }
+            hash[i] = BASE32[ch];
+        }
+        return new String(hash);
+    }
+
+    /**
+     * Height of a cell in degrees of latitude.
+     */
+    static double getCellHeight(int precision) {
+        return 180 / Math.pow(2, precision * BITS_PER_CHAR / 2);
+    }
+
+    /**
+     * Width of a cell in degrees of longitude.  Longitude gets the odd bit.
+     */
+    static double getCellWidth(int precision) {
+        return 360 / Math.pow(2, (precision * BITS_PER_CHAR + 1) / 2);
+    }
+
+    /**
+     * The longest precision whose cells are at least as high and wide as everything within
+     * radiusMeters of a point at lat spans, so that all of it is in the point's cell or one of
+     * the eight around it.  0 if even the largest cells aren't big enough: the whole world is one
+     * cell.
+     */
+    static int getPrecision(double radiusMeters, double lat) {
+        double angle = radiusMeters / EARTH_RADIUS_METERS;
+        double latSpan = Math.toDegrees(angle);
+        // The widest a circle of that radius gets, in longitude, is at its tangents to
+        // meridians.  If it reaches over a pole, it spans every longitude.
+        double sinLonSpan = Math.sin(angle) / Math.cos(Math.toRadians(lat));
+        if (angle >= Math.PI / 2 || sinLonSpan >= 1) {
+            return 0;
+        }
+        double lonSpan = Math.toDegrees(Math.asin(sinLonSpan));
+        for (int precision = PRECISION; precision > 0; precision--) {
+            if (getCellHeight(precision) >= latSpan && getCellWidth(precision) >= lonSpan) {
+                return precision;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The hashes of the cell the point is in and the cells around it, without duplicates.  Near
+     * a pole there are fewer; across the antimeridian, longitude wraps.
+     */
+    static Set<String> getCellsAround(double lat, double lon, int precision) {
+        Set<String> cells = new LinkedHashSet<String>();
+        if (precision == 0) {
+            cells.add("");
+            return cells;
+        }
+        double height = getCellHeight(precision);
+        double width = getCellWidth(precision);
+        for (int dLat = -1; dLat <= 1; dLat++) {
+            double cellLat = lat + dLat * height;
+            if (cellLat < -90 || cellLat > 90) {
+                continue;
+            }
+            for (int dLon = -1; dLon <= 1; dLon++) {
+                double cellLon = lon + dLon * width;
+                if (cellLon < -180) {
+                    cellLon += 360;
+                } else if (cellLon >= 180) {
+                    cellLon -= 360;
+                }
+                cells.add(encode(cellLat, cellLon, precision));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Great circle distance between two points, in metres.
+     */
+    static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
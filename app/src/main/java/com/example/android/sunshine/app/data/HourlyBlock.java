@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * One location's hourly (or 3-hourly) forecast for one day, packed into a single blob for the
+ * hourly table.  A week of hourly data is then 7 rows per location instead of 168, and a range
+ * query reads a handful of small blobs instead of walking an index over every hour.
+ *
+ * Each sample is stored as its offset from the start of the day in seconds, followed by the
+ * temperature, weather id, humidity, pressure, wind speed and direction.  Samples are kept sorted
+ * by time, and putting a sample for a time that's already there replaces it.
+ */
+class HourlyBlock {
+    private static final byte FORMAT_VERSION = 1;
+    // version byte + sample count
+    private static final int HEADER_BYTES = 1 + 2;
+    // offset, temp, weather id, humidity, pressure, wind speed, degrees
+    static final int SAMPLE_BYTES = 4 + 4 + 2 + 4 + 4 + 4 + 4;
+
+    private final long mDayStart;
+    private int mCount;
+    private int[] mOffsets;
+    private float[] mTemps;
+    private short[] mWeatherIds;
+    private float[] mHumidity;
+    private float[] mPressure;
+    private float[] mWindSpeed;
+    private float[] mDegrees;
+
+    HourlyBlock(long dayStart) {
+        this(dayStart, 8);
+    }
+
+    private HourlyBlock(long dayStart, int capacity) {
+        mDayStart = dayStart;
+        allocate(Math.max(capacity, 1));
+    }
+
+    /**
+     * Reads a blob written by {@link #pack()}.
+     *
+     * @throws IllegalArgumentException if the blob isn't in a format we know.
+     */
+    static HourlyBlock unpack(long dayStart, byte[] blob) {
+        ByteBuffer buffer = ByteBuffer.wrap(blob);
+        if (blob.length < HEADER_BYTES || buffer.get() != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unknown hourly block format");
+        }
+        int count = buffer.getShort();
+        if (blob.length != HEADER_BYTES + count * SAMPLE_BYTES) {
+            throw new IllegalArgumentException("Truncated hourly block");
+        }
+        HourlyBlock block = new HourlyBlock(dayStart, count);
+        for (int i = 0; i < count; i++) {
+            block.mOffsets[i] = buffer.getInt();
+            block.mTemps[i] = buffer.getFloat();
+            block.mWeatherIds[i] = buffer.getShort();
+            block.mHumidity[i] = buffer.getFloat();
+            block.mPressure[i] = buffer.getFloat();
+            block.mWindSpeed[i] = buffer.getFloat();
+            block.mDegrees[i] = buffer.getFloat();
+        }
+        block.mCount = count;
+        return block;
+    }
+
+    byte[] pack() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + mCount * SAMPLE_BYTES);
+        buffer.put(FORMAT_VERSION);
+        buffer.putShort((short) mCount);
+        for (int i = 0; i < mCount; i++) {
+            buffer.putInt(mOffsets[i]);
+            buffer.putFloat(mTemps[i]);
+            buffer.putShort(mWeatherIds[i]);
+            buffer.putFloat(mHumidity[i]);
+            buffer.putFloat(mPressure[i]);
+            buffer.putFloat(mWindSpeed[i]);
+            buffer.putFloat(mDegrees[i]);
+        }
+        return buffer.array();
+    }
+
+    void put(long time, float temp, int weatherId, float humidity, float pressure,
+             float windSpeed, float degrees) {
+        int offset = (int) ((time - mDayStart) / 1000);
+        int index = Arrays.binarySearch(mOffsets, 0, mCount, offset);
+        if (index < 0) {
+            index = -index - 1;
+            if (mCount == mOffsets.length) {
+                grow();
+            }
+            int tail = mCount - index;
+            System.arraycopy(mOffsets, index, mOffsets, index + 1, tail);
+            System.arraycopy(mTemps, index, mTemps, index + 1, tail);
+            System.arraycopy(mWeatherIds, index, mWeatherIds, index + 1, tail);
+            System.arraycopy(mHumidity, index, mHumidity, index + 1, tail);
+            System.arraycopy(mPressure, index, mPressure, index + 1, tail);
+            System.arraycopy(mWindSpeed, index, mWindSpeed, index + 1, tail);
+            System.arraycopy(mDegrees, index, mDegrees, index + 1, tail);
+            mCount++;
+        }
+        mOffsets[index] = offset;
+        mTemps[index] = temp;
+        mWeatherIds[index] = (short) weatherId;
+        mHumidity[index] = humidity;
+        mPressure[index] = pressure;
+        mWindSpeed[index] = windSpeed;
+        mDegrees[index] = degrees;
+    }
+
+    long getDayStart() {
+        return mDayStart;
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    long getTime(int i) {
+        return mDayStart + mOffsets[i] * 1000L;
+    }
+
+    float getTemp(int i) {
+        return mTemps[i];
+    }
+
+    int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    float getHumidity(int i) {
+        return mHumidity[i];
+    }
+
+    float getPressure(int i) {
+        return mPressure[i];
+    }
+
+    float getWindSpeed(int i) {
+        return mWindSpeed[i];
+    }
+
+    float getDegrees(int i) {
+        return mDegrees[i];
+    }
+
+    private void allocate(int capacity) {
+        mOffsets = new int[capacity];
+        mTemps = new float[capacity];
+        mWeatherIds = new short[capacity];
+        mHumidity = new float[capacity];
+        mPressure = new float[capacity];
+        mWindSpeed = new float[capacity];
+        mDegrees = new float[capacity];
+    }
+
+    private void grow() {
+        int capacity = mOffsets.length * 2;
+        mOffsets = Arrays.copyOf(mOffsets, capacity);
+        mTemps = Arrays.copyOf(mTemps, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mHumidity = Arrays.copyOf(mHumidity, capacity);
+        mPressure = Arrays.copyOf(mPressure, capacity);
+        mWindSpeed = Arrays.copyOf(mWindSpeed, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+}
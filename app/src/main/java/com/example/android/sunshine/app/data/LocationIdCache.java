@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves location settings to location row ids, remembering the answer so that a sync doesn't
+ * have to query the location table every time.  The WeatherProvider owns the only instance and
+ * keeps it coherent: inserts add to it, and any update or delete of the location table
+ * invalidates it.
+ */
+class LocationIdCache {
+    private final HashMap<String, Long> mIds = new HashMap<String, Long>();
+
+    synchronized void put(String locationSetting, long id) {
+        mIds.put(locationSetting, id);
+    }
+
+    synchronized void invalidate() {
+        mIds.clear();
+    }
+
+    /**
+     * Returns the row id for the location setting, inserting and indexing a new location row if
+     * there is none.
+     * Should be called inside the caller's transaction so the location and whatever references
+     * it are committed together.
+     *
+     * @param db a writable database
+     * @param locationValues the location columns to use if a new row needs to be inserted.  Must
+     *                       contain COLUMN_LOCATION_SETTING.
+     * @return the row id, or -1 if the insert failed.
+     */
+    long resolve(SQLiteDatabase db, ContentValues locationValues) {
+        String locationSetting = locationValues.getAsString(LocationEntry.COLUMN_LOCATION_SETTING);
+        long id = find(db, locationSetting);
+        if (id == -1) {
+            id = db.insert(LocationEntry.TABLE_NAME, null, locationValues);
+            if (id != -1) {
+                LocationIndex.add(db, id, locationValues);
+                put(locationSetting, id);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Returns the row id for the location setting, or -1 if there's no such location.
+     */
+    long find(SQLiteDatabase db, String locationSetting) {
+        synchronized (this) {
+            Long cached = mIds.get(locationSetting);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long id = -1;
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                id = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        if (id != -1) {
+            put(locationSetting, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the location setting of a location row id, or null if there's no such location.
+     */
+    String findSetting(SQLiteDatabase db, long id) {
+        synchronized (this) {
+            for (Map.Entry<String, Long> entry : mIds.entrySet()) {
+                if (entry.getValue() == id) {
+                    return entry.getKey();
+                }
+            }
+        }
+
+        String locationSetting = null;
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING},
+                LocationEntry._ID + " = ?",
+                new String[]{Long.toString(id)},
+                null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                locationSetting = cursor.getString(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        if (locationSetting != null) {
+            put(locationSetting, id);
+        }
+        return locationSetting;
+    }
+}
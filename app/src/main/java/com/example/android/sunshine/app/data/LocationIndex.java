@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationAliasEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Finds stored locations from what the user typed or picked, so that a location we already have
+ * weather for is recognised without asking the server.  Typed text is matched on normalized keys
+ * (see {@link #normalize}), points on the grid cell they fall in, and suggestions come from key
+ * prefixes and the full text index of city names.  Locations near a point are found by the
+ * geohash cells around it (see {@link Geohash}).
+ *
+ * The WeatherProvider calls this from inside the transaction that inserts a location; triggers
+ * take care of the full text index and of removing aliases.
+ */
+class LocationIndex {
+    private static final String GRID_PREFIX = "geo:";
+
+    // The exact-match aliases of a key, settings first.
+    private static final String sResolveSelection =
+            LocationAliasEntry.COLUMN_KEY + " = ? AND " +
+                    LocationAliasEntry.COLUMN_KIND + " != " + LocationAliasEntry.KIND_GRID;
+
+    // Locations with a text alias in [?, ?), or a city name the full text query matches.
+    private static final String sSuggestSelection = LocationEntry._ID + " IN (" +
+            "SELECT " + LocationAliasEntry.COLUMN_LOC_KEY + " FROM " + LocationAliasEntry.TABLE_NAME +
+            " WHERE " + LocationAliasEntry.COLUMN_KIND + " != " + LocationAliasEntry.KIND_GRID +
+            " AND " + LocationAliasEntry.COLUMN_KEY + " >= ? AND " +
+            LocationAliasEntry.COLUMN_KEY + " < ?" +
+            " UNION SELECT docid FROM " + LocationEntry.FTS_TABLE_NAME +
+            " WHERE " + LocationEntry.FTS_TABLE_NAME + " MATCH ?)";
+
+    private static class Nearby {
+        final long id;
+        final double distance;
+
+        Nearby(long id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+    }
+
+    private LocationIndex() {
+    }
+
+    /**
+     * Lower case, without accents, with every run of anything but letters and digits made a
+     * single space: "  Z&uuml;rich,CH" and "zurich ch" are the same key.
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder key = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && key.length() > 0) {
+                    key.append(' ');
+                }
+                key.append(c);
+                space = false;
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                space = true;
+            }
+        }
+        return key.toString().toLowerCase(Locale.US);
+    }
+
+    static long getCell(double degrees) {
+        return Math.round(degrees / LocationAliasEntry.GRID_DEGREES);
+    }
+
+    static String getGridKey(long latCell, long lonCell) {
+        return GRID_PREFIX + latCell + ',' + lonCell;
+    }
+
+    /**
+     * Adds the geohash of a location's coordinates to its columns, before it's written.
+     */
+    static void putGeohash(ContentValues location) {
+        Double lat = location.getAsDouble(LocationEntry.COLUMN_COORD_LAT);
+        Double lon = location.getAsDouble(LocationEntry.COLUMN_COORD_LONG);
+        if (lat != null && lon != null) {
+            location.put(LocationEntry.COLUMN_GEOHASH, Geohash.encode(lat, lon));
+        }
+    }
+
+    /**
+     * Writes the aliases of a location, replacing any it had.
+     *
+     * @param location the location's columns; the setting and city name are required
+     */
+    static void add(SQLiteDatabase db, long locationId, ContentValues location) {
+        ContentValues alias = new ContentValues();
+        putAlias(db, alias, locationId, LocationAliasEntry.KIND_SETTING,
+                normalize(location.getAsString(LocationEntry.COLUMN_LOCATION_SETTING)));
+        putAlias(db, alias, locationId, LocationAliasEntry.KIND_CITY,
+                normalize(location.getAsString(LocationEntry.COLUMN_CITY_NAME)));
+        Double lat = location.getAsDouble(LocationEntry.COLUMN_COORD_LAT);
+        Double lon = location.getAsDouble(LocationEntry.COLUMN_COORD_LONG);
+        if (lat != null && lon != null) {
+            putAlias(db, alias, locationId, LocationAliasEntry.KIND_GRID,
+                    getGridKey(getCell(lat), getCell(lon)));
+        }
+    }
+
+    private static void putAlias(SQLiteDatabase db, ContentValues alias, long locationId,
+                                 int kind, String key) {
+        if (key.length() == 0) {
+            return;
+        }
+        alias.put(LocationAliasEntry.COLUMN_LOC_KEY, locationId);
+        alias.put(LocationAliasEntry.COLUMN_KIND, kind);
+        alias.put(LocationAliasEntry.COLUMN_KEY, key);
+        db.insert(LocationAliasEntry.TABLE_NAME, null, alias);
+    }
+
+    /**
+     * Whether an update with these values changes what a location is indexed by: its setting,
+     * city name or coordinates.
+     */
+    static boolean isIndexed(ContentValues values) {
+        return values.containsKey(LocationEntry.COLUMN_LOCATION_SETTING) ||
+                values.containsKey(LocationEntry.COLUMN_CITY_NAME) ||
+                values.containsKey(LocationEntry.COLUMN_COORD_LAT) ||
+                values.containsKey(LocationEntry.COLUMN_COORD_LONG);
+    }
+
+    /**
+     * Writes every location's aliases and geohash again.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.delete(LocationAliasEntry.TABLE_NAME, null, null);
+        reindex(db, null, null);
+    }
+
+    /**
+     * Writes the aliases and geohash of some locations again, for after they're updated.
+     */
+    static void rebuild(SQLiteDatabase db, Set<Long> locationIds) {
+        for (long locationId : locationIds) {
+            String[] args = {Long.toString(locationId)};
+            db.delete(LocationAliasEntry.TABLE_NAME, LocationAliasEntry.COLUMN_LOC_KEY + " = ?",
+                    args);
+            reindex(db, LocationEntry._ID + " = ?", args);
+        }
+    }
+
+    private static void reindex(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        ContentValues geohash = new ContentValues();
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, new String[]{
+                        LocationEntry._ID,
+                        LocationEntry.COLUMN_LOCATION_SETTING,
+                        LocationEntry.COLUMN_CITY_NAME,
+                        LocationEntry.COLUMN_COORD_LAT,
+                        LocationEntry.COLUMN_COORD_LONG},
+                selection, selectionArgs, null, null, null);
+        try {
+            ContentValues location = new ContentValues();
+            while (cursor.moveToNext()) {
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, cursor.getString(1));
+                location.put(LocationEntry.COLUMN_CITY_NAME, cursor.getString(2));
+                location.put(LocationEntry.COLUMN_COORD_LAT, cursor.getDouble(3));
+                location.put(LocationEntry.COLUMN_COORD_LONG, cursor.getDouble(4));
+                add(db, cursor.getLong(0), location);
+                geohash.put(LocationEntry.COLUMN_GEOHASH,
+                        Geohash.encode(cursor.getDouble(3), cursor.getDouble(4)));
+                db.update(LocationEntry.TABLE_NAME, geohash, LocationEntry._ID + " = ?",
+                        new String[]{Long.toString(cursor.getLong(0))});
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the row id of the location the text means, or -1.  A location setting wins over
+     * a city name; a city name more than one location has means none of them.
+     */
+    static long resolve(SQLiteDatabase db, String text) {
+        String key = normalize(text);
+        if (key.length() == 0) {
+            return -1;
+        }
+        Cursor cursor = db.query(LocationAliasEntry.TABLE_NAME,
+                new String[]{LocationAliasEntry.COLUMN_LOC_KEY, LocationAliasEntry.COLUMN_KIND},
+                sResolveSelection, new String[]{key},
+                null, null, LocationAliasEntry.COLUMN_KIND + " ASC");
+        try {
+            if (!cursor.moveToFirst()) {
+                return -1;
+            }
+            long id = cursor.getLong(0);
+            if (cursor.getInt(1) == LocationAliasEntry.KIND_SETTING) {
+                return id;
+            }
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(0) != id) {
+                    return -1;
+                }
+            }
+            return id;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the row id of the location nearest the point that is at most a grid cell from it
+     * in each direction, or -1.  Those are all in the point's cell or the eight around it.
+     */
+    static long resolve(SQLiteDatabase db, double lat, double lon) {
+        long latCell = getCell(lat);
+        long lonCell = getCell(lon);
+        String[] keys = new String[9];
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = getGridKey(latCell + i / 3 - 1, lonCell + i % 3 - 1);
+            in.append(i == 0 ? "?" : ", ?");
+        }
+
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, new String[]{
+                        LocationEntry._ID,
+                        LocationEntry.COLUMN_COORD_LAT,
+                        LocationEntry.COLUMN_COORD_LONG},
+                LocationEntry._ID + " IN (SELECT " + LocationAliasEntry.COLUMN_LOC_KEY +
+                        " FROM " + LocationAliasEntry.TABLE_NAME + " WHERE " +
+                        LocationAliasEntry.COLUMN_KEY + " IN (" + in + "))",
+                keys, null, null, null);
+        try {
+            // A degree of longitude shrinks away from the equator.
+            double lonScale = Math.cos(Math.toRadians(lat));
+            long nearest = -1;
+            double nearestDistance = Double.MAX_VALUE;
+            while (cursor.moveToNext()) {
+                double dLat = cursor.getDouble(1) - lat;
+                double dLon = cursor.getDouble(2) - lon;
+                if (Math.abs(dLat) > LocationAliasEntry.GRID_DEGREES ||
+                        Math.abs(dLon) > LocationAliasEntry.GRID_DEGREES) {
+                    continue;
+                }
+                double distance = dLat * dLat + dLon * dLon * lonScale * lonScale;
+                if (distance < nearestDistance) {
+                    nearest = cursor.getLong(0);
+                    nearestDistance = distance;
+                }
+            }
+            return nearest;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Queries the locations to suggest for what has been typed so far, by city name.
+     */
+    static Cursor suggest(SQLiteDatabase db, String[] projection, String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.length() == 0) {
+            return db.query(LocationEntry.TABLE_NAME, projection, "0", null,
+                    null, null, null);
+        }
+        // Every word of the prefix must start a word of the city name.
+        StringBuilder match = new StringBuilder();
+        for (String word : key.split(" ")) {
+            match.append(match.length() == 0 ? "" : " ").append(word).append('*');
+        }
+        return db.query(LocationEntry.TABLE_NAME, projection, sSuggestSelection,
+                new String[]{key, key + '\uffff', match.toString()},
+                null, null, LocationEntry.COLUMN_CITY_NAME + " ASC", Integer.toString(limit));
+    }
+
+    /**
+     * Queries at most limit locations within radiusMeters of a point, nearest first.  The
+     * projection may include LocationEntry.COLUMN_DISTANCE.
+     *
+     * Only the geohash cells around the point are read, each a range of the index, and the
+     * candidates in them measured; the rows themselves are then read by id.
+     */
+    static Cursor near(SQLiteDatabase db, String[] projection, double lat, double lon,
+                       double radiusMeters, int limit) {
+        Set<String> cells = Geohash.getCellsAround(lat, lon,
+                Geohash.getPrecision(radiusMeters, lat));
+        StringBuilder selection = new StringBuilder();
+        String[] selectionArgs = new String[cells.size() * 2];
+        int arg = 0;
+        for (String cell : cells) {
+            if (selection.length() > 0) {
+                selection.append(" OR ");
+            }
+            selection.append('(').append(LocationEntry.COLUMN_GEOHASH).append(" >= ? AND ")
+                    .append(LocationEntry.COLUMN_GEOHASH).append(" < ?)");
+            selectionArgs[arg++] = cell;
+            selectionArgs[arg++] = cell + '\uffff';
+        }
+
+        List<Nearby> found = new ArrayList<Nearby>();
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, new String[]{
+                        LocationEntry._ID,
+                        LocationEntry.COLUMN_COORD_LAT,
+                        LocationEntry.COLUMN_COORD_LONG},
+                selection.toString(), selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                double distance = Geohash.distance(lat, lon,
+                        cursor.getDouble(1), cursor.getDouble(2));
+                if (distance <= radiusMeters) {
+                    found.add(new Nearby(cursor.getLong(0), distance));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (found.isEmpty()) {
+            return db.query(LocationEntry.TABLE_NAME, projection, "0", null, null, null, null);
+        }
+        Collections.sort(found, new Comparator<Nearby>() {
+            @Override
+            public int compare(Nearby lhs, Nearby rhs) {
+                return Double.compare(lhs.distance, rhs.distance);
+            }
+        });
+
+        // Read the nearest by id, in order, with their distances.
+        int count = Math.min(limit, found.size());
+        StringBuilder ids = new StringBuilder();
+        StringBuilder order = new StringBuilder("CASE " + LocationEntry._ID);
+        StringBuilder distance = new StringBuilder("CASE " + LocationEntry._ID);
+        for (int i = 0; i < count; i++) {
+            Nearby nearby = found.get(i);
+            ids.append(i == 0 ? "" : ", ").append(nearby.id);
+            order.append(" WHEN ").append(nearby.id).append(" THEN ").append(i);
+            distance.append(" WHEN ").append(nearby.id).append(" THEN ")
+                    .append(nearby.distance);
+        }
+        order.append(" END");
+        distance.append(" END AS ").append(LocationEntry.COLUMN_DISTANCE);
+
+        String[] columns = projection;
+        if (projection != null) {
+            columns = projection.clone();
+            for (int i = 0; i < columns.length; i++) {
+                if (LocationEntry.COLUMN_DISTANCE.equals(columns[i])) {
+                    columns[i] = distance.toString();
+                }
+            }
+        }
+        return db.query(LocationEntry.TABLE_NAME, columns,
+                LocationEntry._ID + " IN (" + ids + ")", null, null, null, order.toString());
+    }
+}
@@ -19,7 +19,10 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+
+import com.example.android.sunshine.core.Days;
+
+import java.util.TimeZone;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +46,22 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_HOURLY = "hourly";
+    public static final String PATH_SUMMARY = "summary";
+    public static final String PATH_DATABASE = "database";
+    public static final String PATH_PRESENTATION = "presentation";
+
+    // Not backed by a table: notified when something changes how weather is shown (units, the
+    // art pack) but not the weather itself, so observers can redraw from the rows they already
+    // have instead of querying them again.
+    public static final Uri PRESENTATION_URI =
+            BASE_CONTENT_URI.buildUpon().appendPath(PATH_PRESENTATION).build();
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        // normalize the start date to the beginning of the (local) day
+        return Days.normalizeDate(startDate, TimeZone.getDefault());
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -81,9 +91,139 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // How many days of past weather to keep for this location, stored as an int.  Weather
+        // from before today minus this many days is removed by the retention pass (see
+        // DatabaseEntry.buildExpiredUri).  Defaults to 0: only today onwards is kept.
+        public static final String COLUMN_HISTORY_DAYS = "history_days";
+
+        // The geohash of the coordinates (see Geohash), kept by the provider.  Locations near
+        // each other share a prefix, so the index over it finds them by range.
+        public static final String COLUMN_GEOHASH = "geohash";
+        public static final String INDEX_GEOHASH = "location_geohash";
+
+        // When weather for the location was last written by a sync, in milliseconds since the
+        // epoch, or 0 if never.  Tells whether its forecast is fresh enough to reuse.
+        public static final String COLUMN_UPDATED = "updated";
+
+        // Distance in metres from the point a near URI asks about.  Not stored; only cursors
+        // from those URIs have it.
+        public static final String COLUMN_DISTANCE = "distance";
+
+        // Full text index over the city names, kept in step with this table by triggers.  Its
+        // docids are the location row ids.
+        public static final String FTS_TABLE_NAME = "location_fts";
+
+        // Path segments of the resolve, suggest and near URIs, and their query parameters
+        public static final String PATH_RESOLVE = "resolve";
+        public static final String PATH_SUGGEST = "suggest";
+        public static final String PATH_NEAR = "near";
+        public static final String PARAM_QUERY = "q";
+        public static final String PARAM_LAT = "lat";
+        public static final String PARAM_LON = "lon";
+        public static final String PARAM_LIMIT = "limit";
+        public static final String PARAM_RADIUS = "radius";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /**
+         * Builds a URI for the stored location a typed location means, if there is one: the
+         * text is matched against location settings and city names, ignoring case, accents,
+         * punctuation and spacing.  A city name shared by several locations matches none.
+         */
+        public static Uri buildLocationResolveUri(String query) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_RESOLVE)
+                    .appendQueryParameter(PARAM_QUERY, query).build();
+        }
+
+        /**
+         * Builds a URI for the stored location nearest a point, if one lies within a grid cell
+         * of it (see LocationAliasEntry.GRID_DEGREES).
+         */
+        public static Uri buildLocationResolveUri(double lat, double lon) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_RESOLVE)
+                    .appendQueryParameter(PARAM_LAT, Double.toString(lat))
+                    .appendQueryParameter(PARAM_LON, Double.toString(lon)).build();
+        }
+
+        /**
+         * Builds a URI for at most limit stored locations, by city name, whose setting or city
+         * name starts with the prefix, or with a word in the city name starting with each word
+         * of it.
+         */
+        public static Uri buildLocationSuggestUri(String prefix, int limit) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SUGGEST)
+                    .appendQueryParameter(PARAM_QUERY, prefix)
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        /**
+         * Builds a URI for at most limit stored locations within radiusMeters of a point,
+         * nearest first.  Cursors from it can have COLUMN_DISTANCE.
+         */
+        public static Uri buildLocationNearUri(double lat, double lon, double radiusMeters,
+                                               int limit) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAR)
+                    .appendQueryParameter(PARAM_LAT, Double.toString(lat))
+                    .appendQueryParameter(PARAM_LON, Double.toString(lon))
+                    .appendQueryParameter(PARAM_RADIUS, Double.toString(radiusMeters))
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        public static double getRadiusFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_RADIUS));
+        }
+
+        public static String getQueryFromUri(Uri uri) {
+            String query = uri.getQueryParameter(PARAM_QUERY);
+            return query != null ? query : "";
+        }
+
+        public static boolean hasCoordinatesInUri(Uri uri) {
+            return uri.getQueryParameter(PARAM_LAT) != null
+                    && uri.getQueryParameter(PARAM_LON) != null;
+        }
+
+        public static double getLatFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_LAT));
+        }
+
+        public static double getLonFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_LON));
+        }
+
+        public static int getLimitFromUri(Uri uri) {
+            return Integer.parseInt(uri.getQueryParameter(PARAM_LIMIT));
+        }
+    }
+
+    /*
+        Inner class that defines the location alias table: the normalized keys a location can be
+        found by without going to the network.  Each location has one alias of each kind: its
+        location setting, its city name, and the grid cell its coordinates fall in.  The provider
+        writes them when a location is inserted; a trigger removes them with the location.
+     */
+    public static final class LocationAliasEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "location_alias";
+        // Index over the keys, for exact and prefix lookups
+        public static final String INDEX_KEY = "location_alias_key";
+
+        // Kinds of alias
+        public static final int KIND_SETTING = 0;
+        public static final int KIND_CITY = 1;
+        public static final int KIND_GRID = 2;
+
+        // Size of a grid cell in degrees: about a kilometre north to south.
+        public static final double GRID_DEGREES = 0.01;
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // One of the KIND_ constants
+        public static final String COLUMN_KIND = "kind";
+        // The normalized text, or for a grid alias the cell, as "geo:<lat cell>,<lon cell>"
+        public static final String COLUMN_KEY = "key";
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -98,6 +238,8 @@ public class WeatherContract {
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_WEATHER;
 
         public static final String TABLE_NAME = "weather";
+        // Index over a location's weather in date order
+        public static final String INDEX_LOCATION_DATE = "weather_location_date";
 
         // Column with the foreign key into the location table.
         public static final String COLUMN_LOC_KEY = "location_id";
@@ -126,6 +268,10 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Path segments of a page URI, see buildWeatherLocationPage
+        public static final String PATH_AFTER = "after";
+        public static final String PATH_LIMIT = "limit";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -149,6 +295,41 @@ public class WeatherContract {
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /**
+         * Builds a URI that weather rows can be bulk inserted into without knowing the location's
+         * row id.  The provider looks the location up (or inserts it, using the city name and
+         * coordinates carried in the URI) in the same transaction as the weather rows.
+         */
+        public static Uri buildWeatherLocationUpsert(String locationSetting, String cityName,
+                                                     double lat, double lon) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(LocationEntry.COLUMN_CITY_NAME, cityName)
+                    .appendQueryParameter(LocationEntry.COLUMN_COORD_LAT, Double.toString(lat))
+                    .appendQueryParameter(LocationEntry.COLUMN_COORD_LONG, Double.toString(lon))
+                    .build();
+        }
+
+        /**
+         * Builds a URI for one page of a location's weather: at most limit rows, in date order,
+         * starting after the given date.  To read the next page, pass the date of the last row
+         * of this one.  Paging by date rather than by offset means each page is a single index
+         * range, however far down the list it is, and rows written in between don't shift pages.
+         */
+        public static Uri buildWeatherLocationPage(String locationSetting, long afterDate,
+                                                   int limit) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(PATH_AFTER).appendPath(Long.toString(afterDate))
+                    .appendPath(PATH_LIMIT).appendPath(Integer.toString(limit)).build();
+        }
+
+        /**
+         * The first page of a location's weather from startDate on.
+         */
+        public static Uri buildWeatherLocationFirstPage(String locationSetting, long startDate,
+                                                        int limit) {
+            return buildWeatherLocationPage(locationSetting, normalizeDate(startDate) - 1, limit);
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
@@ -157,6 +338,14 @@ public class WeatherContract {
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
+        public static long getAfterDateFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(3));
+        }
+
+        public static int getLimitFromUri(Uri uri) {
+            return Integer.parseInt(uri.getPathSegments().get(5));
+        }
+
         public static long getStartDateFromUri(Uri uri) {
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (null != dateString && dateString.length() > 0)
@@ -165,4 +354,200 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /*
+        Inner class that defines the hourly forecast.  The table stores one row per location per
+        day, with that day's samples packed into COLUMN_BLOCK.  Queries unpack the blocks, so
+        each row of a cursor from this entry's URIs is one sample, with the sample columns below.
+     */
+    public static final class HourlyEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HOURLY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HOURLY;
+
+        public static final String TABLE_NAME = "hourly";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // The day the block holds, normalized like WeatherEntry.COLUMN_DATE
+        public static final String COLUMN_DATE = "date";
+        // The day's samples, packed
+        public static final String COLUMN_BLOCK = "block";
+
+        // Sample columns.  The _ID of a sample is its time.
+        // Time of the sample, in milliseconds since the epoch
+        public static final String COLUMN_TIME = "time";
+        // Temperature, stored as a float
+        public static final String COLUMN_TEMP = "temp";
+        // Weather id as returned by API, to identify the icon to be used
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+        // Humidity, pressure, windspeed and degrees as in WeatherEntry
+        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_PRESSURE = "pressure";
+        public static final String COLUMN_WIND_SPEED = "wind";
+        public static final String COLUMN_DEGREES = "degrees";
+
+        // Query parameters bounding the time range: start inclusive, end exclusive
+        public static final String PARAM_START = "start";
+        public static final String PARAM_END = "end";
+
+        public static Uri buildHourlyLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static Uri buildHourlyLocationWithRange(String locationSetting, long start, long end) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_START, Long.toString(start))
+                    .appendQueryParameter(PARAM_END, Long.toString(end)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartFromUri(Uri uri) {
+            String start = uri.getQueryParameter(PARAM_START);
+            if (null != start && start.length() > 0)
+                return Long.parseLong(start);
+            else
+                return 0;
+        }
+
+        public static long getEndFromUri(Uri uri) {
+            String end = uri.getQueryParameter(PARAM_END);
+            if (null != end && end.length() > 0)
+                return Long.parseLong(end);
+            else
+                return Long.MAX_VALUE;
+        }
+    }
+
+    /*
+        Inner class that defines the summary table: per location, figures over the next few days
+        of weather, kept up to date by the provider whenever weather is written.  Read one row
+        here instead of scanning the forecast.
+     */
+    public static final class SummaryEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SUMMARY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUMMARY;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUMMARY;
+
+        // The windows summarized, in days from today
+        public static final int WINDOW_WEEK = 7;
+        public static final int WINDOW_FORTNIGHT = 14;
+
+        public static final String TABLE_NAME = "summary";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Length of the window in days, one of the WINDOW_ constants
+        public static final String COLUMN_WINDOW_DAYS = "window_days";
+        // First date in the window, and how many days of weather it actually has
+        public static final String COLUMN_START_DATE = "start_date";
+        public static final String COLUMN_DAY_COUNT = "day_count";
+        // Lowest low, highest high and the average of the days' midpoints, as floats
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        public static final String COLUMN_AVG_TEMP = "avg";
+        // Date of the day with the highest high
+        public static final String COLUMN_WARMEST_DATE = "warmest_date";
+        // The weather id seen on the most days
+        public static final String COLUMN_DOMINANT_WEATHER_ID = "dominant_weather_id";
+        // Days with rain, drizzle, snow or thunderstorms
+        public static final String COLUMN_WET_DAYS = "wet_days";
+
+        public static Uri buildSummaryLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static Uri buildSummaryLocationWithWindow(String locationSetting, int windowDays) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(Integer.toString(windowDays)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        // 0 when the URI asks for every window
+        public static int getWindowDaysFromUri(Uri uri) {
+            if (uri.getPathSegments().size() > 2)
+                return Integer.parseInt(uri.getPathSegments().get(2));
+            else
+                return 0;
+        }
+    }
+
+    /*
+        Inner class for housekeeping of the database itself.  Its table holds a sample of the
+        database size each time it's compacted, so we can see how it grows over time.
+     */
+    public static final class DatabaseEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_DATABASE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_DATABASE;
+
+        public static final String PATH_EXPIRED = "expired";
+        public static final String PATH_COMPACT = "compact";
+
+        // Query parameters for the expired and compact URIs.
+        public static final String PARAM_TODAY = "today";
+        public static final String PARAM_MAX_PAGES = "max_pages";
+
+        public static final String TABLE_NAME = "database_stats";
+
+        // When the sample was taken, in milliseconds since the epoch
+        public static final String COLUMN_TIMESTAMP = "timestamp";
+        // Size of the database file and how much of it is free pages, in bytes
+        public static final String COLUMN_SIZE_BYTES = "size_bytes";
+        public static final String COLUMN_FREE_BYTES = "free_bytes";
+        // Row counts at the time of the sample
+        public static final String COLUMN_WEATHER_ROWS = "weather_rows";
+        public static final String COLUMN_LOCATION_ROWS = "location_rows";
+
+        /**
+         * Deleting this URI removes weather that is outside its location's history window, and
+         * locations that no longer have any weather.
+         *
+         * @param today the normalized date the history windows count back from
+         */
+        public static Uri buildExpiredUri(long today) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_EXPIRED)
+                    .appendQueryParameter(PARAM_TODAY, Long.toString(normalizeDate(today)))
+                    .build();
+        }
+
+        /**
+         * Updating this URI records a size sample and returns up to maxPages free pages to the
+         * file system.  It can't be used inside a batch.
+         */
+        public static Uri buildCompactUri(int maxPages) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_COMPACT)
+                    .appendQueryParameter(PARAM_MAX_PAGES, Integer.toString(maxPages))
+                    .build();
+        }
+
+        public static long getTodayFromUri(Uri uri) {
+            String today = uri.getQueryParameter(PARAM_TODAY);
+            if (null != today && today.length() > 0)
+                return Long.parseLong(today);
+            else
+                return normalizeDate(System.currentTimeMillis());
+        }
+
+        public static int getMaxPagesFromUri(Uri uri) {
+            return Integer.parseInt(uri.getQueryParameter(PARAM_MAX_PAGES));
+        }
+    }
 }
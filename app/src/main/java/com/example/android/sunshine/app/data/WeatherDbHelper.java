@@ -19,7 +19,11 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.app.data.WeatherContract.DatabaseEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HourlyEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationAliasEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SummaryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -28,7 +32,7 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 8;
 
     static final String DATABASE_NAME = "weather.db";
 
@@ -45,9 +49,17 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_HISTORY_DAYS + " INTEGER NOT NULL DEFAULT 0, " +
+                LocationEntry.COLUMN_GEOHASH + " TEXT NOT NULL DEFAULT '', " +
+                LocationEntry.COLUMN_UPDATED + " INTEGER NOT NULL DEFAULT 0 " +
                 " );";
 
+        // Finds the locations in a geohash cell, which is a range of hashes.
+        final String SQL_CREATE_LOCATION_GEOHASH_INDEX = "CREATE INDEX " +
+                LocationEntry.INDEX_GEOHASH + " ON " + LocationEntry.TABLE_NAME + " (" +
+                LocationEntry.COLUMN_GEOHASH + ");";
+
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
                 // Why AutoIncrement here, and not above?
                 // Unique keys will be auto-generated in either case.  But for weather
@@ -79,8 +91,114 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
                 WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
 
+        // The UNIQUE index leads with the date, which suits looking up a day across locations.
+        // Reading one location's days in order, as the paged list does, wants this one.
+        final String SQL_CREATE_WEATHER_LOCATION_INDEX = "CREATE INDEX " +
+                WeatherEntry.INDEX_LOCATION_DATE + " ON " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");";
+
+        // One row per location per day, holding that day's hourly samples packed together.
+        final String SQL_CREATE_HOURLY_TABLE = "CREATE TABLE " + HourlyEntry.TABLE_NAME + " (" +
+                HourlyEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                HourlyEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                HourlyEntry.COLUMN_BLOCK + " BLOB NOT NULL, " +
+
+                " FOREIGN KEY (" + HourlyEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                // Range queries look up a location's days in order, so lead with the location.
+                " UNIQUE (" + HourlyEntry.COLUMN_LOC_KEY + ", " +
+                HourlyEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+        // Per location and window figures, maintained by the provider as weather is written.
+        final String SQL_CREATE_SUMMARY_TABLE = "CREATE TABLE " + SummaryEntry.TABLE_NAME + " (" +
+                SummaryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                SummaryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                SummaryEntry.COLUMN_WINDOW_DAYS + " INTEGER NOT NULL, " +
+                SummaryEntry.COLUMN_START_DATE + " INTEGER NOT NULL, " +
+                SummaryEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+                SummaryEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                SummaryEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                SummaryEntry.COLUMN_AVG_TEMP + " REAL NOT NULL, " +
+                SummaryEntry.COLUMN_WARMEST_DATE + " INTEGER NOT NULL, " +
+                SummaryEntry.COLUMN_DOMINANT_WEATHER_ID + " INTEGER NOT NULL, " +
+                SummaryEntry.COLUMN_WET_DAYS + " INTEGER NOT NULL, " +
+
+                " FOREIGN KEY (" + SummaryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                " UNIQUE (" + SummaryEntry.COLUMN_LOC_KEY + ", " +
+                SummaryEntry.COLUMN_WINDOW_DAYS + ") ON CONFLICT REPLACE);";
+
+        // Samples of the database size, taken whenever it's compacted.
+        final String SQL_CREATE_DATABASE_STATS_TABLE = "CREATE TABLE " + DatabaseEntry.TABLE_NAME + " (" +
+                DatabaseEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                DatabaseEntry.COLUMN_TIMESTAMP + " INTEGER NOT NULL, " +
+                DatabaseEntry.COLUMN_SIZE_BYTES + " INTEGER NOT NULL, " +
+                DatabaseEntry.COLUMN_FREE_BYTES + " INTEGER NOT NULL, " +
+                DatabaseEntry.COLUMN_WEATHER_ROWS + " INTEGER NOT NULL, " +
+                DatabaseEntry.COLUMN_LOCATION_ROWS + " INTEGER NOT NULL " +
+                " );";
+
+        // Keys locations can be resolved by offline, see LocationIndex.
+        final String SQL_CREATE_LOCATION_ALIAS_TABLE = "CREATE TABLE " + LocationAliasEntry.TABLE_NAME + " (" +
+                LocationAliasEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                LocationAliasEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                LocationAliasEntry.COLUMN_KIND + " INTEGER NOT NULL, " +
+                LocationAliasEntry.COLUMN_KEY + " TEXT NOT NULL, " +
+
+                " FOREIGN KEY (" + LocationAliasEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                // One alias of each kind per location; indexing a location again replaces them.
+                " UNIQUE (" + LocationAliasEntry.COLUMN_LOC_KEY + ", " +
+                LocationAliasEntry.COLUMN_KIND + ") ON CONFLICT REPLACE);";
+
+        final String SQL_CREATE_LOCATION_ALIAS_INDEX = "CREATE INDEX " +
+                LocationAliasEntry.INDEX_KEY + " ON " + LocationAliasEntry.TABLE_NAME + " (" +
+                LocationAliasEntry.COLUMN_KEY + ");";
+
+        final String SQL_CREATE_LOCATION_FTS_TABLE = "CREATE VIRTUAL TABLE " +
+                LocationEntry.FTS_TABLE_NAME + " USING fts3(" +
+                LocationEntry.COLUMN_CITY_NAME + ");";
+
+        // The full text index follows the location table by itself, whoever writes to it, and
+        // a location's aliases go with it.  Aliases are normalized in Java, so the provider
+        // writes those.
+        final String SQL_CREATE_LOCATION_INSERT_TRIGGER = "CREATE TRIGGER location_insert " +
+                "AFTER INSERT ON " + LocationEntry.TABLE_NAME + " BEGIN " +
+                "INSERT INTO " + LocationEntry.FTS_TABLE_NAME + " (docid, " +
+                LocationEntry.COLUMN_CITY_NAME + ") VALUES (new." + LocationEntry._ID + ", new." +
+                LocationEntry.COLUMN_CITY_NAME + "); END;";
+
+        final String SQL_CREATE_LOCATION_UPDATE_TRIGGER = "CREATE TRIGGER location_update " +
+                "AFTER UPDATE OF " + LocationEntry.COLUMN_CITY_NAME + " ON " +
+                LocationEntry.TABLE_NAME + " BEGIN " +
+                "UPDATE " + LocationEntry.FTS_TABLE_NAME + " SET " +
+                LocationEntry.COLUMN_CITY_NAME + " = new." + LocationEntry.COLUMN_CITY_NAME +
+                " WHERE docid = old." + LocationEntry._ID + "; END;";
+
+        final String SQL_CREATE_LOCATION_DELETE_TRIGGER = "CREATE TRIGGER location_delete " +
+                "AFTER DELETE ON " + LocationEntry.TABLE_NAME + " BEGIN " +
+                "DELETE FROM " + LocationEntry.FTS_TABLE_NAME +
+                " WHERE docid = old." + LocationEntry._ID + "; " +
+                "DELETE FROM " + LocationAliasEntry.TABLE_NAME + " WHERE " +
+                LocationAliasEntry.COLUMN_LOC_KEY + " = old." + LocationEntry._ID + "; END;";
+
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_GEOHASH_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_ALIAS_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_ALIAS_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_FTS_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_INSERT_TRIGGER);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_UPDATE_TRIGGER);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_DELETE_TRIGGER);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_HOURLY_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_SUMMARY_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_DATABASE_STATS_TABLE);
     }
 
     @Override
@@ -92,7 +210,12 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // If you want to update the schema without wiping data, commenting out the next 2 lines
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationAliasEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.FTS_TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HourlyEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SummaryEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + DatabaseEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
@@ -17,23 +17,64 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private final LocationIdCache mLocationIds = new LocationIdCache();
+
+    // While a thread is inside applyBatch, the URIs its operations changed are collected here
+    // and notified once the batch commits, instead of once per operation.
+    private final ThreadLocal<Set<Uri>> mPendingNotifications = new ThreadLocal<Set<Uri>>();
+    // Likewise the locations whose summaries need recomputing, once, before the batch commits.
+    private final ThreadLocal<Set<Long>> mPendingSummaries = new ThreadLocal<Set<Long>>();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_WITH_LOCATION_PAGE = 103;
     static final int LOCATION = 300;
+    static final int LOCATION_RESOLVE = 301;
+    static final int LOCATION_SUGGEST = 302;
+    static final int LOCATION_NEAR = 303;
+    static final int DATABASE = 400;
+    static final int DATABASE_EXPIRED = 401;
+    static final int DATABASE_COMPACT = 402;
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    // How many size samples to keep in the database_stats table.
+    private static final int MAX_DATABASE_SAMPLES = 60;
+    // The value of PRAGMA auto_vacuum once the database allows incremental vacuuming.
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
+
+    static final int HOURLY = 500;
+    static final int HOURLY_WITH_LOCATION = 501;
+    static final int SUMMARY_WITH_LOCATION = 600;
+    static final int SUMMARY_WITH_LOCATION_AND_WINDOW = 601;
+
+    // Stands in for a location id when every location's summaries need recomputing.
+    private static final long ALL_LOCATIONS = -1;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -51,6 +92,79 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.LocationEntry._ID);
     }
 
+    private static final SQLiteQueryBuilder sSummaryByLocationSettingQueryBuilder;
+
+    static{
+        sSummaryByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+
+        //summary INNER JOIN location ON summary.location_id = location._id
+        sSummaryByLocationSettingQueryBuilder.setTables(
+                WeatherContract.SummaryEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.SummaryEntry.TABLE_NAME +
+                        "." + WeatherContract.SummaryEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
+    }
+
+    //weather.date < ? - (days of history kept for its location), or its location is gone
+    private static final String sExpiredWeatherSelection = buildExpiredSelection(
+            WeatherContract.WeatherEntry.TABLE_NAME, WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+
+    //hourly.date < ? - (days of history kept for its location), or its location is gone
+    private static final String sExpiredHourlySelection = buildExpiredSelection(
+            WeatherContract.HourlyEntry.TABLE_NAME, WeatherContract.HourlyEntry.COLUMN_DATE,
+            WeatherContract.HourlyEntry.COLUMN_LOC_KEY);
+
+    //hourly.location_id = ? AND hourly.date >= ? AND hourly.date < ?
+    private static final String sHourlyRangeSelection =
+            WeatherContract.HourlyEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.HourlyEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherContract.HourlyEntry.COLUMN_DATE + " < ? ";
+
+    // Columns of an hourly cursor when the query doesn't give a projection.
+    private static final String[] sHourlyColumns = {
+            WeatherContract.HourlyEntry._ID,
+            WeatherContract.HourlyEntry.COLUMN_TIME,
+            WeatherContract.HourlyEntry.COLUMN_TEMP,
+            WeatherContract.HourlyEntry.COLUMN_WEATHER_ID,
+            WeatherContract.HourlyEntry.COLUMN_HUMIDITY,
+            WeatherContract.HourlyEntry.COLUMN_PRESSURE,
+            WeatherContract.HourlyEntry.COLUMN_WIND_SPEED,
+            WeatherContract.HourlyEntry.COLUMN_DEGREES
+    };
+
+    //_id NOT IN (SELECT location_id FROM weather)
+    private static final String sOrphanLocationSelection =
+            WeatherContract.LocationEntry._ID + " NOT IN (SELECT " +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " FROM " +
+                    WeatherContract.WeatherEntry.TABLE_NAME + ")";
+
+    //the location_setting of a weather row's location, as a column of the weather table
+    private static final String sWeatherLocationSettingColumn = "(SELECT " +
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING +
+            " FROM " + WeatherContract.LocationEntry.TABLE_NAME +
+            " WHERE " + WeatherContract.LocationEntry.TABLE_NAME +
+            "." + WeatherContract.LocationEntry._ID + " = " +
+            WeatherContract.WeatherEntry.TABLE_NAME +
+            "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + ")";
+
+    //weather.location_id = ? AND weather.date = ?
+    private static final String sWeatherRowSelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    private static String buildExpiredSelection(String table, String dateColumn, String locKey) {
+        return dateColumn + " < ? - " + DAY_IN_MILLIS + " * IFNULL((" +
+                "SELECT " + WeatherContract.LocationEntry.COLUMN_HISTORY_DAYS +
+                " FROM " + WeatherContract.LocationEntry.TABLE_NAME +
+                " WHERE " + WeatherContract.LocationEntry.TABLE_NAME +
+                "." + WeatherContract.LocationEntry._ID + " = " + table + "." + locKey + "), 0)" +
+                " OR " + locKey + " NOT IN (SELECT " + WeatherContract.LocationEntry._ID +
+                " FROM " + WeatherContract.LocationEntry.TABLE_NAME + ")";
+    }
+
     //location.location_setting = ?
     private static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
@@ -93,6 +207,32 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    //location.location_setting = ? AND date > ?
+    private static final String sLocationSettingAfterDateSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " > ? ";
+
+    /*
+        One page of a location's weather.  Pages are always in date order, whatever sortOrder
+        asks for, since the next page starts after the last date of this one.
+     */
+    private Cursor getWeatherPageByLocationSetting(Uri uri, String[] projection) {
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        long afterDate = WeatherContract.WeatherEntry.getAfterDateFromUri(uri);
+        int limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
+
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingAfterDateSelection,
+                new String[]{locationSetting, Long.toString(afterDate)},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC",
+                Integer.toString(limit)
+        );
+    }
+
     private Cursor getWeatherByLocationSettingAndDate(
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
@@ -108,6 +248,108 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    //location.location_setting = ? AND window_days = ?
+    private static final String sLocationSettingAndWindowSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.SummaryEntry.COLUMN_WINDOW_DAYS + " = ? ";
+
+    private Cursor getSummaryByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.SummaryEntry.getLocationSettingFromUri(uri);
+        int windowDays = WeatherContract.SummaryEntry.getWindowDaysFromUri(uri);
+
+        String[] selectionArgs;
+        String selection;
+
+        if (windowDays == 0) {
+            selection = sLocationSettingSelection;
+            selectionArgs = new String[]{locationSetting};
+        } else {
+            selection = sLocationSettingAndWindowSelection;
+            selectionArgs = new String[]{locationSetting, Integer.toString(windowDays)};
+        }
+
+        return sSummaryByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    /*
+        Unpacks the hourly blocks of a location that overlap the URI's time range, one cursor row
+        per sample.
+     */
+    private Cursor getHourlyByLocationSetting(Uri uri, String[] projection) {
+        String[] columns = projection != null ? projection : sHourlyColumns;
+        MatrixCursor retCursor = new MatrixCursor(columns);
+
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long locationId = mLocationIds.find(db,
+                WeatherContract.HourlyEntry.getLocationSettingFromUri(uri));
+        if (locationId == -1) {
+            return retCursor;
+        }
+
+        long start = WeatherContract.HourlyEntry.getStartFromUri(uri);
+        long end = WeatherContract.HourlyEntry.getEndFromUri(uri);
+        Cursor blocks = db.query(WeatherContract.HourlyEntry.TABLE_NAME,
+                new String[]{WeatherContract.HourlyEntry.COLUMN_DATE,
+                        WeatherContract.HourlyEntry.COLUMN_BLOCK},
+                sHourlyRangeSelection,
+                new String[]{Long.toString(locationId),
+                        // start's block begins at the start of its day
+                        Long.toString(WeatherContract.normalizeDate(start)),
+                        Long.toString(end)},
+                null,
+                null,
+                WeatherContract.HourlyEntry.COLUMN_DATE + " ASC");
+        try {
+            Object[] row = new Object[columns.length];
+            while (blocks.moveToNext()) {
+                HourlyBlock block = HourlyBlock.unpack(blocks.getLong(0), blocks.getBlob(1));
+                for (int i = 0; i < block.size(); i++) {
+                    long time = block.getTime(i);
+                    if (time < start || time >= end) {
+                        continue;
+                    }
+                    for (int c = 0; c < columns.length; c++) {
+                        row[c] = getHourlyValue(columns[c], block, i);
+                    }
+                    retCursor.addRow(row);
+                }
+            }
+        } finally {
+            blocks.close();
+        }
+        return retCursor;
+    }
+
+    private static Object getHourlyValue(String column, HourlyBlock block, int i) {
+        switch (column) {
+            case WeatherContract.HourlyEntry._ID:
+            case WeatherContract.HourlyEntry.COLUMN_TIME:
+                return block.getTime(i);
+            case WeatherContract.HourlyEntry.COLUMN_TEMP:
+                return block.getTemp(i);
+            case WeatherContract.HourlyEntry.COLUMN_WEATHER_ID:
+                return block.getWeatherId(i);
+            case WeatherContract.HourlyEntry.COLUMN_HUMIDITY:
+                return block.getHumidity(i);
+            case WeatherContract.HourlyEntry.COLUMN_PRESSURE:
+                return block.getPressure(i);
+            case WeatherContract.HourlyEntry.COLUMN_WIND_SPEED:
+                return block.getWindSpeed(i);
+            case WeatherContract.HourlyEntry.COLUMN_DEGREES:
+                return block.getDegrees(i);
+            default:
+                throw new IllegalArgumentException("Unknown hourly column: " + column);
+        }
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -128,8 +370,30 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER, WEATHER);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/" +
+                WeatherContract.WeatherEntry.PATH_AFTER + "/#/" +
+                WeatherContract.WeatherEntry.PATH_LIMIT + "/#", WEATHER_WITH_LOCATION_PAGE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.LocationEntry.PATH_RESOLVE, LOCATION_RESOLVE);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.LocationEntry.PATH_SUGGEST, LOCATION_SUGGEST);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.LocationEntry.PATH_NEAR, LOCATION_NEAR);
+
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY, HOURLY);
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY + "/*", HOURLY_WITH_LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_SUMMARY + "/*", SUMMARY_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_SUMMARY + "/*/#",
+                SUMMARY_WITH_LOCATION_AND_WINDOW);
+
+        matcher.addURI(authority, WeatherContract.PATH_DATABASE, DATABASE);
+        matcher.addURI(authority, WeatherContract.PATH_DATABASE + "/" +
+                WeatherContract.DatabaseEntry.PATH_EXPIRED, DATABASE_EXPIRED);
+        matcher.addURI(authority, WeatherContract.PATH_DATABASE + "/" +
+                WeatherContract.DatabaseEntry.PATH_COMPACT, DATABASE_COMPACT);
         return matcher;
     }
 
@@ -159,11 +423,29 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER_WITH_LOCATION_AND_DATE:
                 return WeatherContract.WeatherEntry.CONTENT_ITEM_TYPE;
             case WEATHER_WITH_LOCATION:
+            case WEATHER_WITH_LOCATION_PAGE:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
+            case LOCATION_SUGGEST:
+            case LOCATION_NEAR:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case LOCATION_RESOLVE:
+                return WeatherContract.LocationEntry.CONTENT_ITEM_TYPE;
+            case HOURLY:
+            case HOURLY_WITH_LOCATION:
+                return WeatherContract.HourlyEntry.CONTENT_TYPE;
+            case SUMMARY_WITH_LOCATION:
+                return WeatherContract.SummaryEntry.CONTENT_TYPE;
+            case SUMMARY_WITH_LOCATION_AND_WINDOW:
+                return WeatherContract.SummaryEntry.CONTENT_ITEM_TYPE;
+            case DATABASE:
+                return WeatherContract.DatabaseEntry.CONTENT_TYPE;
+            // These can't be queried, only deleted or updated.
+            case DATABASE_EXPIRED:
+            case DATABASE_COMPACT:
+                return null;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -175,6 +457,9 @@ public class WeatherProvider extends ContentProvider {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
+        // Writes notify the dates they change (see collapseNotifications), so cursors over a
+        // location's weather watch the location, whatever range or page they cover.
+        Uri notificationUri = uri;
         switch (sUriMatcher.match(uri)) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
@@ -185,6 +470,15 @@ public class WeatherProvider extends ContentProvider {
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
                 retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                notificationUri = WeatherContract.WeatherEntry.buildWeatherLocation(
+                        WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+                break;
+            }
+            // "weather/*/after/#/limit/#"
+            case WEATHER_WITH_LOCATION_PAGE: {
+                retCursor = getWeatherPageByLocationSetting(uri, projection);
+                notificationUri = WeatherContract.WeatherEntry.buildWeatherLocation(
+                        WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
                 break;
             }
             // "weather"
@@ -213,11 +507,56 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "location/resolve"
+            case LOCATION_RESOLVE: {
+                retCursor = resolveLocation(uri, projection);
+                break;
+            }
+            // "location/suggest"
+            case LOCATION_SUGGEST: {
+                retCursor = LocationIndex.suggest(mOpenHelper.getReadableDatabase(), projection,
+                        WeatherContract.LocationEntry.getQueryFromUri(uri),
+                        WeatherContract.LocationEntry.getLimitFromUri(uri));
+                break;
+            }
+            // "location/near"
+            case LOCATION_NEAR: {
+                retCursor = LocationIndex.near(mOpenHelper.getReadableDatabase(), projection,
+                        WeatherContract.LocationEntry.getLatFromUri(uri),
+                        WeatherContract.LocationEntry.getLonFromUri(uri),
+                        WeatherContract.LocationEntry.getRadiusFromUri(uri),
+                        WeatherContract.LocationEntry.getLimitFromUri(uri));
+                break;
+            }
+            // "hourly/*"
+            case HOURLY_WITH_LOCATION: {
+                retCursor = getHourlyByLocationSetting(uri, projection);
+                break;
+            }
+            // "summary/*" and "summary/*/#"
+            case SUMMARY_WITH_LOCATION:
+            case SUMMARY_WITH_LOCATION_AND_WINDOW: {
+                retCursor = getSummaryByLocationSetting(uri, projection, sortOrder);
+                break;
+            }
+            // "database"
+            case DATABASE: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.DatabaseEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        retCursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
         return retCursor;
     }
 
@@ -233,25 +572,56 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
-                else
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
+                Set<Uri> changes = new LinkedHashSet<Uri>();
+                db.beginTransaction();
+                try {
+                    long _id = insertWeather(db, values, null, changes);
+                    if ( _id > 0 )
+                        returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
+                    else
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                    if (!changes.isEmpty()) {
+                        updateSummaries(db,
+                                values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                notifyChanges(changes);
+                return returnUri;
+            }
+            case WEATHER_WITH_LOCATION: {
+                return insertWithLocation(db, uri, values);
             }
             case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
+                long _id;
+                LocationIndex.putGeohash(values);
+                db.beginTransaction();
+                try {
+                    _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                    if (_id > 0) {
+                        LocationIndex.add(db, _id, values);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if ( _id > 0 ) {
+                    String locationSetting = values.getAsString(
+                            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                    if (locationSetting != null) {
+                        mLocationIds.put(locationSetting, _id);
+                    }
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
-                else
+                } else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -260,27 +630,157 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
+        // Deleting everything is reported as a change to everything, rather than row by row.
+        boolean deleteAll = null == selection;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
+            case WEATHER: {
+                Set<Uri> changes = new LinkedHashSet<Uri>();
+                Set<Long> locationIds = new HashSet<Long>();
+                db.beginTransaction();
+                try {
+                    if (!deleteAll) {
+                        collectWeatherChanges(db, selection, selectionArgs, changes,
+                                locationIds);
+                    }
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    if (rowsDeleted != 0 && deleteAll) {
+                        updateSummaries(db, ALL_LOCATIONS);
+                    } else if (rowsDeleted != 0) {
+                        updateSummaries(db, locationIds);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (deleteAll && rowsDeleted != 0) {
+                    notifyChange(uri);
+                } else {
+                    notifyChanges(changes);
+                }
+                return rowsDeleted;
+            }
             case LOCATION:
+                db.beginTransaction();
+                try {
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    if (rowsDeleted != 0) {
+                        updateSummaries(db, ALL_LOCATIONS);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                // We can't tell which settings the selection matched, so start over.
+                mLocationIds.invalidate();
+                break;
+            case HOURLY:
                 rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                        WeatherContract.HourlyEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case DATABASE_EXPIRED:
+                return deleteExpired(db, WeatherContract.DatabaseEntry.getTodayFromUri(uri));
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
 
+    /*
+        The retention pass: removes weather from before each location's history window, then
+        any location left without weather.  Returns the number of rows removed from both.
+     */
+    private int deleteExpired(SQLiteDatabase db, long today) {
+        int weatherDeleted;
+        int locationsDeleted;
+        int hourlyDeleted;
+        Set<Uri> changes = new LinkedHashSet<Uri>();
+        // The locations losing weather, including every one about to be deleted as an orphan.
+        Set<Long> locationIds = new HashSet<Long>();
+        db.beginTransaction();
+        try {
+            collectWeatherChanges(db, sExpiredWeatherSelection,
+                    new String[]{Long.toString(today)}, changes, locationIds);
+            weatherDeleted = db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                    sExpiredWeatherSelection, new String[]{Long.toString(today)});
+            locationsDeleted = db.delete(WeatherContract.LocationEntry.TABLE_NAME,
+                    sOrphanLocationSelection, null);
+            // After the locations, so this also catches hourly data of removed locations.
+            hourlyDeleted = db.delete(WeatherContract.HourlyEntry.TABLE_NAME,
+                    sExpiredHourlySelection, new String[]{Long.toString(today)});
+            if (weatherDeleted != 0) {
+                updateSummaries(db, locationIds);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyChanges(changes);
+        if (locationsDeleted != 0) {
+            mLocationIds.invalidate();
+            notifyChange(WeatherContract.LocationEntry.CONTENT_URI);
+        }
+        if (hourlyDeleted != 0) {
+            notifyChange(WeatherContract.HourlyEntry.CONTENT_URI);
+        }
+        return weatherDeleted + locationsDeleted + hourlyDeleted;
+    }
+
+    /*
+        Returns up to maxPages free pages to the file system and records a size sample.  The
+        first time, the database has to be switched to incremental auto-vacuum, which takes a
+        full VACUUM; neither can happen inside a transaction.  Returns the number of pages freed.
+     */
+    private int compact(SQLiteDatabase db, int maxPages) {
+        if (db.inTransaction()) {
+            throw new IllegalStateException("Can't compact the database inside a transaction");
+        }
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        }
+
+        long freePagesBefore = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        // incremental_vacuum returns a row for each page it frees, so it has to be stepped
+        // through like a query; execSQL would stop after the first page.
+        Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + maxPages + ")", null);
+        try {
+            cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        long pageSize = DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+        long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+
+        ContentValues sample = new ContentValues();
+        sample.put(WeatherContract.DatabaseEntry.COLUMN_TIMESTAMP, System.currentTimeMillis());
+        sample.put(WeatherContract.DatabaseEntry.COLUMN_SIZE_BYTES, pageCount * pageSize);
+        sample.put(WeatherContract.DatabaseEntry.COLUMN_FREE_BYTES, freePages * pageSize);
+        sample.put(WeatherContract.DatabaseEntry.COLUMN_WEATHER_ROWS, DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM " + WeatherContract.WeatherEntry.TABLE_NAME, null));
+        sample.put(WeatherContract.DatabaseEntry.COLUMN_LOCATION_ROWS, DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM " + WeatherContract.LocationEntry.TABLE_NAME, null));
+        db.insert(WeatherContract.DatabaseEntry.TABLE_NAME, null, sample);
+        db.delete(WeatherContract.DatabaseEntry.TABLE_NAME,
+                WeatherContract.DatabaseEntry._ID + " NOT IN (SELECT " +
+                        WeatherContract.DatabaseEntry._ID + " FROM " +
+                        WeatherContract.DatabaseEntry.TABLE_NAME + " ORDER BY " +
+                        WeatherContract.DatabaseEntry._ID + " DESC LIMIT " +
+                        MAX_DATABASE_SAMPLES + ")",
+                null);
+        notifyChange(WeatherContract.DatabaseEntry.CONTENT_URI);
+
+        return (int) (freePagesBefore - freePages);
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -297,20 +797,70 @@ public class WeatherProvider extends ContentProvider {
         int rowsUpdated;
 
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                // Rows moved to another date or location change two places; just report both
+                // as everything.
+                boolean moved = values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE) ||
+                        values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                Set<Uri> changes = new LinkedHashSet<Uri>();
+                Set<Long> locationIds = new HashSet<Long>();
+                db.beginTransaction();
+                try {
+                    collectWeatherChanges(db, selection, selectionArgs, moved ? null : changes,
+                            locationIds);
+                    // Rows moved to another location change its summaries too.
+                    Long newLocationId =
+                            values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                    if (newLocationId != null) {
+                        locationIds.add(newLocationId);
+                    }
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    if (rowsUpdated != 0) {
+                        updateSummaries(db, locationIds);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (moved && rowsUpdated != 0) {
+                    notifyChange(uri);
+                } else {
+                    notifyChanges(changes);
+                }
+                return rowsUpdated;
+            }
+            case LOCATION: {
+                // Only the locations the selection matches, and only if what they're indexed
+                // by changes, are indexed again; their ids are read before the update, which
+                // may change what the selection matches.
+                boolean reindex = LocationIndex.isIndexed(values);
+                Set<Long> locationIds = new HashSet<Long>();
+                db.beginTransaction();
+                try {
+                    if (reindex) {
+                        collectLocationIds(db, selection, selectionArgs, locationIds);
+                    }
+                    rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    if (rowsUpdated != 0 && reindex) {
+                        LocationIndex.rebuild(db, locationIds);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                mLocationIds.invalidate();
                 break;
+            }
+            case DATABASE_COMPACT:
+                return compact(db, WeatherContract.DatabaseEntry.getMaxPagesFromUri(uri));
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -321,27 +871,524 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+                Set<Uri> changes = new LinkedHashSet<Uri>();
                 db.beginTransaction();
                 int returnCount = 0;
                 try {
+                    Set<Long> locationIds = new HashSet<Long>();
                     for (ContentValues value : values) {
                         normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        int changeCount = changes.size();
+                        long _id = insertWeather(db, value, null, changes);
                         if (_id != -1) {
                             returnCount++;
                         }
+                        if (changes.size() != changeCount) {
+                            locationIds.add(
+                                    value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
+                        }
+                    }
+                    for (long locationId : locationIds) {
+                        updateSummaries(db, locationId);
                     }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyChanges(changes);
                 return returnCount;
+            case WEATHER_WITH_LOCATION:
+                return bulkInsertWithLocation(db, uri, values);
+            case HOURLY_WITH_LOCATION:
+                return bulkInsertHourly(db, uri, values);
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /*
+        Inserts weather for the location in the URI (see WeatherEntry.buildWeatherLocationUpsert),
+        adding the location first if it's new, all in one transaction.  The location's row id
+        comes from mLocationIds, so after the first sync for a location this doesn't have to touch
+        the location table at all.
+     */
+    private int bulkInsertWithLocation(SQLiteDatabase db, Uri uri, ContentValues[] values) {
+        ContentValues locationValues = getLocationValuesFromUri(uri);
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        Set<Uri> changes = new LinkedHashSet<Uri>();
+
+        db.beginTransaction();
+        int returnCount = 0;
+        boolean successful = false;
+        try {
+            long locationId = mLocationIds.resolve(db, locationValues);
+            if (locationId == -1) {
+                throw new android.database.SQLException("Failed to insert location for " + uri);
+            }
+            markUpdated(db, locationId);
+            for (ContentValues value : values) {
+                normalizeDate(value);
+                value.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                long _id = insertWeather(db, value, locationSetting, changes);
+                if (_id != -1) {
+                    returnCount++;
+                }
+            }
+            if (!changes.isEmpty()) {
+                updateSummaries(db, locationId);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            db.endTransaction();
+            // If we rolled back, a location inserted by this transaction may have been cached
+            // with an id that no longer exists.
+            if (!successful) {
+                mLocationIds.invalidate();
+            }
+        }
+        notifyChanges(changes);
+        return returnCount;
+    }
+
+    /*
+        Merges hourly samples into the packed blocks of their days.  The location must already
+        exist; the sync stores the daily forecast first.  Samples replace stored samples for the
+        same time, and the rest of a day's samples are kept.
+     */
+    private int bulkInsertHourly(SQLiteDatabase db, Uri uri, ContentValues[] values) {
+        String locationSetting = WeatherContract.HourlyEntry.getLocationSettingFromUri(uri);
+        db.beginTransaction();
+        try {
+            long locationId = mLocationIds.find(db, locationSetting);
+            if (locationId == -1) {
+                throw new android.database.SQLException("Unknown location for " + uri);
+            }
+
+            HashMap<Long, HourlyBlock> blocks = new HashMap<Long, HourlyBlock>();
+            for (ContentValues value : values) {
+                long time = value.getAsLong(WeatherContract.HourlyEntry.COLUMN_TIME);
+                long day = WeatherContract.normalizeDate(time);
+                HourlyBlock block = blocks.get(day);
+                if (block == null) {
+                    block = readHourlyBlock(db, locationId, day);
+                    blocks.put(day, block);
+                }
+                block.put(time,
+                        value.getAsFloat(WeatherContract.HourlyEntry.COLUMN_TEMP),
+                        value.getAsInteger(WeatherContract.HourlyEntry.COLUMN_WEATHER_ID),
+                        value.getAsFloat(WeatherContract.HourlyEntry.COLUMN_HUMIDITY),
+                        value.getAsFloat(WeatherContract.HourlyEntry.COLUMN_PRESSURE),
+                        value.getAsFloat(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED),
+                        value.getAsFloat(WeatherContract.HourlyEntry.COLUMN_DEGREES));
+            }
+
+            ContentValues row = new ContentValues();
+            for (HourlyBlock block : blocks.values()) {
+                row.put(WeatherContract.HourlyEntry.COLUMN_LOC_KEY, locationId);
+                row.put(WeatherContract.HourlyEntry.COLUMN_DATE, block.getDayStart());
+                row.put(WeatherContract.HourlyEntry.COLUMN_BLOCK, block.pack());
+                // The table's UNIQUE constraint replaces the day's old block.
+                if (db.insert(WeatherContract.HourlyEntry.TABLE_NAME, null, row) == -1) {
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyChange(WeatherContract.HourlyEntry.CONTENT_URI);
+        return values.length;
+    }
+
+    private static HourlyBlock readHourlyBlock(SQLiteDatabase db, long locationId, long day) {
+        Cursor cursor = db.query(WeatherContract.HourlyEntry.TABLE_NAME,
+                new String[]{WeatherContract.HourlyEntry.COLUMN_BLOCK},
+                WeatherContract.HourlyEntry.COLUMN_LOC_KEY + " = ? AND " +
+                        WeatherContract.HourlyEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(locationId), Long.toString(day)},
+                null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return HourlyBlock.unpack(day, cursor.getBlob(0));
+            }
+            return new HourlyBlock(day);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        The single-row version of bulkInsertWithLocation, so that upserts can be used from
+        applyBatch.  Callers should batch these, otherwise each insert is its own transaction.
+     */
+    private Uri insertWithLocation(SQLiteDatabase db, Uri uri, ContentValues values) {
+        Set<Uri> changes = new LinkedHashSet<Uri>();
+        db.beginTransaction();
+        boolean successful = false;
+        long _id;
+        try {
+            long locationId = mLocationIds.resolve(db, getLocationValuesFromUri(uri));
+            if (locationId == -1) {
+                throw new android.database.SQLException("Failed to insert location for " + uri);
+            }
+            markUpdated(db, locationId);
+            normalizeDate(values);
+            values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            _id = insertWeather(db, values,
+                    WeatherContract.WeatherEntry.getLocationSettingFromUri(uri), changes);
+            if (_id <= 0) {
+                throw new android.database.SQLException("Failed to insert row into " + uri);
+            }
+            if (!changes.isEmpty()) {
+                updateSummaries(db, locationId);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            db.endTransaction();
+            if (!successful) {
+                mLocationIds.invalidate();
+            }
+        }
+        notifyChanges(changes);
+        return WeatherContract.WeatherEntry.buildWeatherUri(_id);
+    }
+
+    /*
+        Inserts a weather row, replacing the one for the same location and date, and adds the
+        row's notification URI to changes.  If the stored row already has the same values it's
+        left alone and nothing is added, so a sync that brings nothing new wakes nobody up.
+        locationSetting may be null if the caller doesn't know it.  Returns the row id, or -1 if
+        the insert failed.
+     */
+    private long insertWeather(SQLiteDatabase db, ContentValues values, String locationSetting,
+                               Set<Uri> changes) {
+        long _id = findUnchangedWeather(db, values);
+        if (_id != -1) {
+            return _id;
+        }
+        _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+        if (_id != -1) {
+            if (locationSetting == null) {
+                locationSetting = mLocationIds.findSetting(db,
+                        values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
+            }
+            if (locationSetting != null) {
+                changes.add(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting,
+                        values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)));
+            }
+        }
+        return _id;
+    }
+
+    /*
+        Returns the id of the stored weather row for the location and date in values if it
+        holds exactly the given values, otherwise -1.
+     */
+    private static long findUnchangedWeather(SQLiteDatabase db, ContentValues values) {
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (locationId == null || date == null) {
+            return -1;
+        }
+
+        int size = values.size();
+        String[] columns = new String[size + 1];
+        Object[] expected = new Object[size + 1];
+        columns[0] = WeatherContract.WeatherEntry._ID;
+        int c = 1;
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            columns[c] = entry.getKey();
+            expected[c] = entry.getValue();
+            c++;
+        }
+
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME, columns,
+                sWeatherRowSelection,
+                new String[]{Long.toString(locationId), Long.toString(date)},
+                null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return -1;
+            }
+            for (c = 1; c < columns.length; c++) {
+                Object value = expected[c];
+                if (value == null) {
+                    if (!cursor.isNull(c)) return -1;
+                } else if (value instanceof Double || value instanceof Float) {
+                    if (cursor.getDouble(c) != ((Number) value).doubleValue()) return -1;
+                } else if (value instanceof Number) {
+                    if (cursor.getLong(c) != ((Number) value).longValue()) return -1;
+                } else if (!value.toString().equals(cursor.getString(c))) {
+                    return -1;
+                }
+            }
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Adds the notification URI of each weather row the selection matches to changes, unless
+        changes is null, and the row's location id to locationIds, for the summaries.  Call it
+        before deleting or updating those rows.  Rows whose location is gone get no URI: nothing
+        can be watching them.
+     */
+    private static void collectWeatherChanges(SQLiteDatabase db, String selection,
+                                              String[] selectionArgs, Set<Uri> changes,
+                                              Set<Long> locationIds) {
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{sWeatherLocationSettingColumn,
+                        WeatherContract.WeatherEntry.COLUMN_DATE,
+                        WeatherContract.WeatherEntry.COLUMN_LOC_KEY},
+                selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                if (changes != null && !cursor.isNull(0)) {
+                    changes.add(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                            cursor.getString(0), cursor.getLong(1)));
+                }
+                locationIds.add(cursor.getLong(2));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Adds the id of each location the selection matches to locationIds.  Call it before
+        updating those rows.
+     */
+    private static void collectLocationIds(SQLiteDatabase db, String selection,
+                                           String[] selectionArgs, Set<Long> locationIds) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                locationIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        The location a resolve URI means, as a cursor of one row or none.
+     */
+    private Cursor resolveLocation(Uri uri, String[] projection) {
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long id;
+        if (WeatherContract.LocationEntry.hasCoordinatesInUri(uri)) {
+            id = LocationIndex.resolve(db, WeatherContract.LocationEntry.getLatFromUri(uri),
+                    WeatherContract.LocationEntry.getLonFromUri(uri));
+        } else {
+            id = LocationIndex.resolve(db, WeatherContract.LocationEntry.getQueryFromUri(uri));
+        }
+        return db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                projection,
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(id)},
+                null, null, null);
+    }
+
+    private static ContentValues getLocationValuesFromUri(Uri uri) {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                uri.getQueryParameter(WeatherContract.LocationEntry.COLUMN_CITY_NAME));
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, Double.parseDouble(
+                uri.getQueryParameter(WeatherContract.LocationEntry.COLUMN_COORD_LAT)));
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, Double.parseDouble(
+                uri.getQueryParameter(WeatherContract.LocationEntry.COLUMN_COORD_LONG)));
+        LocationIndex.putGeohash(locationValues);
+        return locationValues;
+    }
+
+    /*
+        Records that a sync has just written the location's weather, changed or not, so that a
+        location picked nearby can tell it's fresh enough to reuse.
+     */
+    private static void markUpdated(SQLiteDatabase db, long locationId) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.LocationEntry.COLUMN_UPDATED, System.currentTimeMillis());
+        db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)});
+    }
+
+    /*
+        Applies all the operations in one transaction, so observers never see a half-written
+        sync, and sends one change notification per URI once it commits.  If any operation
+        fails, none of them are applied and nobody is notified.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final Set<Uri> pending = new LinkedHashSet<Uri>();
+        mPendingNotifications.set(pending);
+        final Set<Long> summaries = new HashSet<Long>();
+        mPendingSummaries.set(summaries);
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            mPendingSummaries.remove();
+            if (summaries.contains(ALL_LOCATIONS)) {
+                updateSummaries(db, ALL_LOCATIONS);
+            } else {
+                updateSummaries(db, summaries);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            db.endTransaction();
+            mPendingNotifications.remove();
+            mPendingSummaries.remove();
+            if (successful) {
+                for (Uri uri : collapseNotifications(pending)) {
+                    sendNotification(uri);
+                }
+            } else {
+                // Locations inserted by the batch may have been cached.
+                mLocationIds.invalidate();
+            }
+        }
+    }
+
+    /*
+        Brings the summaries of a location (or ALL_LOCATIONS) up to date with its weather.  Call
+        it inside the transaction that changed the weather; inside applyBatch, the work is put off
+        until every operation has run, so a sync's rows are summarized once rather than per row.
+     */
+    private void updateSummaries(SQLiteDatabase db, long locationId) {
+        Set<Long> pending = mPendingSummaries.get();
+        if (pending != null) {
+            pending.add(locationId);
+            return;
+        }
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        if (locationId == ALL_LOCATIONS) {
+            WeatherSummaries.updateAll(db, today);
+        } else {
+            WeatherSummaries.update(db, locationId, today);
+        }
+        notifyChange(WeatherContract.SummaryEntry.CONTENT_URI);
+    }
+
+    /*
+        The same for several locations, with one notification.
+     */
+    private void updateSummaries(SQLiteDatabase db, Set<Long> locationIds) {
+        Set<Long> pending = mPendingSummaries.get();
+        if (pending != null) {
+            pending.addAll(locationIds);
+            return;
+        }
+        if (locationIds.isEmpty()) {
+            return;
+        }
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (long locationId : locationIds) {
+            WeatherSummaries.update(db, locationId, today);
+        }
+        notifyChange(WeatherContract.SummaryEntry.CONTENT_URI);
+    }
+
+    private void notifyChanges(Set<Uri> uris) {
+        if (mPendingNotifications.get() != null) {
+            // The batch collapses them all together when it commits.
+            for (Uri uri : uris) {
+                notifyChange(uri);
+            }
+        } else {
+            for (Uri uri : collapseNotifications(uris)) {
+                notifyChange(uri);
+            }
+        }
+    }
+
+    /*
+        Cuts a set of notification URIs down to as few as reach the same observers, give or
+        take: several dates of one location become the location (a list showing them would
+        requery once per date otherwise, and the location's detail views are likely among
+        them anyway), and URIs under another URI in the set are dropped, since notifying a URI
+        notifies everything under it.
+     */
+    static Set<Uri> collapseNotifications(Set<Uri> uris) {
+        Map<Uri, Integer> datesPerLocation = new HashMap<Uri, Integer>();
+        for (Uri uri : uris) {
+            Uri location = getWeatherLocationOfDate(uri);
+            if (location != null) {
+                Integer count = datesPerLocation.get(location);
+                datesPerLocation.put(location, count == null ? 1 : count + 1);
+            }
+        }
+
+        Set<Uri> collapsed = new LinkedHashSet<Uri>();
+        for (Uri uri : uris) {
+            Uri location = getWeatherLocationOfDate(uri);
+            if (location != null && datesPerLocation.get(location) > 1) {
+                collapsed.add(location);
+            } else {
+                collapsed.add(uri);
+            }
+        }
+
+        Set<Uri> result = new LinkedHashSet<Uri>();
+        for (Uri uri : collapsed) {
+            if (!hasAncestorIn(uri, collapsed)) {
+                result.add(uri);
+            }
+        }
+        return result;
+    }
+
+    /*
+        weather/<location> for a weather/<location>/<date> URI, otherwise null.
+     */
+    private static Uri getWeatherLocationOfDate(Uri uri) {
+        if (sUriMatcher.match(uri) != WEATHER_WITH_LOCATION_AND_DATE) {
+            return null;
+        }
+        return WeatherContract.WeatherEntry.buildWeatherLocation(
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+    }
+
+    private static boolean hasAncestorIn(Uri uri, Set<Uri> uris) {
+        Uri.Builder ancestor = WeatherContract.BASE_CONTENT_URI.buildUpon();
+        List<String> segments = uri.getPathSegments();
+        for (int i = 0; i < segments.size() - 1; i++) {
+            ancestor.appendPath(segments.get(i));
+            if (uris.contains(ancestor.build())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void notifyChange(Uri uri) {
+        Set<Uri> pending = mPendingNotifications.get();
+        if (pending != null) {
+            pending.add(uri);
+        } else {
+            sendNotification(uri);
+        }
+    }
+
+    private void sendNotification(Uri uri) {
+        // The in-memory forecast is dropped first, so whoever reads it on hearing of the change
+        // reads the new rows.
+        ForecastRepository.onWeatherChanged(uri);
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
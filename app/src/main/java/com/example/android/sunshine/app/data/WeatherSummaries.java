@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SummaryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+
+/**
+ * Keeps the summary table in step with the weather table.  The WeatherProvider calls this from
+ * inside its write transactions with the locations whose weather changed, so a summary is never
+ * out of date with the rows it describes.
+ *
+ * A location's summaries are recomputed from its weather rows rather than adjusted: there are
+ * at most 16 of them, and a minimum or maximum can't be adjusted when the row holding it is
+ * deleted.
+ */
+class WeatherSummaries {
+    static final int[] WINDOWS = {SummaryEntry.WINDOW_WEEK, SummaryEntry.WINDOW_FORTNIGHT};
+
+    // OWM weather ids for thunderstorms, drizzle, rain and snow.
+    private static final int FIRST_WET_WEATHER_ID = 200;
+    private static final int LAST_WET_WEATHER_ID = 699;
+
+    //the first %d days of weather for a location, from a date on
+    private static final String sWindowTable = "(SELECT * FROM " + WeatherEntry.TABLE_NAME +
+            " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+            WeatherEntry.COLUMN_DATE + " >= ? ORDER BY " + WeatherEntry.COLUMN_DATE +
+            " ASC LIMIT %d)";
+
+    private static final String sAggregateQuery = "SELECT " +
+            "COUNT(*), MIN(" + WeatherEntry.COLUMN_DATE + "), " +
+            "MIN(" + WeatherEntry.COLUMN_MIN_TEMP + "), " +
+            "MAX(" + WeatherEntry.COLUMN_MAX_TEMP + "), " +
+            "AVG((" + WeatherEntry.COLUMN_MIN_TEMP + " + " + WeatherEntry.COLUMN_MAX_TEMP + ") / 2), " +
+            "SUM(" + WeatherEntry.COLUMN_WEATHER_ID + " BETWEEN " + FIRST_WET_WEATHER_ID +
+            " AND " + LAST_WET_WEATHER_ID + ") " +
+            "FROM " + sWindowTable;
+
+    // The most common condition; ties go to the one that shows up first.
+    private static final String sDominantWeatherQuery = "SELECT " + WeatherEntry.COLUMN_WEATHER_ID +
+            " FROM " + sWindowTable + " GROUP BY " + WeatherEntry.COLUMN_WEATHER_ID +
+            " ORDER BY COUNT(*) DESC, MIN(" + WeatherEntry.COLUMN_DATE + ") ASC LIMIT 1";
+
+    // The hottest day; ties go to the earliest.
+    private static final String sWarmestDateQuery = "SELECT " + WeatherEntry.COLUMN_DATE +
+            " FROM " + sWindowTable + " ORDER BY " + WeatherEntry.COLUMN_MAX_TEMP + " DESC, " +
+            WeatherEntry.COLUMN_DATE + " ASC LIMIT 1";
+
+    private WeatherSummaries() {
+    }
+
+    /**
+     * Recomputes the summaries of one location.
+     *
+     * @param today the date windows start from, normalized
+     */
+    static void update(SQLiteDatabase db, long locationId, long today) {
+        String[] args = {Long.toString(locationId), Long.toString(today)};
+        for (int window : WINDOWS) {
+            ContentValues values = new ContentValues();
+            Cursor cursor = db.rawQuery(String.format(Locale.US, sAggregateQuery, window), args);
+            try {
+                if (!cursor.moveToFirst() || cursor.getInt(0) == 0) {
+                    db.delete(SummaryEntry.TABLE_NAME,
+                            SummaryEntry.COLUMN_LOC_KEY + " = ? AND " +
+                                    SummaryEntry.COLUMN_WINDOW_DAYS + " = ?",
+                            new String[]{Long.toString(locationId), Integer.toString(window)});
+                    continue;
+                }
+                values.put(SummaryEntry.COLUMN_LOC_KEY, locationId);
+                values.put(SummaryEntry.COLUMN_WINDOW_DAYS, window);
+                values.put(SummaryEntry.COLUMN_DAY_COUNT, cursor.getInt(0));
+                values.put(SummaryEntry.COLUMN_START_DATE, cursor.getLong(1));
+                values.put(SummaryEntry.COLUMN_MIN_TEMP, cursor.getDouble(2));
+                values.put(SummaryEntry.COLUMN_MAX_TEMP, cursor.getDouble(3));
+                values.put(SummaryEntry.COLUMN_AVG_TEMP, cursor.getDouble(4));
+                values.put(SummaryEntry.COLUMN_WET_DAYS, cursor.getInt(5));
+            } finally {
+                cursor.close();
+            }
+            values.put(SummaryEntry.COLUMN_DOMINANT_WEATHER_ID, longForQuery(db,
+                    String.format(Locale.US, sDominantWeatherQuery, window), args));
+            values.put(SummaryEntry.COLUMN_WARMEST_DATE, longForQuery(db,
+                    String.format(Locale.US, sWarmestDateQuery, window), args));
+            // The table's UNIQUE constraint replaces the old summary.
+            db.insert(SummaryEntry.TABLE_NAME, null, values);
+        }
+    }
+
+    /**
+     * Recomputes the summaries of every location, and drops those of locations that are gone.
+     */
+    static void updateAll(SQLiteDatabase db, long today) {
+        db.delete(SummaryEntry.TABLE_NAME, SummaryEntry.COLUMN_LOC_KEY + " NOT IN (SELECT " +
+                LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME + ")", null);
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, new String[]{LocationEntry._ID},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                update(db, cursor.getLong(0), today);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long longForQuery(SQLiteDatabase db, String query, String[] args) {
+        Cursor cursor = db.rawQuery(query, args);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
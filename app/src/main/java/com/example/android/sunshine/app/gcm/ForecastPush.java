@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Forecast messages from our server, which knows when a location's forecast has changed before
+ * the next periodic sync would.  There are two kinds, told apart by their "type":
+ *
+ * <pre>
+ * {"type": "forecast_delta", "location": "94043", "days": [
+ *     {"date": 1434326400000, "weather_id": 800, "short_desc": "Clear", "max": 21.5, "min": 12.0,
+ *      "humidity": 78, "pressure": 1013.2, "wind": 3.6, "degrees": 270}, ...]}
+ *
+ * {"type": "forecast_invalidate", "location": "94043"}
+ * </pre>
+ *
+ * A delta carries whole days, in the same units as OWM's, and is written straight to the
+ * provider, which only reports the days whose values differ.  An invalidation, or a delta we
+ * can't use, asks for a sync, but only for the preferred location: that's the only one a sync
+ * fetches, and the others are synced when they're chosen.
+ */
+public class ForecastPush {
+    public static final String LOG_TAG = ForecastPush.class.getSimpleName();
+
+    static final String TYPE = "type";
+    static final String TYPE_DELTA = "forecast_delta";
+    static final String TYPE_INVALIDATE = "forecast_invalidate";
+
+    static final String LOCATION = "location";
+    static final String DAYS = "days";
+    static final String DATE = "date";
+    static final String WEATHER_ID = "weather_id";
+    static final String SHORT_DESC = "short_desc";
+    static final String MAX = "max";
+    static final String MIN = "min";
+    static final String HUMIDITY = "humidity";
+    static final String PRESSURE = "pressure";
+    static final String WIND = "wind";
+    static final String DEGREES = "degrees";
+
+    // What handling a message came to.
+    static final int RESULT_IGNORED = 0;
+    static final int RESULT_APPLIED = 1;
+    static final int RESULT_SYNC_REQUESTED = 2;
+
+    private ForecastPush() {
+    }
+
+    /**
+     * Whether a message is one of ours rather than a weather alert.
+     */
+    static boolean isForecastMessage(JSONObject message) {
+        String type = message.optString(TYPE);
+        return TYPE_DELTA.equals(type) || TYPE_INVALIDATE.equals(type);
+    }
+
+    /**
+     * Applies a forecast message.  Writes to the provider, so call it off the main thread; GCM
+     * delivers messages on a thread of its own.
+     */
+    static int handle(Context context, JSONObject message) {
+        String location = message.optString(LOCATION, null);
+        if (location == null) {
+            Log.w(LOG_TAG, "Forecast message without a location: " + message);
+            return RESULT_IGNORED;
+        }
+        if (TYPE_DELTA.equals(message.optString(TYPE))) {
+            try {
+                if (applyDelta(context, location, message.getJSONArray(DAYS))) {
+                    return RESULT_APPLIED;
+                }
+            } catch (JSONException e) {
+                Log.w(LOG_TAG, "Malformed forecast delta for " + location, e);
+            }
+        }
+        return invalidate(context, location);
+    }
+
+    /*
+        Writes the delta's days over the stored ones.  Returns false if the location isn't
+        stored, since a delta has nothing to apply to then.
+     */
+    private static boolean applyDelta(Context context, String location, JSONArray days)
+            throws JSONException {
+        long locationId = findLocationId(context, location);
+        if (locationId == -1) {
+            return false;
+        }
+        // Parse every day before writing any, so a bad day doesn't leave half a delta behind.
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] values = new ContentValues[days.length()];
+        int count = 0;
+        for (int i = 0; i < days.length(); i++) {
+            JSONObject day = days.getJSONObject(i);
+            long date = WeatherContract.normalizeDate(day.getLong(DATE));
+            if (date < today) {
+                // Already gone from the list, and the next sync would delete it.
+                continue;
+            }
+            ContentValues dayValues = new ContentValues();
+            dayValues.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            dayValues.put(WeatherEntry.COLUMN_DATE, date);
+            dayValues.put(WeatherEntry.COLUMN_WEATHER_ID, day.getInt(WEATHER_ID));
+            dayValues.put(WeatherEntry.COLUMN_SHORT_DESC, day.getString(SHORT_DESC));
+            dayValues.put(WeatherEntry.COLUMN_MAX_TEMP, day.getDouble(MAX));
+            dayValues.put(WeatherEntry.COLUMN_MIN_TEMP, day.getDouble(MIN));
+            dayValues.put(WeatherEntry.COLUMN_HUMIDITY, day.getDouble(HUMIDITY));
+            dayValues.put(WeatherEntry.COLUMN_PRESSURE, day.getDouble(PRESSURE));
+            dayValues.put(WeatherEntry.COLUMN_WIND_SPEED, day.getDouble(WIND));
+            dayValues.put(WeatherEntry.COLUMN_DEGREES, day.getDouble(DEGREES));
+            values[count++] = dayValues;
+        }
+        if (count == 0) {
+            return true;
+        }
+        if (count < values.length) {
+            ContentValues[] current = new ContentValues[count];
+            System.arraycopy(values, 0, current, 0, count);
+            values = current;
+        }
+        context.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        if (location.equals(Utility.getPreferredLocation(context))) {
+            // As after a sync: the widgets and the watch show the preferred location.
+            context.sendBroadcast(new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                    .setPackage(context.getPackageName()));
+        }
+        return true;
+    }
+
+    private static int invalidate(Context context, String location) {
+        if (!location.equals(Utility.getPreferredLocation(context))) {
+            return RESULT_IGNORED;
+        }
+        SunshineSyncAdapter.syncImmediately(context);
+        return RESULT_SYNC_REQUESTED;
+    }
+
+    private static long findLocationId(Context context, String location) {
+        Cursor cursor = context.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{location},
+                null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -16,18 +16,10 @@
 
 package com.example.android.sunshine.app.gcm;
 
-import android.app.NotificationManager;
-import android.app.PendingIntent;
-import android.content.Context;
-import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.google.android.gms.gcm.GcmListenerService;
 
@@ -41,8 +33,9 @@ public class MyGcmListenerService extends GcmListenerService {
     private static final String EXTRA_DATA = "data";
     private static final String EXTRA_WEATHER = "weather";
     private static final String EXTRA_LOCATION = "location";
-
-    public static final int NOTIFICATION_ID = 1;
+    private static final String EXTRA_TYPE = "type";
+    private static final String EXTRA_VALID_FROM = "valid_from";
+    private static final String EXTRA_VALID_UNTIL = "valid_until";
 
     /**
      * Called when message is received.
@@ -65,11 +58,20 @@ public class MyGcmListenerService extends GcmListenerService {
                 // Process message and then post a notification of the received message.
                 try {
                     JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
-                    String weather = jsonObject.getString(EXTRA_WEATHER);
-                    String location = jsonObject.getString(EXTRA_LOCATION);
-                    String alert =
-                            String.format(getString(R.string.gcm_weather_alert), weather, location);
-                    sendNotification(alert);
+                    if (ForecastPush.isForecastMessage(jsonObject)) {
+                        // Forecast changes update the stored forecast; there's nothing to post.
+                        ForecastPush.handle(this, jsonObject);
+                    } else {
+                        // Handed to the alert pipeline's own thread, which drops repeats
+                        // and posts bursts of alerts as one notification.
+                        String weather = jsonObject.getString(EXTRA_WEATHER);
+                        WeatherAlertPipeline.getInstance(this).enqueue(
+                                jsonObject.getString(EXTRA_LOCATION),
+                                jsonObject.optString(EXTRA_TYPE, weather),
+                                weather,
+                                jsonObject.optLong(EXTRA_VALID_FROM, -1),
+                                jsonObject.optLong(EXTRA_VALID_UNTIL, -1));
+                    }
                 } catch (JSONException e) {
                     // JSON parsing failed, so we just let this message go, since GCM is not one
                     // of our critical features.
@@ -78,33 +80,4 @@ public class MyGcmListenerService extends GcmListenerService {
             Log.i(TAG, "Received: " + data.toString());
         }
     }
-
-    /**
-     *  Put the message into a notification and post it.
-     *  This is just one simple example of what you might choose to do with a GCM message.
-     *
-     * @param message The alert message to be posted.
-     */
-    private void sendNotification(String message) {
-        NotificationManager mNotificationManager =
-                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        PendingIntent contentIntent =
-                PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class), 0);
-
-        // Notifications using both a large and a small icon (which yours should!) need the large
-        // icon as a bitmap. So we need to create that here from the resource ID, and pass the
-        // object along in our notification builder. Generally, you want to use the app icon as the
-        // small icon, so that users understand what app is triggering this notification.
-        Bitmap largeIcon = BitmapFactory.decodeResource(this.getResources(), R.drawable.art_storm);
-        NotificationCompat.Builder mBuilder =
-                new NotificationCompat.Builder(this)
-                        .setSmallIcon(R.drawable.art_clear)
-                        .setLargeIcon(largeIcon)
-                        .setContentTitle("Weather Alert!")
-                        .setStyle(new NotificationCompat.BigTextStyle().bigText(message))
-                        .setContentText(message)
-                        .setPriority(NotificationCompat.PRIORITY_HIGH);
-        mBuilder.setContentIntent(contentIntent);
-        mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
-    }
 }
\ No newline at end of file
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.MemoryTracker;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns weather alerts from GCM into notifications.  Servers send the same alert more than once,
+ * and severe weather comes in bursts, so alerts are queued to a thread of our own and:
+ *
+ * <ul>
+ * <li>an alert already seen for the same location, type and validity window is dropped;</li>
+ * <li>one notification is posted at most every {@link #COALESCE_MILLIS}, listing every alert
+ * still valid, rather than one per message;</li>
+ * <li>the large icon is decoded once and kept, until the {@link MemoryTracker} asks for the
+ * memory back.</li>
+ * </ul>
+ */
+public class WeatherAlertPipeline {
+    public static final String LOG_TAG = WeatherAlertPipeline.class.getSimpleName();
+
+    public static final int NOTIFICATION_ID = 1;
+    static final long COALESCE_MILLIS = 5000;
+    // Alerts remembered for dedupe.  Past this, the oldest are forgotten first.
+    private static final int MAX_REMEMBERED = 256;
+    // Lines an inbox-style notification shows; the rest are summed up in the title.
+    private static final int MAX_LINES = 5;
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000L;
+    // The storm art, scaled for the densest screens, takes a little over half of this.
+    private static final long ICONS_BUDGET_BYTES = 1024 * 1024;
+
+    private static final int MSG_ALERT = 0;
+    private static final int MSG_FLUSH = 1;
+
+    private static WeatherAlertPipeline sInstance;
+
+    private final Context mContext;
+    private final long mCoalesceMillis;
+    private final Handler mHandler;
+
+    // The rest is only touched on mHandler's thread, except for the counts and the icons, which
+    // are trimmed from others.
+    private final Map<String, Long> mSeen = new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_REMEMBERED;
+        }
+    };
+    private final List<Alert> mActive = new ArrayList<Alert>();
+    private final SparseArray<Bitmap> mIcons = new SparseArray<Bitmap>();
+    private boolean mFlushScheduled;
+    private long mLastPostedMillis;
+
+    private final AtomicInteger mReceived = new AtomicInteger();
+    private final AtomicInteger mDuplicates = new AtomicInteger();
+    private final AtomicInteger mPosted = new AtomicInteger();
+    // Alerts and posts not yet handled.
+    private final AtomicInteger mQueued = new AtomicInteger();
+
+    /**
+     * A weather alert, valid from one time to another.
+     */
+    static class Alert {
+        final String location;
+        final String type;
+        final String weather;
+        final long validFrom;
+        final long validUntil;
+
+        Alert(String location, String type, String weather, long validFrom, long validUntil) {
+            this.location = location;
+            this.type = type;
+            this.weather = weather;
+            this.validFrom = validFrom;
+            this.validUntil = validUntil;
+        }
+
+        String getKey() {
+            return location + '|' + type + '|' + validFrom + '|' + validUntil;
+        }
+    }
+
+    WeatherAlertPipeline(Context context, long coalesceMillis) {
+        mContext = context.getApplicationContext();
+        mCoalesceMillis = coalesceMillis;
+        mLastPostedMillis = -coalesceMillis;
+        HandlerThread thread = new HandlerThread(LOG_TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                switch (msg.what) {
+                    case MSG_ALERT:
+                        onAlert((Alert) msg.obj);
+                        mQueued.decrementAndGet();
+                        break;
+                    case MSG_FLUSH:
+                        mFlushScheduled = false;
+                        post();
+                        mQueued.decrementAndGet();
+                        break;
+                }
+            }
+        };
+        MemoryTracker.getInstance(mContext).register(MemoryTracker.ALERT_ICONS,
+                ICONS_BUDGET_BYTES, new MemoryTracker.Cache() {
+                    @Override
+                    public long getSizeBytes() {
+                        long bytes = 0;
+                        synchronized (mIcons) {
+                            for (int i = 0; i < mIcons.size(); i++) {
+                                bytes += MemoryTracker.getByteCount(mIcons.valueAt(i));
+                            }
+                        }
+                        return bytes;
+                    }
+
+                    @Override
+                    public void trimMemory(int level) {
+                        // Decoding one again is quick, so they go at any level.
+                        synchronized (mIcons) {
+                            mIcons.clear();
+                        }
+                    }
+                });
+    }
+
+    public static synchronized WeatherAlertPipeline getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherAlertPipeline(context, COALESCE_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Queues an alert and returns at once.  Without a validity window, an alert is taken to be
+     * valid for the day it arrives on.
+     *
+     * @param type       the kind of alert, such as "hurricane"; the weather if the server
+     *                   doesn't say
+     * @param validFrom  when the alert starts, in milliseconds, or -1
+     * @param validUntil when it ends, in milliseconds, or -1
+     */
+    public void enqueue(String location, String type, String weather, long validFrom,
+                        long validUntil) {
+        if (validFrom == -1 || validUntil == -1) {
+            validFrom = WeatherContract.normalizeDate(System.currentTimeMillis());
+            validUntil = validFrom + DAY_IN_MILLIS;
+        }
+        mReceived.incrementAndGet();
+        mQueued.incrementAndGet();
+        mHandler.obtainMessage(MSG_ALERT,
+                new Alert(location, type, weather, validFrom, validUntil)).sendToTarget();
+    }
+
+    private void onAlert(Alert alert) {
+        long now = System.currentTimeMillis();
+        if (alert.validUntil <= now) {
+            return;
+        }
+        forgetExpired(now);
+        String key = alert.getKey();
+        if (mSeen.containsKey(key)) {
+            mDuplicates.incrementAndGet();
+            return;
+        }
+        mSeen.put(key, alert.validUntil);
+        mActive.add(alert);
+        if (!mFlushScheduled) {
+            // Straight away if nothing was posted lately; otherwise with whatever else arrives
+            // before the window is up.
+            long delay = Math.max(0, mLastPostedMillis + mCoalesceMillis - SystemClock.uptimeMillis());
+            mFlushScheduled = true;
+            mQueued.incrementAndGet();
+            mHandler.sendEmptyMessageDelayed(MSG_FLUSH, delay);
+        }
+    }
+
+    private void forgetExpired(long now) {
+        Iterator<Long> seen = mSeen.values().iterator();
+        while (seen.hasNext()) {
+            if (seen.next() <= now) {
+                seen.remove();
+            }
+        }
+        Iterator<Alert> active = mActive.iterator();
+        while (active.hasNext()) {
+            if (active.next().validUntil <= now) {
+                active.remove();
+            }
+        }
+    }
+
+    /*
+        Posts the alerts still valid as one notification, replacing the last one.
+     */
+    private void post() {
+        forgetExpired(System.currentTimeMillis());
+        NotificationManager notificationManager =
+                (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (mActive.isEmpty()) {
+            notificationManager.cancel(NOTIFICATION_ID);
+            return;
+        }
+        PendingIntent contentIntent = PendingIntent.getActivity(mContext, 0,
+                new Intent(mContext, MainActivity.class), 0);
+        // Notifications using both a large and a small icon (which yours should!) need the large
+        // icon as a bitmap.  It's the same for every alert, so it's decoded the once.
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext)
+                .setSmallIcon(R.drawable.art_clear)
+                .setLargeIcon(getIcon(R.drawable.art_storm))
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setContentIntent(contentIntent);
+
+        int count = mActive.size();
+        Alert latest = mActive.get(count - 1);
+        String latestText = formatAlert(latest);
+        if (count == 1) {
+            builder.setContentTitle(mContext.getString(R.string.gcm_weather_alert_title))
+                    .setContentText(latestText)
+                    .setStyle(new NotificationCompat.BigTextStyle().bigText(latestText));
+        } else {
+            String title = mContext.getString(R.string.gcm_weather_alerts_title, count);
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                    .setBigContentTitle(title);
+            // Newest first.
+            for (int i = count - 1; i >= Math.max(0, count - MAX_LINES); i--) {
+                style.addLine(formatAlert(mActive.get(i)));
+            }
+            builder.setContentTitle(title)
+                    .setContentText(latestText)
+                    .setNumber(count)
+                    .setStyle(style);
+        }
+        notificationManager.notify(NOTIFICATION_ID, builder.build());
+        mLastPostedMillis = SystemClock.uptimeMillis();
+        mPosted.incrementAndGet();
+    }
+
+    private String formatAlert(Alert alert) {
+        return mContext.getString(R.string.gcm_weather_alert, alert.weather, alert.location);
+    }
+
+    private Bitmap getIcon(int resId) {
+        synchronized (mIcons) {
+            Bitmap icon = mIcons.get(resId);
+            if (icon == null) {
+                icon = BitmapFactory.decodeResource(mContext.getResources(), resId);
+                mIcons.put(resId, icon);
+            }
+            return icon;
+        }
+    }
+
+    int getReceivedCount() {
+        return mReceived.get();
+    }
+
+    int getDuplicateCount() {
+        return mDuplicates.get();
+    }
+
+    int getPostedCount() {
+        return mPosted.get();
+    }
+
+    /**
+     * Whether every queued alert has been handled and no notification is waiting to be posted.
+     */
+    boolean isIdle() {
+        return mQueued.get() == 0;
+    }
+
+    /**
+     * Stops the pipeline's thread, dropping anything queued.  For tests; the app's pipeline
+     * lives as long as the process.
+     */
+    void quit() {
+        mHandler.getLooper().quit();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.android.sunshine.app.sync;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * The network layer used by the sync adapter to fetch forecasts.  Keeping it behind an
+ * interface lets us swap the HTTP stack (or a stand-in for tests) without touching the sync
+ * logic itself.
+ */
+public interface ForecastTransport {
+    /**
+     * Performs a GET of the given URL.
+     *
+     * @return the decoded response body, or null if the server returned an empty response.
+     * @throws HttpStatusException if the server answered with an HTTP error status.
+     * @throws IOException on any other network failure.
+     */
+    String get(URL url) throws IOException;
+}
@@ -0,0 +1,20 @@
+package com.example.android.sunshine.app.sync;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a {@link ForecastTransport} when the server answers with an HTTP error status, so
+ * that the retry logic can tell a 503 from a 404.
+ */
+public class HttpStatusException extends IOException {
+    private final int mStatusCode;
+
+    public HttpStatusException(int statusCode) {
+        super("HTTP " + statusCode);
+        mStatusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link ForecastTransport} built on the platform's {@link HttpURLConnection}.
+ *
+ * HttpURLConnection keeps a pool of keep-alive connections per host, but only returns a
+ * connection to the pool once its response body has been read to the end and closed, and never
+ * if disconnect() was called.  So this class always drains and closes the stream and never
+ * disconnects, which lets consecutive fetches (e.g. one per location) share a socket.
+ *
+ * We ask for gzip ourselves rather than relying on transparent compression, so that we can see
+ * how many bytes actually went over the wire.
+ */
+public class HttpUrlConnectionTransport implements ForecastTransport {
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 20 * 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 4096;
+
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+    private final Stats mStats = new Stats();
+
+    public HttpUrlConnectionTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    public HttpUrlConnectionTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public String get(URL url) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setRequestMethod("GET");
+        urlConnection.setConnectTimeout(mConnectTimeoutMillis);
+        urlConnection.setReadTimeout(mReadTimeoutMillis);
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        urlConnection.setRequestProperty("Accept-Charset", "utf-8");
+
+        CountingInputStream counted = null;
+        long bodyChars = 0;
+        try {
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                // Drain the error body too, otherwise the connection can't be reused.
+                InputStream errorStream = urlConnection.getErrorStream();
+                if (errorStream != null) {
+                    counted = new CountingInputStream(errorStream);
+                    drain(counted);
+                }
+                throw new HttpStatusException(responseCode);
+            }
+
+            counted = new CountingInputStream(urlConnection.getInputStream());
+            InputStream inputStream = counted;
+            if ("gzip".equalsIgnoreCase(urlConnection.getContentEncoding())) {
+                inputStream = new GZIPInputStream(counted);
+            }
+
+            Reader reader = new InputStreamReader(inputStream, UTF_8);
+            StringBuilder builder = new StringBuilder();
+            char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
+            }
+            bodyChars = builder.length();
+            return builder.length() == 0 ? null : builder.toString();
+        } finally {
+            if (counted != null) {
+                try {
+                    counted.close();
+                } catch (IOException e) {
+                    // Nothing we can do about it, and the response was already read.
+                }
+            }
+            mStats.record(counted == null ? 0 : counted.getCount(), bodyChars,
+                    SystemClock.elapsedRealtime() - start);
+        }
+    }
+
+    public Stats getStats() {
+        return mStats;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (in.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    /**
+     * Running totals for all the requests made through a transport.  Useful to see what a sync
+     * costs in bytes and time.
+     */
+    public static class Stats {
+        private int mRequests;
+        private long mWireBytes;
+        private long mBodyChars;
+        private long mLatencyMillis;
+
+        synchronized void record(long wireBytes, long bodyChars, long latencyMillis) {
+            mRequests++;
+            mWireBytes += wireBytes;
+            mBodyChars += bodyChars;
+            mLatencyMillis += latencyMillis;
+        }
+
+        public synchronized int getRequests() {
+            return mRequests;
+        }
+
+        /** Response body bytes as received, before gzip decoding (headers not included). */
+        public synchronized long getWireBytes() {
+            return mWireBytes;
+        }
+
+        /** Decoded response body length, in chars. */
+        public synchronized long getBodyChars() {
+            return mBodyChars;
+        }
+
+        public synchronized long getLatencyMillis() {
+            return mLatencyMillis;
+        }
+
+        public synchronized void reset() {
+            mRequests = 0;
+            mWireBytes = 0;
+            mBodyChars = 0;
+            mLatencyMillis = 0;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "requests=" + mRequests + " wireBytes=" + mWireBytes
+                    + " bodyChars=" + mBodyChars + " latencyMillis=" + mLatencyMillis;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
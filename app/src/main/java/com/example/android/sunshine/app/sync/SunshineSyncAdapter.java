@@ -7,53 +7,61 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.BatteryManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.ArtLoader;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.MemoryTracker;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastRepository;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.core.DailyForecast;
+import com.example.android.sunshine.core.Days;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.TimeZone;
 import java.util.Vector;
 import java.util.concurrent.ExecutionException;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
-    public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
+    public static final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
     // Interval at which to sync with the weather, in seconds.
@@ -61,22 +69,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // Free pages handed back per compaction, so a compaction never takes long.  Pages are 4kB.
+    private static final int COMPACTION_MAX_PAGES = 256;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
-
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {}
@@ -87,8 +84,17 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    private final SyncBackoffPolicy mBackoffPolicy = new SyncBackoffPolicy();
+    private final ForecastTransport mTransport;
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
+        this(context, autoInitialize, new HttpUrlConnectionTransport());
+    }
+
+    public SunshineSyncAdapter(Context context, boolean autoInitialize,
+                               ForecastTransport transport) {
         super(context, autoInitialize);
+        mTransport = transport;
     }
 
     @Override
@@ -102,18 +108,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         String locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
         String locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
-
         String format = "json";
         String units = "metric";
         int numDays = 14;
 
+        URL url;
+        URL hourlyUrl;
         try {
             // Construct the URL for the OpenWeatherMap query
             // Possible parameters are avaiable at OWM's forecast API page, at
@@ -127,6 +127,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             final String UNITS_PARAM = "units";
             final String DAYS_PARAM = "cnt";
             final String APPID_PARAM = "APPID";
+            // OWM's 3-hourly forecast takes the same parameters, except for the number of days.
+            final String HOURLY_PATH = "/data/2.5/forecast";
 
             Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
 
@@ -143,145 +145,215 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
             }
 
-            Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
+            Uri baseUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
                     .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
                     .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
                     .build();
+            Uri builtUri = baseUri.buildUpon()
+                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                    .build();
 
-            URL url = new URL(builtUri.toString());
+            url = new URL(builtUri.toString());
+            hourlyUrl = new URL(baseUri.buildUpon().path(HOURLY_PATH).build().toString());
+        } catch (MalformedURLException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            return;
+        }
 
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
+        // The breaker is keyed by endpoint rather than by location, since it's the server we're
+        // protecting, not the query.
+        SyncCircuitBreaker breaker = new SyncCircuitBreaker(context, url.getHost() + url.getPath());
+        if (!breaker.allowRequest()) {
+            long remaining = breaker.getRemainingOpenMillis();
+            Log.d(LOG_TAG, "Circuit open, skipping sync for " + remaining + "ms");
+            // Tell the SyncManager not to come back before the breaker closes.  delayUntil is an
+            // absolute time, in seconds.
+            syncResult.delayUntil = (System.currentTimeMillis() + remaining) / 1000;
+            return;
+        }
 
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
+        try {
+            String forecastJsonStr = fetchWithRetry(mTransport, url, mBackoffPolicy);
+            if (forecastJsonStr == null) {
+                // Stream was empty.  No point in parsing.
+                syncResult.stats.numIoExceptions++;
+                onServerFailure(breaker, syncResult);
                 return;
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+            @LocationStatus int status =
+                    getWeatherDataFromJson(forecastJsonStr, locationQuery, syncResult);
+            if (status == LOCATION_STATUS_SERVER_DOWN) {
+                // The server answered, but with an error code of its own.
+                syncResult.stats.numIoExceptions++;
+                onServerFailure(breaker, syncResult);
+            } else {
+                breaker.recordSuccess();
+                if (status == LOCATION_STATUS_OK) {
+                    syncHourly(hourlyUrl, locationQuery, syncResult);
+                }
             }
-
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+        } catch (HttpStatusException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            if (e.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                // The server is fine, it just doesn't know the location.  Retrying won't help.
+                setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
+                breaker.recordSuccess();
+            } else {
+                syncResult.stats.numIoExceptions++;
+                onServerFailure(breaker, syncResult);
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            syncResult.stats.numIoExceptions++;
+            onServerFailure(breaker, syncResult);
+        }
+    }
+
+    /**
+     * The hourly stage: fetches the 3-hourly forecast and stores it in the hourly table.  It runs
+     * once the daily forecast is committed, so the location exists.  A failure here only costs
+     * us the hourly data; it doesn't change the location status.
+     */
+    private void syncHourly(URL url, String locationSetting, SyncResult syncResult) {
+        try {
+            String hourlyJsonStr = fetchWithRetry(mTransport, url, mBackoffPolicy);
+            if (hourlyJsonStr == null) {
+                syncResult.stats.numIoExceptions++;
+                return;
             }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
+            ContentValues[] hourlyValues = getHourlyDataFromJson(hourlyJsonStr);
+            if (hourlyValues.length > 0) {
+                syncResult.stats.numInserts += getContext().getContentResolver().bulkInsert(
+                        WeatherContract.HourlyEntry.buildHourlyLocation(locationSetting),
+                        hourlyValues);
             }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error fetching hourly forecast", e);
+            syncResult.stats.numIoExceptions++;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            syncResult.stats.numParseExceptions++;
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Parses OWM's 3-hourly forecast into HourlyEntry samples.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
+    static ContentValues[] getHourlyDataFromJson(String hourlyJsonStr) throws JSONException {
         final String OWM_LIST = "list";
-
+        final String OWM_TIME = "dt";
+        final String OWM_MAIN = "main";
+        final String OWM_TEMPERATURE = "temp";
         final String OWM_PRESSURE = "pressure";
         final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
         final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
         final String OWM_WEATHER_ID = "id";
+        final String OWM_WIND = "wind";
+        final String OWM_WINDSPEED = "speed";
+        final String OWM_WIND_DIRECTION = "deg";
 
-        final String OWM_MESSAGE_CODE = "cod";
+        JSONArray hourlyArray = new JSONObject(hourlyJsonStr).getJSONArray(OWM_LIST);
+        ContentValues[] hourlyValues = new ContentValues[hourlyArray.length()];
+        for (int i = 0; i < hourlyArray.length(); i++) {
+            JSONObject sample = hourlyArray.getJSONObject(i);
+            JSONObject main = sample.getJSONObject(OWM_MAIN);
+            JSONObject wind = sample.getJSONObject(OWM_WIND);
+
+            ContentValues values = new ContentValues();
+            // OWM gives the time in seconds
+            values.put(WeatherContract.HourlyEntry.COLUMN_TIME, sample.getLong(OWM_TIME) * 1000);
+            values.put(WeatherContract.HourlyEntry.COLUMN_TEMP, main.getDouble(OWM_TEMPERATURE));
+            values.put(WeatherContract.HourlyEntry.COLUMN_PRESSURE, main.getDouble(OWM_PRESSURE));
+            values.put(WeatherContract.HourlyEntry.COLUMN_HUMIDITY, main.getDouble(OWM_HUMIDITY));
+            values.put(WeatherContract.HourlyEntry.COLUMN_WEATHER_ID, sample.getJSONArray(OWM_WEATHER)
+                    .getJSONObject(0).getInt(OWM_WEATHER_ID));
+            values.put(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED, wind.getDouble(OWM_WINDSPEED));
+            values.put(WeatherContract.HourlyEntry.COLUMN_DEGREES, wind.optDouble(OWM_WIND_DIRECTION, 0));
+            hourlyValues[i] = values;
+        }
+        return hourlyValues;
+    }
 
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-            Context context = getContext();
+    private void onServerFailure(SyncCircuitBreaker breaker, SyncResult syncResult) {
+        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+        long openMillis = breaker.recordFailure();
+        if (openMillis > 0) {
+            Log.d(LOG_TAG, "Circuit opened for " + openMillis + "ms");
+            syncResult.delayUntil = (System.currentTimeMillis() + openMillis) / 1000;
+        }
+    }
 
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+    /**
+     * Fetches the forecast, retrying transient I/O failures with jittered exponential backoff.
+     * Failures that are a property of the request rather than the server (4xx responses) are not
+     * retried.  Retries that end in success are not reported in the SyncResult, otherwise the
+     * SyncManager would treat the sync as a soft error and reschedule it.
+     *
+     * @return the response body, or null if the server returned an empty response.
+     * @throws IOException if the last attempt failed.
+     */
+    static String fetchWithRetry(ForecastTransport transport, URL url, SyncBackoffPolicy policy)
+            throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return transport.get(url);
+            } catch (IOException e) {
+                if (!isRetryable(e) || !policy.shouldRetry(attempt)) {
+                    throw e;
+                }
+                long delay = policy.getDelayMillis(attempt);
+                Log.d(LOG_TAG, "Fetch failed (" + e.getMessage() + "), retrying in "
+                        + delay + "ms");
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    // The sync was cancelled, don't keep the thread around.
+                    Thread.currentThread().interrupt();
+                    throw e;
                 }
             }
+        }
+    }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
+    private static boolean isRetryable(IOException e) {
+        if (e instanceof HttpStatusException) {
+            int code = ((HttpStatusException) e).getStatusCode();
+            return code >= 500 || code == 429;
+        }
+        return true;
+    }
 
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+    /**
+     * Take the String representing the complete forecast in JSON Format and
+     * pull out the data we need to construct the Strings needed for the wireframes.
+     *
+     * Parsing is DailyForecast's job; this gives the days their dates and stores them.
+     *
+     * @return the location status that was recorded for this sync.
+     */
+    @LocationStatus
+    private int getWeatherDataFromJson(String forecastJsonStr,
+                                       String locationSetting,
+                                       SyncResult syncResult) {
+        try {
+            DailyForecast forecast = DailyForecast.parse(forecastJsonStr);
 
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
+            // do we have an error?
+            switch (forecast.code) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
+                    return LOCATION_STATUS_INVALID;
+                default:
+                    setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                    return LOCATION_STATUS_SERVER_DOWN;
+            }
 
             // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
+            Vector<ContentValues> cVVector = new Vector<ContentValues>(forecast.getDayCount());
 
             // OWM returns daily forecasts based upon the local time of the city that is being
             // asked for, which means that we need to know the GMT offset to translate this data
@@ -289,97 +361,76 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             // Since this data is also sent in-order and the first day is always the
             // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
+            // normalized date for all of our weather.
 
             // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+            TimeZone zone = TimeZone.getDefault();
+            int julianStartDay = Days.getJulianDay(System.currentTimeMillis(), zone);
 
+            for(int i = 0; i < forecast.getDayCount(); i++) {
                 ContentValues weatherValues = new ContentValues();
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                        Days.getStartOfJulianDay(julianStartDay + i, zone));
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, forecast.humidity[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, forecast.pressure[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, forecast.windSpeed[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, forecast.windDirection[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, forecast.high[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, forecast.low[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, forecast.description[i]);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, forecast.weatherId[i]);
 
                 cVVector.add(weatherValues);
             }
 
-            int inserted = 0;
             // add to database
             if ( cVVector.size() > 0 ) {
                 ContentValues[] cvArray = new ContentValues[cVVector.size()];
                 cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+                // Location, weather and the clean up of old data all go in one transaction, so
+                // loaders only requery once and never see a half-written sync.
+                ArrayList<ContentProviderOperation> batch = buildForecastBatch(locationSetting,
+                        forecast.cityName, forecast.cityLatitude, forecast.cityLongitude, cvArray,
+                        Days.getStartOfJulianDay(julianStartDay, zone));
+                try {
+                    ContentProviderResult[] results = getContext().getContentResolver()
+                            .applyBatch(WeatherContract.CONTENT_AUTHORITY, batch);
+                    syncResult.stats.numInserts += cvArray.length;
+                    syncResult.stats.numDeletes += results[results.length - 1].count;
+                } catch (RemoteException | OperationApplicationException e) {
+                    Log.e(LOG_TAG, "Error applying forecast batch", e);
+                    syncResult.databaseError = true;
+                    // Not the last sync's status, which would say the data is fine.
+                    setLocationStatus(getContext(), LOCATION_STATUS_UNKNOWN);
+                    return LOCATION_STATUS_UNKNOWN;
+                }
+                compactDatabaseIfIdle();
 
+                prefetchArt();
                 updateRemotes();
                 updateMuzei();
                 notifyWeather();
             }
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
             setLocationStatus(getContext(), LOCATION_STATUS_OK);
+            return LOCATION_STATUS_OK;
 
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
+            syncResult.stats.numParseExceptions++;
             setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            return LOCATION_STATUS_SERVER_INVALID;
         }
     }
 
+    private void prefetchArt() {
+        // The list is next to show this forecast; decode its art while nothing's waiting on it.
+        Context context = getContext();
+        ArtLoader.getInstance(context).prefetch(ForecastRepository.getInstance(context).get());
+    }
+
     private void updateRemotes() {
         Context context = getContext();
         // Setting the package ensures that only components in our app will receive the broadcast
@@ -413,18 +464,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+                // The sync has just written the forecast, so this reads it afresh.
+                ForecastSnapshot forecast = ForecastRepository.getInstance(context).get();
+                int today = forecast.indexOfDate(
+                        WeatherContract.normalizeDate(System.currentTimeMillis()));
 
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (today >= 0) {
+                    int weatherId = forecast.getWeatherId(today);
+                    double high = forecast.getHigh(today);
+                    double low = forecast.getLow(today);
+                    String desc = forecast.getDescription(today);
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -445,16 +494,18 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     // Retrieve the large icon
                     Bitmap largeIcon;
                     try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
+                        largeIcon = ArtLoader.getInstance(context).getBitmap(weatherId,
+                                largeIconWidth, largeIconHeight, artResourceId,
+                                ArtLoader.CLIENT_NOTIFICATION);
                     } catch (InterruptedException | ExecutionException e) {
                         Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
                         largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
                     }
+                    if (largeIcon == null) {
+                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
+                    }
+                    MemoryTracker.getInstance(context)
+                            .track(MemoryTracker.NOTIFICATION_BITMAPS, largeIcon);
                     String title = context.getString(R.string.app_name);
 
                     // Define the text of the forecast.
@@ -500,59 +551,58 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Builds the provider operations that commit one location's forecast: the weather rows,
+     * upserting the location as needed, followed by the retention pass that removes weather
+     * outside each location's history window and locations without weather.
      *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
+     * @param weatherValues weather rows without a location key
+     * @param today the date history windows are counted back from
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+    static ArrayList<ContentProviderOperation> buildForecastBatch(String locationSetting,
+            String cityName, double lat, double lon, ContentValues[] weatherValues,
+            long today) {
+        Uri upsertUri = WeatherContract.WeatherEntry.buildWeatherLocationUpsert(
+                locationSetting, cityName, lat, lon);
+        ArrayList<ContentProviderOperation> batch =
+                new ArrayList<ContentProviderOperation>(weatherValues.length + 1);
+        for (ContentValues values : weatherValues) {
+            batch.add(ContentProviderOperation.newInsert(upsertUri).withValues(values).build());
+        }
+        // delete old data so we don't build up an endless history
+        batch.add(ContentProviderOperation.newDelete(
+                WeatherContract.DatabaseEntry.buildExpiredUri(today)).build());
+        return batch;
+    }
+
+    /**
+     * Gives space freed by the retention pass back to the file system, at most once a day and
+     * only while the device is charging, so it never competes with the user for battery.
+     */
+    private void compactDatabaseIfIdle() {
+        Context context = getContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String lastCompactionKey = context.getString(R.string.pref_last_compaction);
+        long lastCompaction = prefs.getLong(lastCompactionKey, 0);
+        if (System.currentTimeMillis() - lastCompaction < DAY_IN_MILLIS) {
+            return;
+        }
+
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null || battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) == 0) {
+            return;
         }
 
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+        int pagesFreed = context.getContentResolver().update(
+                WeatherContract.DatabaseEntry.buildCompactUri(COMPACTION_MAX_PAGES),
+                new ContentValues(), null, null);
+        Log.d(LOG_TAG, "Compacted database, " + pagesFreed + " pages freed");
+        prefs.edit().putLong(lastCompactionKey, System.currentTimeMillis()).commit();
     }
 
     /**
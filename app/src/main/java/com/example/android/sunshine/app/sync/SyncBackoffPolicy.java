@@ -0,0 +1,70 @@
+package com.example.android.sunshine.app.sync;
+
+import java.util.Random;
+
+/**
+ * Computes jittered exponential backoff delays for the forecast fetch.  The delay for attempt n
+ * is picked uniformly from [0, min(cap, base * 2^n)] ("full jitter"), so a fleet of devices that
+ * failed at the same moment does not come back to the server at the same moment either.
+ */
+public class SyncBackoffPolicy {
+    // Attempts made inside a single onPerformSync before giving up and letting the
+    // SyncManager reschedule us.
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 30 * 1000;
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Random mRandom;
+
+    public SyncBackoffPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, new Random());
+    }
+
+    public SyncBackoffPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                             Random random) {
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mRandom = random;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * @param attempt zero based index of the attempt that just failed
+     * @return true if another attempt should be made
+     */
+    public boolean shouldRetry(int attempt) {
+        return attempt + 1 < mMaxAttempts;
+    }
+
+    /**
+     * @param attempt zero based index of the attempt that just failed
+     * @return how long to wait before the next attempt, in milliseconds
+     */
+    public long getDelayMillis(int attempt) {
+        long ceiling = getCeilingMillis(attempt);
+        if (ceiling <= 0) {
+            return 0;
+        }
+        return (long) (mRandom.nextDouble() * ceiling);
+    }
+
+    /**
+     * The upper bound of the jitter window for the given attempt, before randomization.
+     */
+    long getCeilingMillis(int attempt) {
+        // Clamp the shift so that a long run of failures doesn't overflow.
+        int shift = Math.min(Math.max(attempt, 0), 30);
+        long ceiling = mBaseDelayMillis << shift;
+        if (ceiling < 0 || ceiling > mMaxDelayMillis) {
+            ceiling = mMaxDelayMillis;
+        }
+        return ceiling;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Random;
+
+/**
+ * A per-endpoint circuit breaker for the forecast fetch.  After a run of failed syncs against
+ * the same endpoint the breaker "opens" and syncs are skipped until a cool-down has elapsed; the
+ * first sync after that is let through as a trial ("half open").  A success closes the breaker
+ * again, a failure re-opens it with a longer cool-down.
+ *
+ * The state lives in its own SharedPreferences file so that it survives process restarts, which
+ * is exactly when a flaky server would otherwise get hit again.  Like setLocationStatus, this
+ * class uses commit() and must not be used from the UI thread.
+ */
+public class SyncCircuitBreaker {
+    private static final String PREFS_NAME = "sync_circuit_breaker";
+    private static final String KEY_FAILURES = "failures:";
+    private static final String KEY_OPEN_UNTIL = "open_until:";
+
+    // Number of consecutive failed syncs before the breaker opens.
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    // Cool-down after the breaker first opens; doubled for every further failure, up to the
+    // periodic sync interval.
+    public static final long DEFAULT_OPEN_MILLIS = 5 * 60 * 1000;
+    public static final long DEFAULT_MAX_OPEN_MILLIS = SunshineSyncAdapter.SYNC_INTERVAL * 1000L;
+
+    private final SharedPreferences mPrefs;
+    private final String mEndpoint;
+    private final int mFailureThreshold;
+    private final SyncBackoffPolicy mCoolDown;
+
+    public SyncCircuitBreaker(Context context, String endpoint) {
+        this(context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE), endpoint,
+                DEFAULT_FAILURE_THRESHOLD,
+                new SyncBackoffPolicy(Integer.MAX_VALUE, DEFAULT_OPEN_MILLIS,
+                        DEFAULT_MAX_OPEN_MILLIS, new Random()));
+    }
+
+    SyncCircuitBreaker(SharedPreferences prefs, String endpoint, int failureThreshold,
+                       SyncBackoffPolicy coolDown) {
+        mPrefs = prefs;
+        mEndpoint = endpoint;
+        mFailureThreshold = failureThreshold;
+        mCoolDown = coolDown;
+    }
+
+    /**
+     * @return true if a request to this endpoint may be made right now.  Once the cool-down has
+     * elapsed this returns true again, which lets a single trial request through.
+     */
+    public boolean allowRequest() {
+        return getRemainingOpenMillis() == 0;
+    }
+
+    /**
+     * @return how long the breaker will stay open, in milliseconds.  0 if it's closed.
+     */
+    public long getRemainingOpenMillis() {
+        long openUntil = mPrefs.getLong(KEY_OPEN_UNTIL + mEndpoint, 0);
+        return Math.max(0, openUntil - System.currentTimeMillis());
+    }
+
+    public int getConsecutiveFailures() {
+        return mPrefs.getInt(KEY_FAILURES + mEndpoint, 0);
+    }
+
+    public void recordSuccess() {
+        if (getConsecutiveFailures() == 0 && getRemainingOpenMillis() == 0) {
+            // Nothing to reset, don't bother touching the disk.
+            return;
+        }
+        mPrefs.edit()
+                .remove(KEY_FAILURES + mEndpoint)
+                .remove(KEY_OPEN_UNTIL + mEndpoint)
+                .commit();
+    }
+
+    /**
+     * Records a failed sync against the endpoint.
+     *
+     * @return the time the breaker will stay open for, in milliseconds.  0 if it is still closed.
+     */
+    public long recordFailure() {
+        int failures = getConsecutiveFailures() + 1;
+        SharedPreferences.Editor editor = mPrefs.edit();
+        editor.putInt(KEY_FAILURES + mEndpoint, failures);
+
+        long openMillis = 0;
+        if (failures >= mFailureThreshold) {
+            // Half of the window is fixed and half is jittered, so a re-opened breaker never
+            // waits less than the longest previous cool-down.
+            int trips = failures - mFailureThreshold;
+            openMillis = mCoolDown.getCeilingMillis(trips) / 2 + mCoolDown.getDelayMillis(trips) / 2;
+            editor.putLong(KEY_OPEN_UNTIL + mEndpoint, System.currentTimeMillis() + openMillis);
+        }
+        editor.commit();
+        return openMillis;
+    }
+}
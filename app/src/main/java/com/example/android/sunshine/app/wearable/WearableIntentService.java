@@ -4,13 +4,11 @@ package com.example.android.sunshine.app.wearable;
 import android.app.IntentService;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 
-import com.example.android.sunshine.app.Utility;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.ForecastRepository;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
@@ -23,18 +21,6 @@ public class WearableIntentService extends IntentService
 {
     private static final String TAG = "WearableIntentService";
 
-    private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
-
     private GoogleApiClient mGoogleApiClient;
 
     private static final String REQ_PATH = "/weather";
@@ -82,26 +68,17 @@ public class WearableIntentService extends IntentService
     @Override
     protected void onHandleIntent(Intent intent) {
 
-        // Get today's data from the ContentProvider
-        String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
-            return;
-        }
-        if (!data.moveToFirst()) {
-            data.close();
+        // Get today's data from the forecast the app keeps in memory
+        ForecastSnapshot forecast = ForecastRepository.getInstance(this).get();
+        if (forecast.isEmpty()) {
             return;
         }
 
-        // Extract the weather data from the Cursor
-        mWeatherId = data.getInt(INDEX_WEATHER_ID);
-        mMaxTemp = data.getDouble(INDEX_MAX_TEMP);
-        mMinTemp = data.getDouble(INDEX_MIN_TEMP);
-        mLocation = Utility.getPreferredLocation(this).trim().toUpperCase();
-        data.close();
+        // Extract the weather data from the first day
+        mWeatherId = forecast.getWeatherId(0);
+        mMaxTemp = forecast.getHigh(0);
+        mMinTemp = forecast.getLow(0);
+        mLocation = forecast.getLocationSetting().trim().toUpperCase();
 
         // create or connect a Google API client
         if (null == mGoogleApiClient) {
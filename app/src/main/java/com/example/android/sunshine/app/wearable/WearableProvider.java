@@ -5,6 +5,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Handler;
 
+import com.example.android.sunshine.app.IoWatchdog;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 public class WearableProvider extends BroadcastReceiver {
@@ -46,7 +47,10 @@ public class WearableProvider extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
+            // The service does the work; starting it is a binder call the main thread waits on.
+            long start = IoWatchdog.begin();
             context.startService(new Intent(context, WearableIntentService.class));
+            IoWatchdog.end(IoWatchdog.IPC, start);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.core.DayLabels;
+import com.example.android.sunshine.core.Days;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The labels of a 14 day forecast list: the day names for this week and short dates after it.
+ */
+@State(Scope.Thread)
+public class DayLabelsBenchmark {
+    private static final int DAYS = 14;
+
+    private final long[] mDates = new long[DAYS];
+    private long mNow;
+
+    @Setup
+    public void setUp() {
+        Locale.setDefault(Locale.US);
+        TimeZone zone = TimeZone.getTimeZone("America/Los_Angeles");
+        TimeZone.setDefault(zone);
+        mNow = 1419033600000L;
+        int today = Days.getJulianDay(mNow, zone);
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = Days.getStartOfJulianDay(today + i, zone);
+        }
+    }
+
+    @Benchmark
+    public void forecastList(Blackhole blackhole) {
+        DayLabels labels = DayLabels.getInstance();
+        for (long date : mDates) {
+            int days = labels.getDaysFromNow(date, mNow);
+            // "Today" and "Tomorrow" are resources, but today goes with its month and day.
+            if (days == 0) {
+                blackhole.consume(labels.formatMonthDay(date));
+            } else if (days == 1) {
+                blackhole.consume(days);
+            } else if (days < 7) {
+                blackhole.consume(labels.formatDayName(date));
+            } else {
+                blackhole.consume(labels.formatShortDate(date));
+            }
+        }
+    }
+
+    @Benchmark
+    public String monthDay() {
+        return DayLabels.getInstance().formatMonthDay(mDates[0]);
+    }
+}
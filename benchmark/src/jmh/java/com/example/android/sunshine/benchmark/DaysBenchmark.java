@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.core.Days;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.TimeZone;
+
+/**
+ * Date normalization, which the provider does to every row it writes and every dated URI, over
+ * a forecast's worth of times.  The zone has daylight saving, so offsets aren't constant.
+ */
+@State(Scope.Benchmark)
+public class DaysBenchmark {
+    private static final int DAYS = 14;
+
+    private final long[] mTimes = new long[DAYS];
+    private TimeZone mZone;
+
+    @Setup
+    public void setUp() {
+        mZone = TimeZone.getTimeZone("America/Los_Angeles");
+        // Afternoons either side of the March change.
+        long start = 1425772800000L - 7 * Days.DAY_IN_MILLIS;
+        for (int i = 0; i < DAYS; i++) {
+            mTimes[i] = start + i * Days.DAY_IN_MILLIS;
+        }
+    }
+
+    @Benchmark
+    public void normalizeDate(Blackhole blackhole) {
+        for (long time : mTimes) {
+            blackhole.consume(Days.normalizeDate(time, mZone));
+        }
+    }
+
+    @Benchmark
+    public void startOfJulianDay(Blackhole blackhole) {
+        int julianStartDay = Days.getJulianDay(mTimes[0], mZone);
+        for (int i = 0; i < DAYS; i++) {
+            blackhole.consume(Days.getStartOfJulianDay(julianStartDay + i, mZone));
+        }
+    }
+}
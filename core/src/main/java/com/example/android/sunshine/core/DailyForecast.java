@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.HttpURLConnection;
+
+/**
+ * OpenWeatherMap's daily forecast, parsed from its JSON.  Days are in order, the first being
+ * today where the city is; the sync adapter gives them their dates.
+ */
+public class DailyForecast {
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    // The server's own status code; anything but HTTP_OK and the rest is empty.
+    public final int code;
+    public final String cityName;
+    public final double cityLatitude;
+    public final double cityLongitude;
+
+    public final double[] pressure;
+    public final int[] humidity;
+    public final double[] windSpeed;
+    public final double[] windDirection;
+    public final double[] high;
+    public final double[] low;
+    public final String[] description;
+    public final int[] weatherId;
+
+    private DailyForecast(int code) {
+        this.code = code;
+        cityName = null;
+        cityLatitude = 0;
+        cityLongitude = 0;
+        pressure = new double[0];
+        humidity = new int[0];
+        windSpeed = new double[0];
+        windDirection = new double[0];
+        high = new double[0];
+        low = new double[0];
+        description = new String[0];
+        weatherId = new int[0];
+    }
+
+    private DailyForecast(JSONObject forecastJson) throws JSONException {
+        code = HttpURLConnection.HTTP_OK;
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        cityName = cityJson.getString(OWM_CITY_NAME);
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+        int days = weatherArray.length();
+        pressure = new double[days];
+        humidity = new int[days];
+        windSpeed = new double[days];
+        windDirection = new double[days];
+        high = new double[days];
+        low = new double[days];
+        description = new String[days];
+        weatherId = new int[days];
+        for (int i = 0; i < days; i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            pressure[i] = dayForecast.getDouble(OWM_PRESSURE);
+            humidity[i] = dayForecast.getInt(OWM_HUMIDITY);
+            windSpeed[i] = dayForecast.getDouble(OWM_WINDSPEED);
+            windDirection[i] = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject = dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            description[i] = weatherObject.getString(OWM_DESCRIPTION);
+            weatherId[i] = weatherObject.getInt(OWM_WEATHER_ID);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            high[i] = temperatureObject.getDouble(OWM_MAX);
+            low[i] = temperatureObject.getDouble(OWM_MIN);
+        }
+    }
+
+    /**
+     * @throws JSONException if the forecast is malformed, or missing something we need.
+     */
+    public static DailyForecast parse(String forecastJsonStr) throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+        // do we have an error?
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            int code = forecastJson.getInt(OWM_MESSAGE_CODE);
+            if (code != HttpURLConnection.HTTP_OK) {
+                return new DailyForecast(code);
+            }
+        }
+        return new DailyForecast(forecastJson);
+    }
+
+    public int getDayCount() {
+        return weatherId.length;
+    }
+}
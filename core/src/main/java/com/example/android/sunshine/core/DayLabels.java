@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The locale-dependent parts of the day labels in the forecast list, detail view and widgets.
+ * "Today" and "Tomorrow" are resources, so the app picks those itself.
+ *
+ * Formats are expensive to build and not thread-safe, so each thread keeps its own, made again
+ * only when the default locale or time zone changes.
+ */
+public class DayLabels {
+    private static final ThreadLocal<DayLabels> sLabels = new ThreadLocal<DayLabels>();
+
+    private final Locale mLocale;
+    private final TimeZone mZone;
+    private final SimpleDateFormat mDayNameFormat;
+    private final SimpleDateFormat mMonthDayFormat;
+    private final SimpleDateFormat mShortDateFormat;
+
+    DayLabels(Locale locale, TimeZone zone) {
+        mLocale = locale;
+        mZone = zone;
+        mDayNameFormat = newFormat("EEEE");
+        mMonthDayFormat = newFormat("MMMM dd");
+        mShortDateFormat = newFormat("EEE MMM dd");
+    }
+
+    /**
+     * The calling thread's labels for the default locale and time zone.
+     */
+    public static DayLabels getInstance() {
+        Locale locale = Locale.getDefault();
+        TimeZone zone = TimeZone.getDefault();
+        DayLabels labels = sLabels.get();
+        if (labels == null || !labels.mLocale.equals(locale) ||
+                !labels.mZone.getID().equals(zone.getID())) {
+            labels = new DayLabels(locale, zone);
+            sLabels.set(labels);
+        }
+        return labels;
+    }
+
+    private SimpleDateFormat newFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, mLocale);
+        format.setTimeZone(mZone);
+        return format;
+    }
+
+    /**
+     * How many days after the day of nowMillis the day of dateMillis is.  Both days are taken at
+     * the offset now, as the list always has.
+     */
+    public int getDaysFromNow(long dateMillis, long nowMillis) {
+        long gmtoff = mZone.getOffset(nowMillis) / 1000;
+        return Days.getJulianDay(dateMillis, gmtoff) - Days.getJulianDay(nowMillis, gmtoff);
+    }
+
+    /**
+     * The day of the week, e.g "Wednesday".
+     */
+    public String formatDayName(long dateMillis) {
+        return mDayNameFormat.format(dateMillis);
+    }
+
+    /**
+     * The month and day, e.g "June 24".
+     */
+    public String formatMonthDay(long dateMillis) {
+        return mMonthDayFormat.format(dateMillis);
+    }
+
+    /**
+     * Days further off than a week, e.g "Mon Jun 03".
+     */
+    public String formatShortDate(long dateMillis) {
+        return mShortDateFormat.format(dateMillis);
+    }
+}
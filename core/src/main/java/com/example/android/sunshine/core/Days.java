@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.TimeZone;
+
+/**
+ * Julian day arithmetic, as android.text.format.Time does it, without allocating a Time for every
+ * date.  Forecast dates are stored as the millisecond a day starts in the device's time zone.
+ */
+public final class Days {
+    public static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // The Julian day of January 1, 1970.
+    public static final int EPOCH_JULIAN_DAY = 2440588;
+
+    private Days() {
+    }
+
+    /**
+     * The Julian day of a moment, in a zone gmtoff seconds ahead of UTC.  Same as
+     * Time.getJulianDay.
+     */
+    public static int getJulianDay(long millis, long gmtoff) {
+        long offsetMillis = gmtoff * 1000;
+        long julianDay = (millis + offsetMillis) / DAY_IN_MILLIS;
+        return (int) julianDay + EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * The Julian day of a moment in a time zone.
+     */
+    public static int getJulianDay(long millis, TimeZone zone) {
+        return getJulianDay(millis, zone.getOffset(millis) / 1000);
+    }
+
+    /**
+     * The moment a Julian day starts in a time zone: local midnight, or when the clocks went
+     * forward on a day a daylight saving change skips midnight.  Where clocks go back to a second
+     * midnight, it may be either, but always the same one for the same day.
+     */
+    public static long getStartOfJulianDay(int julianDay, TimeZone zone) {
+        long localMidnight = (julianDay - EPOCH_JULIAN_DAY) * DAY_IN_MILLIS;
+        // Local midnight read as UTC is the zone's offset away from the moment we want.  The
+        // offset at a first guess is right unless it changes in the hours between the two.
+        long guess = localMidnight - zone.getOffset(localMidnight);
+        long start = localMidnight - zone.getOffset(guess);
+        if (getJulianDay(start, zone) != julianDay) {
+            // Midnight was skipped, and that landed us the hour before it.  The day starts when
+            // the clocks went forward, which is midnight at the offset before the change.
+            start = localMidnight - zone.getOffset(start);
+        }
+        return start;
+    }
+
+    /**
+     * The start of the day a moment is in, in a time zone.
+     */
+    public static long normalizeDate(long millis, TimeZone zone) {
+        return getStartOfJulianDay(getJulianDay(millis, zone), zone);
+    }
+}
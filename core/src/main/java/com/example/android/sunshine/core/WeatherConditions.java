@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * Groups OpenWeatherMap condition codes into the conditions we have icons and art for.  The app
+ * and the watch face each map a condition to their own resources.
+ */
+public final class WeatherConditions {
+    public static final int UNKNOWN = -1;
+    public static final int STORM = 0;
+    public static final int LIGHT_RAIN = 1;
+    public static final int RAIN = 2;
+    // Shower rain (520 to 531) is drawn as rain on the phone but as light rain on the watch.
+    public static final int SHOWER_RAIN = 3;
+    public static final int SNOW = 4;
+    public static final int FOG = 5;
+    public static final int CLEAR = 6;
+    public static final int LIGHT_CLOUDS = 7;
+    public static final int CLOUDS = 8;
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the condition, or UNKNOWN if the code isn't one we draw.
+     */
+    public static int getCondition(int weatherId) {
+        // Based on weather code data found at:
+        // http://openweathermap.org/weather-conditions
+        if (weatherId >= 200 && weatherId <= 232) {
+            return STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return RAIN;
+        } else if (weatherId == 511) {
+            return SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return SHOWER_RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return FOG;
+        } else if (weatherId == 781) {
+            return STORM;
+        } else if (weatherId == 800) {
+            return CLEAR;
+        } else if (weatherId == 801) {
+            return LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return CLOUDS;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * The name art packs use for a condition's artwork, or null for UNKNOWN.
+     */
+    public static String getArtName(int condition) {
+        switch (condition) {
+            case STORM:
+                return "storm";
+            case LIGHT_RAIN:
+                return "light_rain";
+            case RAIN:
+            case SHOWER_RAIN:
+                return "rain";
+            case SNOW:
+                return "snow";
+            case FOG:
+                return "fog";
+            case CLEAR:
+                return "clear";
+            case LIGHT_CLOUDS:
+                return "light_clouds";
+            case CLOUDS:
+                return "clouds";
+            default:
+                return null;
+        }
+    }
+}
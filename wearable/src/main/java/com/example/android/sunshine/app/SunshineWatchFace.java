@@ -40,6 +40,7 @@ import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.example.android.sunshine.core.WeatherConditions;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -410,31 +411,33 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         }
 
         private Bitmap getBitmapForWeatherCondition(int weatherId) {
-            // Based on weather code data found at:
-            // http://openweathermap.org/weather-conditions
-            int weatherIconId = R.drawable.ic_clear;
-            if (weatherId >= 200 && weatherId <= 232) {
-                weatherIconId = R.drawable.ic_storm;
-            } else if (weatherId >= 300 && weatherId <= 321) {
-                weatherIconId = R.drawable.ic_light_rain;
-            } else if (weatherId >= 500 && weatherId <= 504) {
-                weatherIconId = R.drawable.ic_rain;
-            } else if (weatherId == 511) {
-                weatherIconId = R.drawable.ic_snow;
-            } else if (weatherId >= 520 && weatherId <= 531) {
-                weatherIconId = R.drawable.ic_light_rain;
-            } else if (weatherId >= 600 && weatherId <= 622) {
-                weatherIconId = R.drawable.ic_snow;
-            } else if (weatherId >= 701 && weatherId <= 761) {
-                weatherIconId = R.drawable.ic_fog;
-            } else if (weatherId == 761 || weatherId == 781) {
-                weatherIconId = R.drawable.ic_storm;
-            } else if (weatherId == 800) {
-                weatherIconId = R.drawable.ic_clear;
-            } else if (weatherId == 801) {
-                weatherIconId = R.drawable.ic_light_clouds;
-            } else if (weatherId >= 802 && weatherId <= 804) {
-                weatherIconId = R.drawable.ic_cloudy;
+            int weatherIconId;
+            switch (WeatherConditions.getCondition(weatherId)) {
+                case WeatherConditions.STORM:
+                    weatherIconId = R.drawable.ic_storm;
+                    break;
+                case WeatherConditions.LIGHT_RAIN:
+                case WeatherConditions.SHOWER_RAIN:
+                    weatherIconId = R.drawable.ic_light_rain;
+                    break;
+                case WeatherConditions.RAIN:
+                    weatherIconId = R.drawable.ic_rain;
+                    break;
+                case WeatherConditions.SNOW:
+                    weatherIconId = R.drawable.ic_snow;
+                    break;
+                case WeatherConditions.FOG:
+                    weatherIconId = R.drawable.ic_fog;
+                    break;
+                case WeatherConditions.LIGHT_CLOUDS:
+                    weatherIconId = R.drawable.ic_light_clouds;
+                    break;
+                case WeatherConditions.CLOUDS:
+                    weatherIconId = R.drawable.ic_cloudy;
+                    break;
+                default:
+                    weatherIconId = R.drawable.ic_clear;
+                    break;
             }
 
             // default bitmap